@@ -290,6 +290,20 @@ public class AppSettings {
 	
 	public static final String SETTINGS_HLS_ENCRYPTION_KEY_INFO_FILE = "settings.hlsEncryptionKeyInfoFile";
 	
+	public static final String SETTINGS_EVENT_DRIVEN_PACKET_DRAIN_ENABLED = "settings.eventDrivenPacketDrainEnabled";
+	
+	public static final String SETTINGS_PARALLEL_MUXING_ENABLED = "settings.parallelMuxingEnabled";
+	
+	public static final String SETTINGS_PARALLEL_MUXING_QUEUE_SIZE = "settings.parallelMuxingQueueSize";
+	
+	public static final String SETTINGS_PARALLEL_MUXING_OVERFLOW_POLICY = "settings.parallelMuxingOverflowPolicy";
+	
+	public static final String SETTINGS_HLS_LIVE_UPLOAD_ENABLED = "settings.hlsLiveUploadEnabled";
+	
+	public static final String SETTINGS_HLS_MEMORY_OUTPUT_ENABLED = "settings.hlsMemoryOutputEnabled";
+	
+	public static final String SETTINGS_HLS_MEMORY_SPILL_TO_DISK = "settings.hlsMemorySpillToDisk";
+	
 
 
 	@JsonIgnore
@@ -1331,6 +1345,63 @@ public class AppSettings {
 	@Value( "${" + SETTINGS_HLS_ENCRYPTION_KEY_INFO_FILE +":#{null}}")
 	private String hlsEncryptionKeyInfoFile;
 	
+	/**
+	 * If it's true, incoming RTMP packets are drained by a worker that is woken up
+	 * when the stream's packet queue becomes non-empty instead of polling the queue every 10ms.
+	 * It decreases latency and CPU usage of idle streams when there are many ingest streams.
+	 * Default value is false
+	 */
+	@Value( "${" + SETTINGS_EVENT_DRIVEN_PACKET_DRAIN_ENABLED +":false}")
+	private boolean eventDrivenPacketDrainEnabled;
+	
+	/**
+	 * If it's true, each muxer(HLS, MP4, RTMP endpoint, etc.) of an RTMP stream has its own packet queue and 
+	 * writes packets in its own worker so that a slow muxer does not delay the others.
+	 * Default value is false
+	 */
+	@Value( "${" + SETTINGS_PARALLEL_MUXING_ENABLED +":false}")
+	private boolean parallelMuxingEnabled;
+	
+	/**
+	 * Max number of packets waiting in the queue of a muxer when parallel muxing is enabled
+	 */
+	@Value( "${" + SETTINGS_PARALLEL_MUXING_QUEUE_SIZE +":500}")
+	private int parallelMuxingQueueSize;
+	
+	/**
+	 * What to do when the queue of a muxer is full in parallel muxing. 
+	 * It can be dropUntilKeyFrame or block
+	 * dropUntilKeyFrame: packets are dropped for that muxer until the next video key frame
+	 * block: stream's packet writer waits for space in the queue for a short time, then packets are dropped until the next video key frame
+	 */
+	@Value( "${" + SETTINGS_PARALLEL_MUXING_OVERFLOW_POLICY +":dropUntilKeyFrame}")
+	private String parallelMuxingOverflowPolicy;
+	
+	/**
+	 * If it's true, HLS segments and playlist are uploaded to the storage while stream is being muxed.
+	 * Segments are deleted from local disk after they are uploaded so that storage can be used as origin.
+	 * It requires s3 recording to be enabled.
+	 * Default value is false
+	 */
+	@Value( "${" + SETTINGS_HLS_LIVE_UPLOAD_ENABLED +":false}")
+	private boolean hlsLiveUploadEnabled;
+	
+	/**
+	 * If it's true, HLS segments and playlist are kept in memory instead of being written to disk.
+	 * Only the last segments in the playlist are kept. Live upload is not used in this mode.
+	 * Default value is false
+	 */
+	@Value( "${" + SETTINGS_HLS_MEMORY_OUTPUT_ENABLED +":false}")
+	private boolean hlsMemoryOutputEnabled;
+	
+	/**
+	 * If it's true and HLS memory output is enabled, segments and playlist are also written to disk in background
+	 * so that they can be used for recording.
+	 * Default value is false
+	 */
+	@Value( "${" + SETTINGS_HLS_MEMORY_SPILL_TO_DISK +":false}")
+	private boolean hlsMemorySpillToDisk;
+	
 	public boolean isWriteStatsToDatastore() {
 		return writeStatsToDatastore;
 	}
@@ -2557,4 +2628,60 @@ public class AppSettings {
 		this.forceDecoding = forceDecoding;
 	}
 
+	public boolean isEventDrivenPacketDrainEnabled() {
+		return eventDrivenPacketDrainEnabled;
+	}
+
+	public void setEventDrivenPacketDrainEnabled(boolean eventDrivenPacketDrainEnabled) {
+		this.eventDrivenPacketDrainEnabled = eventDrivenPacketDrainEnabled;
+	}
+
+	public boolean isParallelMuxingEnabled() {
+		return parallelMuxingEnabled;
+	}
+
+	public void setParallelMuxingEnabled(boolean parallelMuxingEnabled) {
+		this.parallelMuxingEnabled = parallelMuxingEnabled;
+	}
+
+	public int getParallelMuxingQueueSize() {
+		return parallelMuxingQueueSize;
+	}
+
+	public void setParallelMuxingQueueSize(int parallelMuxingQueueSize) {
+		this.parallelMuxingQueueSize = parallelMuxingQueueSize;
+	}
+
+	public String getParallelMuxingOverflowPolicy() {
+		return parallelMuxingOverflowPolicy;
+	}
+
+	public void setParallelMuxingOverflowPolicy(String parallelMuxingOverflowPolicy) {
+		this.parallelMuxingOverflowPolicy = parallelMuxingOverflowPolicy;
+	}
+
+	public boolean isHlsLiveUploadEnabled() {
+		return hlsLiveUploadEnabled;
+	}
+
+	public void setHlsLiveUploadEnabled(boolean hlsLiveUploadEnabled) {
+		this.hlsLiveUploadEnabled = hlsLiveUploadEnabled;
+	}
+
+	public boolean isHlsMemoryOutputEnabled() {
+		return hlsMemoryOutputEnabled;
+	}
+
+	public void setHlsMemoryOutputEnabled(boolean hlsMemoryOutputEnabled) {
+		this.hlsMemoryOutputEnabled = hlsMemoryOutputEnabled;
+	}
+
+	public boolean isHlsMemorySpillToDisk() {
+		return hlsMemorySpillToDisk;
+	}
+
+	public void setHlsMemorySpillToDisk(boolean hlsMemorySpillToDisk) {
+		this.hlsMemorySpillToDisk = hlsMemorySpillToDisk;
+	}
+
 }
@@ -640,21 +640,22 @@ public abstract class DataStore {
 	 */
 	protected ArrayList<VoD> searchOnServerVod(ArrayList<VoD> broadcastList, String search){
 		if(search != null && !search.isEmpty()) {
+			String lowerCaseSearch = search.toLowerCase();
 			for (Iterator<VoD> i = broadcastList.iterator(); i.hasNext(); ) {
 				VoD item = i.next();
 				if(item.getVodName() != null && item.getStreamName() != null && item.getStreamId() != null && item.getVodId() != null) {
-					if (item.getVodName().toLowerCase().contains(search.toLowerCase()) || item.getStreamId().toLowerCase().contains(search.toLowerCase()) || item.getStreamName().toLowerCase().contains(search.toLowerCase()) || item.getVodId().toLowerCase().contains(search.toLowerCase()))
+					if (contains(item.getVodName(), lowerCaseSearch) || contains(item.getStreamId(), lowerCaseSearch) || contains(item.getStreamName(), lowerCaseSearch) || contains(item.getVodId(), lowerCaseSearch))
 						continue;
 					else i.remove();
 				}
 				else if (item.getVodName()!= null && item.getVodId() != null){
-					if (item.getVodName().toLowerCase().contains(search.toLowerCase()) || item.getVodId().toLowerCase().contains(search.toLowerCase()))
+					if (contains(item.getVodName(), lowerCaseSearch) || contains(item.getVodId(), lowerCaseSearch))
 						continue;
 					else i.remove();
 				}
 				else{
 					if (item.getVodId() != null){
-						if (item.getVodId().toLowerCase().contains(search.toLowerCase()))
+						if (contains(item.getVodId(), lowerCaseSearch))
 							continue;
 						else i.remove();
 					}
@@ -664,27 +665,31 @@ public abstract class DataStore {
 		return broadcastList;
 	}
 
+	/**
+	 * @param value
+	 * @param lowerCaseSearch search string that is already lowercase
+	 * @return true if lowercase value contains the search string
+	 */
+	private static boolean contains(String value, String lowerCaseSearch) {
+		return value.toLowerCase().contains(lowerCaseSearch);
+	}
+
 	protected List<VoD> sortAndCropVodList(List<VoD> vodList, int offset, int size, String sortBy, String orderBy) {
 		if(sortBy != null && orderBy != null && !sortBy.isEmpty() && !orderBy.isEmpty()) {
 			if(sortBy.contentEquals("date") || sortBy.contentEquals("name")) {
 				Collections.sort(vodList, new Comparator<VoD>() {
 					@Override
 					public int compare(VoD vod1, VoD vod2) {
-						Comparable c1 = null;
-						Comparable c2 = null;
+						int result = 0;
 						if (sortBy.contentEquals("name")) {
-							c1 = vod1.getVodName().toLowerCase();
-							c2 = vod2.getVodName().toLowerCase();
+							result = vod1.getVodName().compareToIgnoreCase(vod2.getVodName());
 						} else if (sortBy.contentEquals("date")) {
-							c1 = new Long(vod1.getCreationDate());
-							c2 = new Long(vod2.getCreationDate());
+							result = Long.compare(vod1.getCreationDate(), vod2.getCreationDate());
 						}
 						if (orderBy.contentEquals("desc")) {
-							return c2.compareTo(c1);
-						} else if (orderBy != null && !(orderBy.isEmpty())) {
-							//Wrong entry check to not get null pointer.
+							return -result;
 						}
-						return c1.compareTo(c2);
+						return result;
 					}
 				});
 			}
@@ -709,15 +714,16 @@ public abstract class DataStore {
 	}
 	protected ArrayList<Broadcast> searchOnServer(ArrayList<Broadcast> broadcastList, String search){
 		if(search != null && !search.isEmpty()) {
+			String lowerCaseSearch = search.toLowerCase();
 			for (Iterator<Broadcast> i = broadcastList.iterator(); i.hasNext(); ) {
 				Broadcast item = i.next();
 				if(item.getName() != null && item.getStreamId() != null) {
-					if (item.getName().toLowerCase().contains(search.toLowerCase()) || item.getStreamId().toLowerCase().contains(search.toLowerCase()))
+					if (contains(item.getName(), lowerCaseSearch) || contains(item.getStreamId(), lowerCaseSearch))
 						continue;
 					else i.remove();
 				}
 				else{
-					if (item.getStreamId().toLowerCase().contains(search.toLowerCase()))
+					if (contains(item.getStreamId(), lowerCaseSearch))
 						continue;
 					else i.remove();
 				}
@@ -733,28 +739,20 @@ public abstract class DataStore {
 				Collections.sort(broadcastList, new Comparator<Broadcast>() {
 					@Override
 					public int compare(Broadcast broadcast1, Broadcast broadcast2) {
-						Comparable c1 = null;
-						Comparable c2 = null;
+						int result = 0;
 
 						if (sortBy.equals("name")) {
-							c1 = broadcast1.getName().toLowerCase();
-							c2 = broadcast2.getName().toLowerCase();
+							result = broadcast1.getName().compareToIgnoreCase(broadcast2.getName());
 						} else if (sortBy.equals("date")) {
-							c1 = new Long(broadcast1.getDate());
-							c2 = new Long(broadcast2.getDate());
+							result = Long.compare(broadcast1.getDate(), broadcast2.getDate());
 						} else if (sortBy.equals("status")) {
-							c1 = broadcast1.getStatus();
-							c2 = broadcast2.getStatus();
-						} else if (sortBy != null && !(sortBy.isEmpty())) {
-							//Wrong entry check to not get null pointer.
+							result = broadcast1.getStatus().compareTo(broadcast2.getStatus());
 						}
 
 						if (orderBy.equals("desc")) {
-							return c2.compareTo(c1);
-						} else if (orderBy != null && !(orderBy.isEmpty())) {
-							//Wrong entry check to not get null pointer.
+							return -result;
 						}
-						return c1.compareTo(c2);
+						return result;
 					}
 				});
 			}
@@ -779,10 +777,11 @@ public abstract class DataStore {
 
 	protected ArrayList<ConferenceRoom> searchOnServerConferenceRoom(ArrayList<ConferenceRoom> roomList, String search){
 		if(search != null && !search.isEmpty()) {
+			String lowerCaseSearch = search.toLowerCase();
 			for (Iterator<ConferenceRoom> i = roomList.iterator(); i.hasNext(); ) {
 				ConferenceRoom item = i.next();
 				if(item.getRoomId() != null) {
-					if (item.getRoomId().toLowerCase().contains(search.toLowerCase()))
+					if (contains(item.getRoomId(), lowerCaseSearch))
 						continue;
 					else i.remove();
 				}
@@ -798,28 +797,20 @@ public abstract class DataStore {
 				Collections.sort(roomList, new Comparator<ConferenceRoom>() {
 					@Override
 					public int compare(ConferenceRoom room1, ConferenceRoom room2) {
-						Comparable c1 = null;
-						Comparable c2 = null;
+						int result = 0;
 
 						if (sortBy.equals("roomId")) {
-							c1 = room1.getRoomId().toLowerCase();
-							c2 = room2.getRoomId().toLowerCase();
+							result = room1.getRoomId().compareToIgnoreCase(room2.getRoomId());
 						} else if (sortBy.equals("startDate")) {
-							c1 = new Long(room1.getStartDate());
-							c2 = new Long(room2.getStartDate());
+							result = Long.compare(room1.getStartDate(), room2.getStartDate());
 						} else if (sortBy.equals("endDate")) {
-							c1 = new Long(room1.getEndDate());
-							c2 = new Long(room2.getEndDate());
-						} else if (sortBy != null && !(sortBy.isEmpty())) {
-							//Wrong entry check to not get null pointer.
+							result = Long.compare(room1.getEndDate(), room2.getEndDate());
 						}
 
 						if (orderBy.equals("desc")) {
-							return c2.compareTo(c1);
-						} else if (orderBy != null && !(orderBy.isEmpty())) {
-							//Wrong entry check to not get null pointer.
+							return -result;
 						}
-						return c1.compareTo(c2);
+						return result;
 					}
 				});
 			}
@@ -0,0 +1,847 @@
+package io.antmedia.datastore.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.RandomStringUtils;
+
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.BroadcastStatus;
+import io.antmedia.datastore.db.types.ConferenceRoom;
+import io.antmedia.datastore.db.types.Endpoint;
+import io.antmedia.datastore.db.types.P2PConnection;
+import io.antmedia.datastore.db.types.SocialEndpointCredentials;
+import io.antmedia.datastore.db.types.StreamInfo;
+import io.antmedia.datastore.db.types.Subscriber;
+import io.antmedia.datastore.db.types.TensorFlowObject;
+import io.antmedia.datastore.db.types.Token;
+import io.antmedia.datastore.db.types.VoD;
+
+/**
+ * In memory data store that keeps broadcasts and VoDs in sorted secondary indexes.
+ *
+ * Broadcasts are indexed by name, date and status and VoDs are indexed by name and date so that a page
+ * of the list is read by iterating an index without sorting all records. Searchable fields are kept in an {@link NGramIndex}.
+ * Records are re-indexed when they are updated through the data store.
+ */
+public class IndexedInMemoryDataStore extends DataStore {
+
+	public static final String IP_CAMERA = "ipCamera";
+
+	public static final String STREAM_SOURCE = "streamSource";
+
+	private static final String SORT_BY_NAME = "name";
+
+	private static final String SORT_BY_DATE = "date";
+
+	private static final String SORT_BY_STATUS = "status";
+
+	private static final String ORDER_DESC = "desc";
+
+	private final Map<String, Broadcast> broadcastMap = new LinkedHashMap<>();
+	private final Map<String, VoD> vodMap = new LinkedHashMap<>();
+	private final Map<String, List<TensorFlowObject>> detectionMap = new LinkedHashMap<>();
+	private final Map<String, SocialEndpointCredentials> socialEndpointCredentialsMap = new LinkedHashMap<>();
+	private final Map<String, Token> tokenMap = new LinkedHashMap<>();
+	private final Map<String, Subscriber> subscriberMap = new LinkedHashMap<>();
+	private final Map<String, StreamInfo> streamInfoMap = new LinkedHashMap<>();
+	private final Map<String, ConferenceRoom> roomMap = new LinkedHashMap<>();
+	private final Map<String, P2PConnection> p2pMap = new HashMap<>();
+
+	private final SortedIndex<Long> broadcastOrderIndex = new SortedIndex<>();
+	private final SortedIndex<String> broadcastNameIndex = new SortedIndex<>();
+	private final SortedIndex<Long> broadcastDateIndex = new SortedIndex<>();
+	private final SortedIndex<String> broadcastStatusIndex = new SortedIndex<>();
+	private final NGramIndex broadcastSearchIndex = new NGramIndex();
+
+	private final SortedIndex<Long> vodOrderIndex = new SortedIndex<>();
+	private final SortedIndex<String> vodNameIndex = new SortedIndex<>();
+	private final SortedIndex<Long> vodDateIndex = new SortedIndex<>();
+	private final NGramIndex vodSearchIndex = new NGramIndex();
+
+	/**
+	 * Insertion sequence of the records, it's used for the default order
+	 */
+	private long sequence = 0;
+
+	public IndexedInMemoryDataStore(String dbName) {
+		available = true;
+	}
+
+	private void indexBroadcast(Broadcast broadcast) {
+		String id = broadcast.getStreamId();
+		if (!broadcastMap.containsKey(id)) {
+			broadcastOrderIndex.put(id, sequence++);
+		}
+		broadcastNameIndex.put(id, broadcast.getName() != null ? broadcast.getName().toLowerCase() : "");
+		broadcastDateIndex.put(id, broadcast.getDate());
+		broadcastStatusIndex.put(id, broadcast.getStatus() != null ? broadcast.getStatus() : "");
+		broadcastSearchIndex.put(id, broadcast.getName(), id);
+	}
+
+	private void unindexBroadcast(String id) {
+		broadcastOrderIndex.remove(id);
+		broadcastNameIndex.remove(id);
+		broadcastDateIndex.remove(id);
+		broadcastStatusIndex.remove(id);
+		broadcastSearchIndex.remove(id);
+	}
+
+	private void indexVoD(VoD vod) {
+		String id = vod.getVodId();
+		if (!vodMap.containsKey(id)) {
+			vodOrderIndex.put(id, sequence++);
+		}
+		vodNameIndex.put(id, vod.getVodName() != null ? vod.getVodName().toLowerCase() : "");
+		vodDateIndex.put(id, vod.getCreationDate());
+		vodSearchIndex.put(id, vod.getVodName(), vod.getStreamId(), vod.getStreamName(), id);
+	}
+
+	private void unindexVoD(String id) {
+		vodOrderIndex.remove(id);
+		vodNameIndex.remove(id);
+		vodDateIndex.remove(id);
+		vodSearchIndex.remove(id);
+	}
+
+	/**
+	 * Reads a page of the records in the order of the index.
+	 *
+	 * If there are candidates, only candidates are sorted. Otherwise index is iterated in the requested order
+	 * and records are filtered until the page is filled. If there is no filter, iteration starts at the offset
+	 * so deep pages are read in O(log N + page size). If there is a filter, records before the offset are
+	 * iterated to apply the filter.
+	 */
+	private <T> List<T> getPage(SortedIndex<?> index, Map<String, T> recordMap, int offset, int size, boolean descending,
+			Set<String> candidates, Predicate<T> filter)
+	{
+		if (size > MAX_ITEM_IN_ONE_LIST) {
+			size = MAX_ITEM_IN_ONE_LIST;
+		}
+		if (offset < 0) {
+			offset = 0;
+		}
+
+		List<T> page = new ArrayList<>();
+		if (candidates != null) {
+			List<String> ids = new ArrayList<>(candidates);
+			index.sort(ids, descending);
+			int skipped = 0;
+			for (String id : ids) {
+				T record = recordMap.get(id);
+				if (record != null && (filter == null || filter.test(record))) {
+					if (skipped < offset) {
+						skipped++;
+					}
+					else if (page.size() < size) {
+						page.add(record);
+					}
+					else {
+						break;
+					}
+				}
+			}
+		}
+		else {
+			// records before the offset are not iterated if there is no filter
+			int skipped = filter == null ? offset : 0;
+			Iterator<String> iterator = index.iterator(descending, skipped);
+			while (iterator.hasNext() && page.size() < size) {
+				String id = iterator.next();
+				if (skipped < offset) {
+					if (filter.test(recordMap.get(id))) {
+						skipped++;
+					}
+				}
+				else {
+					T record = recordMap.get(id);
+					if (filter == null || filter.test(record)) {
+						page.add(record);
+					}
+				}
+			}
+		}
+		return page;
+	}
+
+	private static <T> List<T> crop(List<T> list, int offset, int size) {
+		if (offset < 0) {
+			offset = 0;
+		}
+		int toIndex = Math.min(offset + size, list.size());
+		if (offset >= toIndex) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(list.subList(offset, toIndex));
+	}
+
+	@Override
+	public synchronized String save(Broadcast broadcast) {
+		String streamId = null;
+		if (broadcast != null) {
+			try {
+				if (broadcast.getStreamId() == null || broadcast.getStreamId().isEmpty()) {
+					streamId = RandomStringUtils.randomAlphanumeric(12) + System.currentTimeMillis();
+					broadcast.setStreamId(streamId);
+				}
+				streamId = broadcast.getStreamId();
+				String rtmpURL = broadcast.getRtmpURL();
+				if (rtmpURL != null) {
+					rtmpURL += streamId;
+				}
+				broadcast.setRtmpURL(rtmpURL);
+				indexBroadcast(broadcast);
+				broadcastMap.put(streamId, broadcast);
+			} catch (Exception e) {
+				logger.error(e.getMessage());
+				streamId = null;
+			}
+		}
+		return streamId;
+	}
+
+	@Override
+	public synchronized Broadcast get(String id) {
+		return broadcastMap.get(id);
+	}
+
+	@Override
+	public synchronized VoD getVoD(String id) {
+		return vodMap.get(id);
+	}
+
+	@Override
+	public synchronized boolean updateStatus(String id, String status) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setStatus(status);
+			if (BroadcastStatus.LIVE_NOW.equals(status)) {
+				broadcast.setStartTime(System.currentTimeMillis());
+			}
+			broadcastStatusIndex.put(id, status != null ? status : "");
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	protected synchronized boolean updateSourceQualityParametersLocal(String id, String quality, double speed, int pendingPacketQueue) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null) {
+			if (quality != null) {
+				broadcast.setQuality(quality);
+			}
+			broadcast.setSpeed(speed);
+			broadcast.setPendingPacketSize(pendingPacketQueue);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized boolean updateDuration(String id, long duration) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setDuration(duration);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long getPartialVodNumber(String search) {
+		if (search == null || search.isEmpty()) {
+			return vodMap.size();
+		}
+		return vodSearchIndex.search(search).size();
+	}
+
+	@Override
+	public synchronized long getPartialBroadcastNumber(String search) {
+		if (search == null || search.isEmpty()) {
+			return broadcastMap.size();
+		}
+		return broadcastSearchIndex.search(search).size();
+	}
+
+	@Override
+	public synchronized boolean addEndpoint(String id, Endpoint endpoint) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null && endpoint != null) {
+			List<Endpoint> endPointList = broadcast.getEndPointList();
+			if (endPointList == null) {
+				endPointList = new ArrayList<>();
+			}
+			endPointList.add(endpoint);
+			broadcast.setEndPointList(endPointList);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized String addVod(VoD vod) {
+		String id = null;
+		if (vod != null) {
+			if (vod.getVodId() == null) {
+				vod.setVodId(RandomStringUtils.randomNumeric(24));
+			}
+			id = vod.getVodId();
+			indexVoD(vod);
+			vodMap.put(id, vod);
+		}
+		return id;
+	}
+
+	@Override
+	public synchronized long getBroadcastCount() {
+		return broadcastMap.size();
+	}
+
+	@Override
+	public synchronized boolean delete(String id) {
+		unindexBroadcast(id);
+		return broadcastMap.remove(id) != null;
+	}
+
+	@Override
+	public synchronized boolean deleteVod(String id) {
+		unindexVoD(id);
+		return vodMap.remove(id) != null;
+	}
+
+	@Override
+	public synchronized List<Broadcast> getBroadcastList(int offset, int size, String type, String sortBy, String orderBy, String search) {
+		SortedIndex<?> index = broadcastOrderIndex;
+		if (orderBy == null || orderBy.isEmpty()) {
+			//records are sorted only if both sort and order are specified
+		}
+		else if (SORT_BY_NAME.equals(sortBy)) {
+			index = broadcastNameIndex;
+		}
+		else if (SORT_BY_DATE.equals(sortBy)) {
+			index = broadcastDateIndex;
+		}
+		else if (SORT_BY_STATUS.equals(sortBy)) {
+			index = broadcastStatusIndex;
+		}
+		boolean descending = index != broadcastOrderIndex && ORDER_DESC.equals(orderBy);
+
+		Set<String> candidates = null;
+		if (search != null && !search.isEmpty()) {
+			candidates = broadcastSearchIndex.search(search);
+		}
+		Predicate<Broadcast> filter = null;
+		if (type != null && !type.isEmpty()) {
+			filter = broadcast -> type.equals(broadcast.getType());
+		}
+		return getPage(index, broadcastMap, offset, size, descending, candidates, filter);
+	}
+
+	@Override
+	public synchronized List<ConferenceRoom> getConferenceRoomList(int offset, int size, String sortBy, String orderBy, String search) {
+		ArrayList<ConferenceRoom> roomList = new ArrayList<>(roomMap.values());
+		return new ArrayList<>(sortAndCropConferenceRoomList(searchOnServerConferenceRoom(roomList, search), offset, size, sortBy, orderBy));
+	}
+
+	@Override
+	public synchronized boolean removeEndpoint(String id, Endpoint endpoint, boolean checkRTMPUrl) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null && endpoint != null && broadcast.getEndPointList() != null) {
+			for (Iterator<Endpoint> iterator = broadcast.getEndPointList().iterator(); iterator.hasNext();) {
+				Endpoint item = iterator.next();
+				if (checkRTMPUrl ? item.getRtmpUrl().equals(endpoint.getRtmpUrl())
+						: item.getEndpointServiceId().equals(endpoint.getEndpointServiceId())) {
+					iterator.remove();
+					result = true;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized List<Broadcast> getExternalStreamsList() {
+		List<Broadcast> streamsList = new ArrayList<>();
+		for (Broadcast broadcast : broadcastMap.values()) {
+			if (IP_CAMERA.equals(broadcast.getType()) || STREAM_SOURCE.equals(broadcast.getType())) {
+				streamsList.add(broadcast);
+			}
+		}
+		return streamsList;
+	}
+
+	@Override
+	public synchronized void close() {
+		available = false;
+	}
+
+	@Override
+	public synchronized List<VoD> getVodList(int offset, int size, String sortBy, String orderBy, String filterStreamId, String search) {
+		SortedIndex<?> index = vodOrderIndex;
+		if (orderBy == null || orderBy.isEmpty()) {
+			//records are sorted only if both sort and order are specified
+		}
+		else if (SORT_BY_NAME.equals(sortBy)) {
+			index = vodNameIndex;
+		}
+		else if (SORT_BY_DATE.equals(sortBy)) {
+			index = vodDateIndex;
+		}
+		boolean descending = index != vodOrderIndex && ORDER_DESC.equals(orderBy);
+
+		Set<String> candidates = null;
+		if (search != null && !search.isEmpty()) {
+			candidates = vodSearchIndex.search(search);
+		}
+		Predicate<VoD> filter = null;
+		if (filterStreamId != null && !filterStreamId.isEmpty()) {
+			filter = vod -> filterStreamId.equals(vod.getStreamId());
+		}
+		return getPage(index, vodMap, offset, size, descending, candidates, filter);
+	}
+
+	@Override
+	public synchronized boolean removeAllEndpoints(String id) {
+		Broadcast broadcast = broadcastMap.get(id);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setEndPointList(null);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long getTotalVodNumber() {
+		return vodMap.size();
+	}
+
+	@Override
+	public synchronized long getTotalBroadcastNumber() {
+		return broadcastMap.size();
+	}
+
+	@Override
+	public synchronized void saveDetection(String id, long timeElapsed, List<TensorFlowObject> detectedObjects) {
+		if (detectedObjects != null) {
+			List<TensorFlowObject> detectionList = detectionMap.computeIfAbsent(id, k -> new ArrayList<>());
+			for (TensorFlowObject tensorFlowObject : detectedObjects) {
+				tensorFlowObject.setDetectionTime(timeElapsed);
+				detectionList.add(tensorFlowObject);
+			}
+		}
+	}
+
+	@Override
+	public synchronized List<TensorFlowObject> getDetectionList(String idFilter, int offsetSize, int batchSize) {
+		List<TensorFlowObject> list = new ArrayList<>();
+		for (Map.Entry<String, List<TensorFlowObject>> entry : detectionMap.entrySet()) {
+			if (idFilter == null || entry.getKey().startsWith(idFilter)) {
+				list.addAll(entry.getValue());
+			}
+		}
+		return crop(list, offsetSize, Math.min(batchSize, MAX_ITEM_IN_ONE_LIST));
+	}
+
+	@Override
+	public synchronized List<TensorFlowObject> getDetection(String id) {
+		List<TensorFlowObject> detectionList = detectionMap.get(id);
+		return detectionList != null ? new ArrayList<>(detectionList) : null;
+	}
+
+	@Override
+	public synchronized boolean saveToken(Token token) {
+		boolean result = false;
+		if (token != null && token.getStreamId() != null && token.getTokenId() != null) {
+			tokenMap.put(token.getTokenId(), token);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized List<Token> listAllTokens(String streamId, int offset, int size) {
+		List<Token> list = new ArrayList<>();
+		for (Token token : tokenMap.values()) {
+			if (token.getStreamId().equals(streamId)) {
+				list.add(token);
+			}
+		}
+		return crop(list, offset, Math.min(size, MAX_ITEM_IN_ONE_LIST));
+	}
+
+	@Override
+	public synchronized Token validateToken(Token token) {
+		Token fetchedToken = null;
+		if (token != null && token.getTokenId() != null) {
+			fetchedToken = tokenMap.get(token.getTokenId());
+			if (fetchedToken != null && fetchedToken.getType().equals(token.getType())
+					&& fetchedToken.getStreamId().equals(token.getStreamId())
+					&& fetchedToken.getExpireDate() > System.currentTimeMillis() / 1000)
+			{
+				if (Token.PLAY_TOKEN.equals(fetchedToken.getType())) {
+					tokenMap.remove(fetchedToken.getTokenId());
+				}
+			}
+			else {
+				fetchedToken = null;
+			}
+		}
+		return fetchedToken;
+	}
+
+	@Override
+	public synchronized boolean revokeTokens(String streamId) {
+		return tokenMap.values().removeIf(token -> token.getStreamId().equals(streamId));
+	}
+
+	@Override
+	public synchronized boolean deleteToken(String tokenId) {
+		return tokenMap.remove(tokenId) != null;
+	}
+
+	@Override
+	public synchronized Token getToken(String tokenId) {
+		return tokenMap.get(tokenId);
+	}
+
+	@Override
+	public synchronized List<Subscriber> listAllSubscribers(String streamId, int offset, int size) {
+		List<Subscriber> list = new ArrayList<>();
+		for (Subscriber subscriber : subscriberMap.values()) {
+			if (subscriber.getStreamId().equals(streamId)) {
+				list.add(subscriber);
+			}
+		}
+		return crop(list, offset, Math.min(size, MAX_ITEM_IN_ONE_LIST));
+	}
+
+	@Override
+	public synchronized boolean addSubscriber(String streamId, Subscriber subscriber) {
+		boolean result = false;
+		if (streamId != null && subscriber != null && subscriber.getSubscriberId() != null) {
+			subscriber.setStreamId(streamId);
+			subscriberMap.put(subscriber.getSubscriberKey(), subscriber);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized boolean deleteSubscriber(String streamId, String subscriberId) {
+		return subscriberMap.remove(Subscriber.getDBKey(streamId, subscriberId)) != null;
+	}
+
+	@Override
+	public synchronized boolean revokeSubscribers(String streamId) {
+		return subscriberMap.values().removeIf(subscriber -> subscriber.getStreamId().equals(streamId));
+	}
+
+	@Override
+	public synchronized Subscriber getSubscriber(String streamId, String subscriberId) {
+		return subscriberMap.get(Subscriber.getDBKey(streamId, subscriberId));
+	}
+
+	@Override
+	public synchronized boolean resetSubscribersConnectedStatus() {
+		for (Subscriber subscriber : subscriberMap.values()) {
+			subscriber.setConnected(false);
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized boolean setMp4Muxing(String streamId, int enabled) {
+		Broadcast broadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (broadcast != null && (enabled == 1 || enabled == 0 || enabled == -1)) {
+			broadcast.setMp4Enabled(enabled);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized boolean setWebMMuxing(String streamId, int enabled) {
+		Broadcast broadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (broadcast != null && (enabled == 1 || enabled == 0 || enabled == -1)) {
+			broadcast.setWebMEnabled(enabled);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized int fetchUserVodList(File filedir) {
+		if (filedir == null) {
+			return 0;
+		}
+
+		List<String> userVodIds = new ArrayList<>();
+		for (VoD vod : vodMap.values()) {
+			if (VoD.USER_VOD.equals(vod.getType())) {
+				userVodIds.add(vod.getVodId());
+			}
+		}
+		for (String vodId : userVodIds) {
+			deleteVod(vodId);
+		}
+
+		int numberOfSavedFiles = 0;
+		File[] listOfFiles = filedir.listFiles();
+		if (listOfFiles != null) {
+			for (File file : listOfFiles) {
+				String fileName = file.getName();
+				String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
+				if (file.isFile() && ("mp4".equals(extension) || "flv".equals(extension) || "mkv".equals(extension))) {
+					String relativePath = "streams/" + filedir.getName() + "/" + fileName;
+					VoD vod = new VoD("vodFile", "vodFile", relativePath, fileName, System.currentTimeMillis(), 0,
+							file.length(), VoD.USER_VOD, RandomStringUtils.randomNumeric(24));
+					addVod(vod);
+					numberOfSavedFiles++;
+				}
+			}
+		}
+		return numberOfSavedFiles;
+	}
+
+	@Override
+	public synchronized SocialEndpointCredentials addSocialEndpointCredentials(SocialEndpointCredentials credentials) {
+		SocialEndpointCredentials addedCredential = null;
+		if (credentials != null && credentials.getAccountName() != null && credentials.getAccessToken() != null
+				&& credentials.getServiceName() != null)
+		{
+			if (credentials.getId() == null) {
+				credentials.setId(RandomStringUtils.randomAlphanumeric(6));
+			}
+			socialEndpointCredentialsMap.put(credentials.getId(), credentials);
+			addedCredential = credentials;
+		}
+		return addedCredential;
+	}
+
+	@Override
+	public synchronized List<SocialEndpointCredentials> getSocialEndpoints(int offset, int size) {
+		return crop(new ArrayList<>(socialEndpointCredentialsMap.values()), offset, size);
+	}
+
+	@Override
+	public synchronized boolean removeSocialEndpointCredentials(String id) {
+		return socialEndpointCredentialsMap.remove(id) != null;
+	}
+
+	@Override
+	public synchronized SocialEndpointCredentials getSocialEndpointCredentials(String id) {
+		return id != null ? socialEndpointCredentialsMap.get(id) : null;
+	}
+
+	@Override
+	public synchronized long getActiveBroadcastCount() {
+		long activeBroadcastCount = 0;
+		for (Broadcast broadcast : broadcastMap.values()) {
+			if (BroadcastStatus.LIVE_NOW.equals(broadcast.getStatus())) {
+				activeBroadcastCount++;
+			}
+		}
+		return activeBroadcastCount;
+	}
+
+	@Override
+	public synchronized boolean updateBroadcastFields(String streamId, Broadcast broadcast) {
+		Broadcast oldBroadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (oldBroadcast != null && broadcast != null) {
+			updateStreamInfo(oldBroadcast, broadcast);
+			indexBroadcast(oldBroadcast);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	protected synchronized boolean updateHLSViewerCountLocal(String streamId, int diffCount) {
+		Broadcast broadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setHlsViewerCount(broadcast.getHlsViewerCount() + diffCount);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized long getObjectDetectedTotal(String streamId) {
+		List<TensorFlowObject> detectionList = detectionMap.get(streamId);
+		return detectionList != null ? detectionList.size() : 0;
+	}
+
+	@Override
+	protected synchronized boolean updateWebRTCViewerCountLocal(String streamId, boolean increment) {
+		Broadcast broadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setWebRTCViewerCount(broadcast.getWebRTCViewerCount() + (increment ? 1 : -1));
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	protected synchronized boolean updateRtmpViewerCountLocal(String streamId, boolean increment) {
+		Broadcast broadcast = broadcastMap.get(streamId);
+		boolean result = false;
+		if (broadcast != null) {
+			broadcast.setRtmpViewerCount(broadcast.getRtmpViewerCount() + (increment ? 1 : -1));
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void saveStreamInfo(StreamInfo streamInfo) {
+		streamInfoMap.put(streamInfo.getStreamId() + streamInfo.getHost() + streamInfo.getVideoPort() + streamInfo.getAudioPort(), streamInfo);
+	}
+
+	@Override
+	public synchronized void addStreamInfoList(List<StreamInfo> streamInfoList) {
+		for (StreamInfo streamInfo : streamInfoList) {
+			saveStreamInfo(streamInfo);
+		}
+	}
+
+	@Override
+	public synchronized List<StreamInfo> getStreamInfoList(String streamId) {
+		List<StreamInfo> list = new ArrayList<>();
+		for (StreamInfo streamInfo : streamInfoMap.values()) {
+			if (streamInfo.getStreamId().equals(streamId)) {
+				list.add(streamInfo);
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public synchronized void clearStreamInfoList(String streamId) {
+		streamInfoMap.values().removeIf(streamInfo -> streamInfo.getStreamId().equals(streamId));
+	}
+
+	@Override
+	public synchronized boolean createConferenceRoom(ConferenceRoom room) {
+		boolean result = false;
+		if (room != null && room.getRoomId() != null) {
+			roomMap.put(room.getRoomId(), room);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized boolean editConferenceRoom(String roomId, ConferenceRoom room) {
+		boolean result = false;
+		if (roomId != null && room != null && room.getRoomId() != null && roomMap.containsKey(roomId)) {
+			roomMap.remove(roomId);
+			roomMap.put(room.getRoomId(), room);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized boolean deleteConferenceRoom(String roomId) {
+		return roomId != null && roomMap.remove(roomId) != null;
+	}
+
+	@Override
+	public synchronized ConferenceRoom getConferenceRoom(String roomId) {
+		return roomMap.get(roomId);
+	}
+
+	@Override
+	public synchronized boolean createP2PConnection(P2PConnection conn) {
+		boolean result = false;
+		if (conn != null) {
+			p2pMap.put(conn.getStreamId(), conn);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized P2PConnection getP2PConnection(String streamId) {
+		return p2pMap.get(streamId);
+	}
+
+	@Override
+	public synchronized boolean deleteP2PConnection(String streamId) {
+		return p2pMap.remove(streamId) != null;
+	}
+
+	@Override
+	public synchronized boolean addSubTrack(String mainTrackId, String subTrackId) {
+		Broadcast broadcast = broadcastMap.get(mainTrackId);
+		boolean result = false;
+		if (broadcast != null && subTrackId != null) {
+			List<String> subTracks = broadcast.getSubTrackStreamIds();
+			if (subTracks == null) {
+				subTracks = new ArrayList<>();
+			}
+			subTracks.add(subTrackId);
+			broadcast.setSubTrackStreamIds(subTracks);
+			result = true;
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized int resetBroadcasts(String hostAddress) {
+		int operationCount = 0;
+		Collection<Broadcast> broadcasts = new ArrayList<>(broadcastMap.values());
+		for (Broadcast broadcast : broadcasts) {
+			if (broadcast.isZombi()) {
+				delete(broadcast.getStreamId());
+			}
+			else {
+				broadcast.setHlsViewerCount(0);
+				broadcast.setWebRTCViewerCount(0);
+				broadcast.setRtmpViewerCount(0);
+				if (BroadcastStatus.LIVE_NOW.equals(broadcast.getStatus())) {
+					updateStatus(broadcast.getStreamId(), BroadcastStatus.LIVE_STOPPED);
+				}
+			}
+			operationCount++;
+		}
+		return operationCount;
+	}
+
+	@Override
+	public synchronized int getTotalWebRTCViewersCount() {
+		long now = System.currentTimeMillis();
+		if (now - totalWebRTCViewerCountLastUpdateTime > TOTAL_WEBRTC_VIEWER_COUNT_CACHE_TIME) {
+			int total = 0;
+			for (Broadcast broadcast : broadcastMap.values()) {
+				if (BroadcastStatus.LIVE_NOW.equals(broadcast.getStatus())) {
+					total += broadcast.getWebRTCViewerCount();
+				}
+			}
+			totalWebRTCViewerCount = total;
+			totalWebRTCViewerCountLastUpdateTime = now;
+		}
+		return totalWebRTCViewerCount;
+	}
+}
@@ -0,0 +1,121 @@
+package io.antmedia.datastore.db;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search index that finds the records whose fields contain a string case insensitively.
+ *
+ * Lowercase fields of each record are split into n-grams and the ids of the records are kept for each n-gram.
+ * A search takes the records of the rarest n-gram of the searched string as candidates and checks them
+ * with {@link String#contains(CharSequence)}. Searched strings shorter than {@link #GRAM_LENGTH}
+ * are checked against the lowercase fields of all records without lowercasing them again.
+ *
+ * It's not thread safe.
+ */
+public class NGramIndex {
+
+	public static final int GRAM_LENGTH = 3;
+
+	private final Map<String, Set<String>> postings = new HashMap<>();
+
+	private final Map<String, String[]> fieldMap = new HashMap<>();
+
+	/**
+	 * Adds the record to the index or replaces its fields
+	 * @param id of the record
+	 * @param fields searchable fields of the record, null fields are skipped
+	 */
+	public void put(String id, String... fields) {
+		remove(id);
+		String[] lowerCaseFields = new String[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i] != null) {
+				lowerCaseFields[i] = fields[i].toLowerCase();
+				for (int j = 0; j + GRAM_LENGTH <= lowerCaseFields[i].length(); j++) {
+					postings.computeIfAbsent(lowerCaseFields[i].substring(j, j + GRAM_LENGTH), k -> new HashSet<>()).add(id);
+				}
+			}
+		}
+		fieldMap.put(id, lowerCaseFields);
+	}
+
+	/**
+	 * Removes the record from the index
+	 * @param id of the record
+	 */
+	public void remove(String id) {
+		String[] lowerCaseFields = fieldMap.remove(id);
+		if (lowerCaseFields != null) {
+			for (String field : lowerCaseFields) {
+				if (field != null) {
+					for (int j = 0; j + GRAM_LENGTH <= field.length(); j++) {
+						String gram = field.substring(j, j + GRAM_LENGTH);
+						Set<String> ids = postings.get(gram);
+						if (ids != null) {
+							ids.remove(id);
+							if (ids.isEmpty()) {
+								postings.remove(gram);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param search string to be searched
+	 * @return ids of the records that have a field containing the search string
+	 */
+	public Set<String> search(String search) {
+		String query = search.toLowerCase();
+		Set<String> result = new HashSet<>();
+		if (query.length() < GRAM_LENGTH) {
+			for (Map.Entry<String, String[]> entry : fieldMap.entrySet()) {
+				if (matches(entry.getValue(), query)) {
+					result.add(entry.getKey());
+				}
+			}
+			return result;
+		}
+
+		Set<String> smallest = null;
+		for (int j = 0; j + GRAM_LENGTH <= query.length(); j++) {
+			Set<String> ids = postings.get(query.substring(j, j + GRAM_LENGTH));
+			if (ids == null) {
+				return result;
+			}
+			if (smallest == null || ids.size() < smallest.size()) {
+				smallest = ids;
+			}
+		}
+
+		for (String id : smallest) {
+			if (matches(fieldMap.get(id), query)) {
+				result.add(id);
+			}
+		}
+		return result;
+	}
+
+	private static boolean matches(String[] lowerCaseFields, String query) {
+		for (String field : lowerCaseFields) {
+			if (field != null && field.contains(query)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int size() {
+		return fieldMap.size();
+	}
+
+	public void clear() {
+		postings.clear();
+		fieldMap.clear();
+	}
+}
@@ -0,0 +1,260 @@
+package io.antmedia.datastore.db;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Secondary index that keeps the ids of the records sorted by a key.
+ *
+ * Entries are kept in a balanced tree(treap) whose nodes know the size of their subtree, so that a record is added,
+ * moved or removed in O(log N) and the record at a position is found in O(log N). A page is read by iterating the tree
+ * from the position of its first record, so reading a page is O(log N + page size) regardless of the offset.
+ * Ties are ordered by the id of the record.
+ *
+ * Key of a record is a snapshot taken when it's put to the index. Record should be put again when
+ * the indexed field changes.
+ *
+ * It's not thread safe.
+ *
+ * @param <K> type of the sort key
+ */
+public class SortedIndex<K extends Comparable<K>> {
+
+	private static class Entry<K> {
+		private final K key;
+		private final String id;
+
+		private Entry(K key, String id) {
+			this.key = key;
+			this.id = id;
+		}
+	}
+
+	private static class Node<K> {
+		private final Entry<K> entry;
+		private final int priority;
+		private Node<K> left;
+		private Node<K> right;
+		private int size = 1;
+
+		private Node(Entry<K> entry, int priority) {
+			this.entry = entry;
+			this.priority = priority;
+		}
+	}
+
+	private final Comparator<Entry<K>> comparator = (entry1, entry2) -> {
+		int result = entry1.key.compareTo(entry2.key);
+		return result != 0 ? result : entry1.id.compareTo(entry2.id);
+	};
+
+	private Node<K> root;
+
+	private final Map<String, Entry<K>> entryMap = new HashMap<>();
+
+	/**
+	 * State of the xorshift generator of the node priorities
+	 */
+	private int seed = 0x2545F491;
+
+	/**
+	 * Adds the record to the index or moves it to the position of the new key
+	 * @param id of the record
+	 * @param key sort key of the record, it should not be null
+	 */
+	public void put(String id, K key) {
+		remove(id);
+		Entry<K> entry = new Entry<>(key, id);
+		root = insert(root, new Node<>(entry, nextPriority()));
+		entryMap.put(id, entry);
+	}
+
+	/**
+	 * Removes the record from the index
+	 * @param id of the record
+	 */
+	public void remove(String id) {
+		Entry<K> entry = entryMap.remove(id);
+		if (entry != null) {
+			root = delete(root, entry);
+		}
+	}
+
+	/**
+	 * @param descending if true, ids are iterated from the end
+	 * @return iterator of the ids in the index order. Index should not be changed while it's used
+	 */
+	public Iterator<String> iterator(boolean descending) {
+		return iterator(descending, 0);
+	}
+
+	/**
+	 * @param descending if true, ids are iterated from the end
+	 * @param position number of the ids that are skipped in the iteration order
+	 * @return iterator of the ids in the index order starting from the position. Index should not be changed while it's used
+	 */
+	public Iterator<String> iterator(boolean descending, int position) {
+		Deque<Node<K>> stack = new ArrayDeque<>();
+		// path to the node at the position, nodes after it in the iteration order are kept in the stack
+		Node<K> node = root;
+		int remaining = position;
+		while (node != null) {
+			int before = size(descending ? node.right : node.left);
+			if (remaining <= before) {
+				stack.push(node);
+				if (remaining == before) {
+					break;
+				}
+				node = descending ? node.right : node.left;
+			}
+			else {
+				remaining -= before + 1;
+				node = descending ? node.left : node.right;
+			}
+		}
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return !stack.isEmpty();
+			}
+
+			@Override
+			public String next() {
+				if (stack.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				Node<K> current = stack.pop();
+				Node<K> next = descending ? current.left : current.right;
+				while (next != null) {
+					stack.push(next);
+					next = descending ? next.right : next.left;
+				}
+				return current.entry.id;
+			}
+		};
+	}
+
+	/**
+	 * Sorts the ids in the index order. Ids that are not in the index are moved to the end
+	 * @param ids to be sorted
+	 * @param descending
+	 */
+	public void sort(List<String> ids, boolean descending) {
+		Comparator<String> idComparator = (id1, id2) -> {
+			Entry<K> entry1 = entryMap.get(id1);
+			Entry<K> entry2 = entryMap.get(id2);
+			if (entry1 == null || entry2 == null) {
+				return entry1 == null ? (entry2 == null ? 0 : 1) : -1;
+			}
+			int result = comparator.compare(entry1, entry2);
+			return descending ? -result : result;
+		};
+		ids.sort(idComparator);
+	}
+
+	public int size() {
+		return size(root);
+	}
+
+	public void clear() {
+		root = null;
+		entryMap.clear();
+	}
+
+	private int nextPriority() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	private static int size(Node<?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static <K> void updateSize(Node<K> node) {
+		node.size = 1 + size(node.left) + size(node.right);
+	}
+
+	private Node<K> insert(Node<K> node, Node<K> newNode) {
+		if (node == null) {
+			return newNode;
+		}
+		if (comparator.compare(newNode.entry, node.entry) < 0) {
+			node.left = insert(node.left, newNode);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		}
+		else {
+			node.right = insert(node.right, newNode);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		updateSize(node);
+		return node;
+	}
+
+	private Node<K> delete(Node<K> node, Entry<K> entry) {
+		if (node == null) {
+			return null;
+		}
+		int result = comparator.compare(entry, node.entry);
+		if (result < 0) {
+			node.left = delete(node.left, entry);
+		}
+		else if (result > 0) {
+			node.right = delete(node.right, entry);
+		}
+		else {
+			return merge(node.left, node.right);
+		}
+		updateSize(node);
+		return node;
+	}
+
+	/**
+	 * Merges two subtrees where all entries of the left one are before the entries of the right one
+	 */
+	private Node<K> merge(Node<K> left, Node<K> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			updateSize(left);
+			return left;
+		}
+		right.left = merge(left, right.left);
+		updateSize(right);
+		return right;
+	}
+
+	private static <K> Node<K> rotateRight(Node<K> node) {
+		Node<K> left = node.left;
+		node.left = left.right;
+		left.right = node;
+		updateSize(node);
+		updateSize(left);
+		return left;
+	}
+
+	private static <K> Node<K> rotateLeft(Node<K> node) {
+		Node<K> right = node.right;
+		node.right = right.left;
+		right.left = node;
+		updateSize(node);
+		updateSize(right);
+		return right;
+	}
+}
@@ -0,0 +1,241 @@
+package io.antmedia.muxer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size classed pool of direct byte buffers that is used in the ingest path.
+ *
+ * Buffers are grouped into power of two size classes. Each size class has a shared bounded slab
+ * and each thread has a small cache in front of the slab so that a buffer which is acquired and
+ * released in the same thread does not touch any shared structure.
+ *
+ * Buffers are reference counted. The owner gets the buffer with one reference and every consumer that keeps
+ * the buffer after the call returns should {@link PooledBuffer#retain()} it and {@link PooledBuffer#release()}
+ * when it's done. Buffer returns to the pool when reference count drops to zero.
+ *
+ * Buffers that are bigger than the biggest size class are allocated and dropped without pooling.
+ *
+ */
+public class DirectBufferPool {
+
+	private static Logger logger = LoggerFactory.getLogger(DirectBufferPool.class);
+
+	/**
+	 * Smallest size class is 1KB
+	 */
+	public static final int MIN_SIZE_CLASS_SHIFT = 10;
+
+	/**
+	 * Biggest size class is 4MB. It's enough for 4K key frames
+	 */
+	public static final int MAX_SIZE_CLASS_SHIFT = 22;
+
+	private static final int SIZE_CLASS_COUNT = MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1;
+
+	/**
+	 * Max number of bytes kept in the shared slab of a size class
+	 */
+	public static final int DEFAULT_MAX_SLAB_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * Max number of bytes kept in the thread cache of a size class
+	 */
+	private static final int MAX_THREAD_CACHE_BYTES = 1024 * 1024;
+
+	private static final int MAX_THREAD_CACHE_COUNT = 16;
+
+	private static final int MAX_SLAB_COUNT = 1024;
+
+	private static final DirectBufferPool instance = new DirectBufferPool(DEFAULT_MAX_SLAB_BYTES);
+
+	private final ArrayBlockingQueue<PooledBuffer>[] slabs;
+
+	private final int[] threadCacheCapacity;
+
+	private final ThreadLocal<ArrayDeque<PooledBuffer>[]> threadCaches;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final AtomicLong outstandingCount = new AtomicLong(0);
+
+	private final AtomicLong allocatedBytes = new AtomicLong(0);
+
+	public static class PooledBuffer {
+
+		private final DirectBufferPool pool;
+		private final ByteBuffer buffer;
+		private final int sizeClass;
+		private final AtomicInteger refCount = new AtomicInteger(0);
+
+		private PooledBuffer(DirectBufferPool pool, ByteBuffer buffer, int sizeClass) {
+			this.pool = pool;
+			this.buffer = buffer;
+			this.sizeClass = sizeClass;
+		}
+
+		/**
+		 * @return the direct buffer whose limit is the requested size
+		 */
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		public int getRefCount() {
+			return refCount.get();
+		}
+
+		/**
+		 * Increments the reference count. Call it before passing the buffer to an asynchronous consumer
+		 * @return this
+		 */
+		public PooledBuffer retain() {
+			int count = refCount.incrementAndGet();
+			if (count <= 1) {
+				refCount.decrementAndGet();
+				throw new IllegalStateException("Buffer is already released");
+			}
+			return this;
+		}
+
+		/**
+		 * Decrements the reference count and returns the buffer to the pool if there is no reference left
+		 */
+		public void release() {
+			int count = refCount.decrementAndGet();
+			if (count == 0) {
+				pool.recycle(this);
+			}
+			else if (count < 0) {
+				refCount.incrementAndGet();
+				throw new IllegalStateException("Buffer is released more than retained");
+			}
+		}
+	}
+
+	public static DirectBufferPool getInstance() {
+		return instance;
+	}
+
+	@SuppressWarnings("unchecked")
+	public DirectBufferPool(int maxSlabBytes) {
+		slabs = new ArrayBlockingQueue[SIZE_CLASS_COUNT];
+		threadCacheCapacity = new int[SIZE_CLASS_COUNT];
+		for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+			int shift = MIN_SIZE_CLASS_SHIFT + i;
+			slabs[i] = new ArrayBlockingQueue<>(Math.max(1, Math.min(MAX_SLAB_COUNT, maxSlabBytes >> shift)));
+			threadCacheCapacity[i] = Math.max(1, Math.min(MAX_THREAD_CACHE_COUNT, MAX_THREAD_CACHE_BYTES >> shift));
+		}
+		threadCaches = ThreadLocal.withInitial(() -> {
+			ArrayDeque<PooledBuffer>[] caches = new ArrayDeque[SIZE_CLASS_COUNT];
+			for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+				caches[i] = new ArrayDeque<>(threadCacheCapacity[i]);
+			}
+			return caches;
+		});
+	}
+
+	/**
+	 * @param size
+	 * @return the size class index of the size or -1 if it's bigger than the biggest size class
+	 */
+	public static int getSizeClass(int size) {
+		if (size <= (1 << MIN_SIZE_CLASS_SHIFT)) {
+			return 0;
+		}
+		int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+		if (shift > MAX_SIZE_CLASS_SHIFT) {
+			return -1;
+		}
+		return shift - MIN_SIZE_CLASS_SHIFT;
+	}
+
+	/**
+	 * Gets a buffer from the pool with one reference. Position of the buffer is zero and limit is the size
+	 *
+	 * @param size
+	 * @return
+	 */
+	public PooledBuffer acquire(int size) {
+		int sizeClass = getSizeClass(size);
+		PooledBuffer pooledBuffer = null;
+		if (sizeClass >= 0) {
+			pooledBuffer = threadCaches.get()[sizeClass].pollFirst();
+			if (pooledBuffer == null) {
+				pooledBuffer = slabs[sizeClass].poll();
+			}
+		}
+
+		if (pooledBuffer != null) {
+			hitCount.increment();
+		}
+		else {
+			missCount.increment();
+			int capacity = sizeClass >= 0 ? 1 << (MIN_SIZE_CLASS_SHIFT + sizeClass) : size;
+			pooledBuffer = new PooledBuffer(this, ByteBuffer.allocateDirect(capacity), sizeClass);
+			if (sizeClass >= 0) {
+				allocatedBytes.addAndGet(capacity);
+			}
+		}
+
+		pooledBuffer.buffer.clear().limit(size);
+		pooledBuffer.refCount.set(1);
+		outstandingCount.incrementAndGet();
+		return pooledBuffer;
+	}
+
+	private void recycle(PooledBuffer pooledBuffer) {
+		outstandingCount.decrementAndGet();
+		int sizeClass = pooledBuffer.sizeClass;
+		if (sizeClass < 0) {
+			//not pooled, let GC free it
+			return;
+		}
+
+		ArrayDeque<PooledBuffer> threadCache = threadCaches.get()[sizeClass];
+		if (threadCache.size() < threadCacheCapacity[sizeClass]) {
+			threadCache.addFirst(pooledBuffer);
+		}
+		else if (!slabs[sizeClass].offer(pooledBuffer)) {
+			allocatedBytes.addAndGet(-pooledBuffer.buffer.capacity());
+			logger.debug("Slab is full for size class:{} dropping the buffer", sizeClass);
+		}
+	}
+
+	/**
+	 * @return number of acquire calls that are served from the pool
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return number of acquire calls that allocate a new direct buffer
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return number of buffers that are acquired and not released yet
+	 */
+	public long getOutstandingCount() {
+		return outstandingCount.get();
+	}
+
+	/**
+	 * @return total capacity of the pooled buffers that are allocated and not dropped.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes.get();
+	}
+}
@@ -0,0 +1,363 @@
+package io.antmedia.muxer;
+
+import static org.bytedeco.ffmpeg.global.avformat.avio_alloc_context;
+import static org.bytedeco.ffmpeg.global.avformat.avio_close;
+import static org.bytedeco.ffmpeg.global.avformat.avio_context_free;
+import static org.bytedeco.ffmpeg.global.avformat.avio_flush;
+import static org.bytedeco.ffmpeg.global.avformat.avio_open2;
+import static org.bytedeco.ffmpeg.global.avutil.av_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_malloc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVIOContext;
+import org.bytedeco.ffmpeg.avformat.Write_packet_Pointer_BytePointer_int;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerPointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the recent HLS segments and the playlist of a stream in off-heap memory.
+ *
+ * HLS muxer opens each segment and the playlist through the io_open callback of its output context.
+ * When a store is attached to the context, these files are written to direct buffers instead of disk
+ * and they can be served with {@link #getSegment(String)} and {@link #getPlaylist()}. Only the last
+ * segments, number of which is the capacity, are kept. Files can optionally be written to disk in
+ * background for recording.
+ *
+ * Buffers are allocated once per stream, one for each kept segment and one for the segment being written,
+ * and they are reused when a segment is evicted. A buffer is replaced with a larger one only if a segment
+ * does not fit, so the buffers settle to the segment size of the stream. Since the capacity is larger than
+ * the playlist size, a segment is evicted a few segments after it's removed from the playlist and
+ * the readers of that segment have time to complete before its buffer is overwritten.
+ *
+ * Muxer urls are prefixed with {@link #MEMORY_URL_PREFIX}, which is not a protocol of FFmpeg, so the HLS
+ * muxer does not write the playlist and the segments to .tmp files and does not rename or delete them on disk.
+ * Spilled segments are deleted by the store when they are evicted if deleteSegments is set.
+ */
+public class HLSMemoryStore {
+
+	protected static Logger logger = LoggerFactory.getLogger(HLSMemoryStore.class);
+
+	private static final int IO_BUFFER_SIZE = 32768;
+
+	private static final int INITIAL_SEGMENT_BUFFER_SIZE = 256 * 1024;
+
+	private static final int INITIAL_PLAYLIST_BUFFER_SIZE = 4096;
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/**
+	 * Prefix of the output and segment urls of a muxer that writes to memory
+	 */
+	public static final String MEMORY_URL_PREFIX = "memory:";
+
+	private static final Map<String, HLSMemoryStore> stores = new ConcurrentHashMap<>();
+
+	private static final Map<Long, HLSMemoryStore> contextStores = new ConcurrentHashMap<>();
+
+	private static final Map<Long, SegmentWriter> writers = new ConcurrentHashMap<>();
+
+	private static ExecutorService spillExecutor;
+
+	private final String playlistPath;
+
+	private final int capacity;
+
+	private final boolean spillToDisk;
+
+	private final boolean deleteSegments;
+
+	private final LinkedHashMap<String, ByteBuffer> segments = new LinkedHashMap<>();
+
+	private ByteBuffer playlist;
+
+	private final ArrayDeque<ByteBuffer> freeSegmentBuffers = new ArrayDeque<>();
+
+	private final ArrayDeque<ByteBuffer> freePlaylistBuffers = new ArrayDeque<>();
+
+	private int allocationCount = 0;
+
+	/**
+	 * Buffers the bytes of a file that is opened by the muxer until it's closed
+	 */
+	static class SegmentWriter {
+		private final HLSMemoryStore store;
+		private final String url;
+		private final BytePointer opaque;
+		private ByteBuffer buffer;
+
+		SegmentWriter(HLSMemoryStore store, String url, ByteBuffer buffer) {
+			this.store = store;
+			this.url = url;
+			this.opaque = new BytePointer(1);
+			this.buffer = buffer;
+		}
+
+		void write(ByteBuffer data) {
+			if (buffer.remaining() < data.remaining()) {
+				ByteBuffer newBuffer = store.allocate(Math.max(buffer.capacity() + buffer.capacity() / 2, buffer.position() + data.remaining()));
+				buffer.flip();
+				newBuffer.put(buffer);
+				buffer = newBuffer;
+			}
+			buffer.put(data);
+		}
+
+		void close() {
+			buffer.flip();
+			store.onFileClosed(url, buffer);
+			opaque.close();
+		}
+	}
+
+	static class WriteCallback extends Write_packet_Pointer_BytePointer_int {
+		@Override
+		public int call(Pointer opaque, BytePointer buf, int bufSize) {
+			SegmentWriter writer = writers.get(opaque.address());
+			if (writer == null) {
+				return -1;
+			}
+			writer.write(buf.position(0).limit(bufSize).asByteBuffer());
+			return bufSize;
+		}
+	}
+
+	static class IOOpenCallback extends AVFormatContext.Io_open_AVFormatContext_PointerPointer_BytePointer_int_PointerPointer {
+		@Override
+		public int call(AVFormatContext s, PointerPointer pb, BytePointer url, int flags, PointerPointer options) {
+			HLSMemoryStore store = contextStores.get(s.address());
+			if (store == null) {
+				return avio_open2(pb, url, flags, null, options);
+			}
+			SegmentWriter writer = store.openWriter(url.getString());
+			AVIOContext avio = avio_alloc_context(new BytePointer(av_malloc(IO_BUFFER_SIZE)), IO_BUFFER_SIZE, 1, writer.opaque, null, writeCallback, null);
+			writers.put(writer.opaque.address(), writer);
+			pb.put(0, avio);
+			return 0;
+		}
+	}
+
+	static class IOCloseCallback extends AVFormatContext.Io_close_AVFormatContext_AVIOContext {
+		@Override
+		public void call(AVFormatContext s, AVIOContext pb) {
+			if (pb == null || pb.isNull()) {
+				return;
+			}
+			SegmentWriter writer = pb.opaque() != null ? writers.get(pb.opaque().address()) : null;
+			if (writer == null) {
+				avio_close(pb);
+				return;
+			}
+			avio_flush(pb);
+			writers.remove(writer.opaque.address());
+			av_free(pb.buffer());
+			avio_context_free(pb);
+			writer.close();
+		}
+	}
+
+	static WriteCallback writeCallback = new WriteCallback();
+
+	static IOOpenCallback ioOpenCallback = new IOOpenCallback();
+
+	static IOCloseCallback ioCloseCallback = new IOCloseCallback();
+
+	/**
+	 * @param playlistPath absolute path of the playlist file
+	 * @param capacity number of segments to keep in memory
+	 * @param spillToDisk if true, segments and playlist are also written to disk in background
+	 * @param deleteSegments if true, segments written to disk are deleted when they are evicted
+	 */
+	public HLSMemoryStore(String playlistPath, int capacity, boolean spillToDisk, boolean deleteSegments) {
+		this.playlistPath = playlistPath;
+		this.capacity = capacity;
+		this.spillToDisk = spillToDisk;
+		this.deleteSegments = deleteSegments;
+		for (int i = 0; i <= capacity; i++) {
+			freeSegmentBuffers.add(allocate(INITIAL_SEGMENT_BUFFER_SIZE));
+		}
+		freePlaylistBuffers.add(allocate(INITIAL_PLAYLIST_BUFFER_SIZE));
+		freePlaylistBuffers.add(allocate(INITIAL_PLAYLIST_BUFFER_SIZE));
+	}
+
+	/**
+	 * @param playlistPath absolute path of the playlist file
+	 * @return store of the stream or null if the stream is not kept in memory
+	 */
+	public static HLSMemoryStore getStore(String playlistPath) {
+		return stores.get(playlistPath);
+	}
+
+	/**
+	 * Makes the muxer write its files to this store. It should be called before writing the header
+	 * @param context output context of the HLS muxer
+	 */
+	public void attach(AVFormatContext context) {
+		stores.put(playlistPath, this);
+		contextStores.put(context.address(), this);
+		context.io_open(ioOpenCallback);
+		context.io_close(ioCloseCallback);
+	}
+
+	/**
+	 * Stops writing the files of the context to this store. Store can still be used to serve the files
+	 * @param context output context of the HLS muxer
+	 */
+	public void detach(AVFormatContext context) {
+		contextStores.remove(context.address());
+	}
+
+	/**
+	 * Removes the store so that its memory is released
+	 */
+	public void release() {
+		stores.remove(playlistPath, this);
+		synchronized (this) {
+			segments.clear();
+			playlist = null;
+			freeSegmentBuffers.clear();
+			freePlaylistBuffers.clear();
+		}
+	}
+
+	/**
+	 * @param url of the file opened by the muxer
+	 * @return path of the file without the memory prefix and the temporary file suffix
+	 */
+	static String getFinalUrl(String url) {
+		if (url.startsWith(MEMORY_URL_PREFIX)) {
+			url = url.substring(MEMORY_URL_PREFIX.length());
+		}
+		return url.endsWith(TEMP_FILE_SUFFIX) ? url.substring(0, url.length() - TEMP_FILE_SUFFIX.length()) : url;
+	}
+
+	private synchronized ByteBuffer allocate(int size) {
+		allocationCount++;
+		return ByteBuffer.allocateDirect(size);
+	}
+
+	/**
+	 * @param url of the file opened by the muxer
+	 * @return writer of the file with a free buffer of the store
+	 */
+	synchronized SegmentWriter openWriter(String url) {
+		ByteBuffer buffer = getFinalUrl(url).endsWith(".m3u8") ? freePlaylistBuffers.poll() : freeSegmentBuffers.poll();
+		if (buffer == null) {
+			//store is released or more files than the buffers are open
+			buffer = allocate(INITIAL_SEGMENT_BUFFER_SIZE);
+		}
+		buffer.clear();
+		return new SegmentWriter(this, url, buffer);
+	}
+
+	private void onFileClosed(String tempUrl, ByteBuffer data) {
+		String url = getFinalUrl(tempUrl);
+		File file = new File(url);
+		String name = file.getName();
+		String evicted = null;
+		synchronized (this) {
+			if (name.endsWith(".m3u8")) {
+				if (playlist != null) {
+					freePlaylistBuffers.add(playlist);
+				}
+				playlist = data;
+			}
+			else {
+				ByteBuffer replaced = segments.put(name, data);
+				if (replaced != null) {
+					freeSegmentBuffers.add(replaced);
+				}
+				Iterator<Map.Entry<String, ByteBuffer>> iterator = segments.entrySet().iterator();
+				while (segments.size() > capacity && iterator.hasNext()) {
+					Map.Entry<String, ByteBuffer> entry = iterator.next();
+					evicted = entry.getKey();
+					freeSegmentBuffers.add(entry.getValue());
+					iterator.remove();
+				}
+			}
+		}
+		if (spillToDisk) {
+			ByteBuffer spilled = data.duplicate();
+			File evictedFile = deleteSegments && evicted != null ? new File(file.getParentFile(), evicted) : null;
+			getSpillExecutor().execute(() -> {
+				writeToDisk(url, spilled);
+				if (evictedFile != null) {
+					deleteFromDisk(evictedFile);
+				}
+			});
+		}
+	}
+
+	private static synchronized ExecutorService getSpillExecutor() {
+		if (spillExecutor == null) {
+			spillExecutor = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "hls-memory-spill");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return spillExecutor;
+	}
+
+	private static void writeToDisk(String path, ByteBuffer data) {
+		try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (data.hasRemaining()) {
+				channel.write(data);
+			}
+		} catch (IOException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	private static void deleteFromDisk(File file) {
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * @param name file name of the segment
+	 * @return read only buffer of the segment or null if it's not in memory
+	 */
+	public synchronized ByteBuffer getSegment(String name) {
+		ByteBuffer segment = segments.get(name);
+		return segment != null ? segment.asReadOnlyBuffer() : null;
+	}
+
+	/**
+	 * @return read only buffer of the last playlist or null if it's not written yet
+	 */
+	public synchronized ByteBuffer getPlaylist() {
+		return playlist != null ? playlist.asReadOnlyBuffer() : null;
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return number of buffers allocated by the store
+	 */
+	synchronized int getAllocationCount() {
+		return allocationCount;
+	}
+}
@@ -43,12 +43,16 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.tika.utils.ExceptionUtils;
@@ -71,6 +75,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.antmedia.storage.StorageClient;
+import io.antmedia.storage.StorageUploader;
 import io.vertx.core.Vertx;
 
 public class HLSMuxer extends Muxer  {
@@ -109,6 +114,15 @@ public class HLSMuxer extends Muxer  {
 	private String subFolder = null;
 	private String s3StreamsFolderPath = "streams";
 
+	private boolean liveUploadEnabled = false;
+	private long liveUploadTimerId = -1;
+	private long lastPlaylistModified = 0;
+	private volatile CompletableFuture<Void> liveUpload = CompletableFuture.completedFuture(null);
+
+	private boolean memoryOutputEnabled = false;
+	private boolean memorySpillToDisk = false;
+	private HLSMemoryStore memoryStore;
+
 
 	public HLSMuxer(Vertx vertx, StorageClient storageClient, String hlsListSize, String hlsTime, String hlsPlayListType, String hlsFlags, String hlsEncryptionKeyInfoFile, String s3StreamsFolderPath) {
 		super(vertx);
@@ -167,14 +181,28 @@ public class HLSMuxer extends Muxer  {
 			logger.info("hls time: {}, hls list size: {}", hlsTime, hlsListSize);
 
 			String segmentFilename = file.getParentFile() + "/" + name +"_" + resolutionHeight +"p"+ "%04d.ts";
+			if (memoryOutputEnabled) {
+				segmentFilename = HLSMemoryStore.MEMORY_URL_PREFIX + segmentFilename;
+			}
 			options.put("hls_segment_filename", segmentFilename);
 
 			if (hlsPlayListType != null && (hlsPlayListType.equals("event") || hlsPlayListType.equals("vod"))) {
 				options.put("hls_playlist_type", hlsPlayListType);
 			}
 
-			if (this.hlsFlags != null && !this.hlsFlags.isEmpty()) {
-				options.put("hls_flags", this.hlsFlags);
+			if (liveUploadEnabled && !memoryOutputEnabled && !this.hlsFlags.contains("temp_file")) {
+				//segments and playlist are written to temp files and renamed when they are completed
+				this.hlsFlags = this.hlsFlags.isEmpty() ? "temp_file" : this.hlsFlags + "+temp_file";
+			}
+
+			String muxerFlags = this.hlsFlags;
+			if (memoryOutputEnabled) {
+				//memory store evicts the old segments, FFmpeg would try to delete them on disk
+				muxerFlags = Arrays.stream(muxerFlags.split("\\+")).filter(flag -> !flag.equals("delete_segments")).collect(Collectors.joining("+"));
+			}
+
+			if (!muxerFlags.isEmpty()) {
+				options.put("hls_flags", muxerFlags);
 			}
 			tmpPacket = avcodec.av_packet_alloc();
 			av_init_packet(tmpPacket);
@@ -202,7 +230,9 @@ public class HLSMuxer extends Muxer  {
 		if (outputFormatContext == null) {
 
 			outputFormatContext= new AVFormatContext(null);
-			int ret = avformat_alloc_output_context2(outputFormatContext, null, format, file.getAbsolutePath());
+			//files of the memory output are not on disk, so the url is not a file url for FFmpeg
+			String url = memoryOutputEnabled ? HLSMemoryStore.MEMORY_URL_PREFIX + file.getAbsolutePath() : file.getAbsolutePath();
+			int ret = avformat_alloc_output_context2(outputFormatContext, null, format, url);
 			if (ret < 0) {
 				logger.info("Could not create output context for {}", file.getName());
 				return null;
@@ -361,6 +391,14 @@ public class HLSMuxer extends Muxer  {
 		if ((outputFormatContext.oformat().flags() & AVFMT_NOFILE) == 0)
 			avio_closep(outputFormatContext.pb());
 
+		if (memoryStore != null) {
+			memoryStore.detach(outputFormatContext);
+			HLSMemoryStore store = memoryStore;
+			memoryStore = null;
+			//keep serving the last segments as long as they are kept on disk
+			vertx.setTimer(Integer.parseInt(hlsTime) * Integer.parseInt(hlsListSize) * 1000, l -> store.release());
+		}
+
 		avformat_free_context(outputFormatContext);
 
 		outputFormatContext = null;
@@ -368,50 +406,47 @@ public class HLSMuxer extends Muxer  {
 		logger.info("Delete File onexit:{}", deleteFileOnExit);
 
 
-		logger.info("Scheduling the task to upload and/or delete. HLS time: {}, hlsListSize:{}", hlsTime, hlsListSize);
-		vertx.setTimer(Integer.parseInt(hlsTime) * Integer.parseInt(hlsListSize) * 1000, l -> {
-			logger.info("Deleting HLS files on exit");
-
-			final String filenameWithoutExtension = file.getName().substring(0, file.getName().lastIndexOf(extension));
+		if (liveUploadTimerId != -1) {
+			vertx.cancelTimer(liveUploadTimerId);
+			liveUploadTimerId = -1;
+			logger.info("Uploading the remaining HLS files for {}", streamId);
+			liveUpload = liveUpload.thenCompose(v -> uploadLiveSegments(true));
+		}
+		else {
+			logger.info("Scheduling the task to upload and/or delete. HLS time: {}, hlsListSize:{}", hlsTime, hlsListSize);
+			vertx.setTimer(Integer.parseInt(hlsTime) * Integer.parseInt(hlsListSize) * 1000, l -> {
+				logger.info("Deleting HLS files on exit");
 
-			File[] files = file.getParentFile().listFiles(new FilenameFilter() {
-				@Override
-				public boolean accept(File dir, String name) {
-					return name.contains(filenameWithoutExtension) && name.endsWith(".ts");
-				}
-			});
+				final String filenameWithoutExtension = file.getName().substring(0, file.getName().lastIndexOf(extension));
 
-			if (files != null)
-			{
+				File[] files = file.getParentFile().listFiles(new FilenameFilter() {
+					@Override
+					public boolean accept(File dir, String name) {
+						return name.contains(filenameWithoutExtension) && name.endsWith(".ts");
+					}
+				});
 
-				for (int i = 0; i < files.length; i++) {
-					try {
+				StorageUploader uploader = StorageUploader.getInstance();
+				List<CompletableFuture<Boolean>> segmentUploads = new ArrayList<>();
+				if (files != null)
+				{
+					for (int i = 0; i < files.length; i++) {
 						if (!files[i].exists()) {
 							continue;
 						}
-
-						storageClient.save(s3StreamsFolderPath + File.pathSeparator + subFolder + files[i].getName(), files[i]);
-
-						if (deleteFileOnExit) {
-							Files.delete(files[i].toPath());
-						}
-					} catch (IOException e) {
-						logger.error(e.getMessage());
+						segmentUploads.add(uploader.upload(storageClient, getStorageKey(files[i].getName()), files[i], deleteFileOnExit));
 					}
+					logger.info("{} segments are queued for upload. Upload queue depth: {}", segmentUploads.size(), uploader.getQueueDepth());
 				}
-			}
-			if (file.exists()) {
-				try {
-					RecordMuxer.saveToStorage(s3StreamsFolderPath + File.pathSeparator + subFolder, file,  getFile().getName(), storageClient);
 
-					if (deleteFileOnExit) {
-						Files.delete(file.toPath());
+				// playlist is uploaded after the segments so that it does not refer to missing segments
+				CompletableFuture.allOf(segmentUploads.toArray(new CompletableFuture[segmentUploads.size()])).whenComplete((result, throwable) -> {
+					if (file.exists()) {
+						uploader.upload(storageClient, getStorageKey(file.getName()), file, deleteFileOnExit);
 					}
-				} catch (IOException e) {
-					logger.error(e.getMessage());
-				}
-			}
-		});
+				});
+			});
+		}
 
 		isRecording = false;	
 	}
@@ -604,6 +639,11 @@ public class HLSMuxer extends Muxer  {
 			context.pb(pb);
 		}
 
+		if (memoryOutputEnabled) {
+			memoryStore = new HLSMemoryStore(file.getAbsolutePath(), Integer.parseInt(hlsListSize) + 2, memorySpillToDisk, hlsFlags.contains("delete_segments"));
+			memoryStore.attach(context);
+		}
+
 		AVDictionary optionsDictionary = null;
 
 		if (!options.isEmpty()) {
@@ -620,6 +660,11 @@ public class HLSMuxer extends Muxer  {
 			byte[] data = new byte[1024];
 			av_strerror(ret, data, data.length);
 			logger.warn("could not write header. File: {} Error: {}", file.getAbsolutePath(), new String(data, 0, data.length));
+			if (memoryStore != null) {
+				memoryStore.detach(context);
+				memoryStore.release();
+				memoryStore = null;
+			}
 			return false;
 		}
 
@@ -627,9 +672,71 @@ public class HLSMuxer extends Muxer  {
 			av_dict_free(optionsDictionary);
 		}
 		isRunning.set(true);
+
+		if (liveUploadEnabled && memoryStore == null && storageClient != null && storageClient.isEnabled()) {
+			long period = Math.max(500, Integer.parseInt(hlsTime) * 1000L / 2);
+			liveUploadTimerId = vertx.setPeriodic(period, l -> {
+				if (liveUpload.isDone()) {
+					liveUpload = uploadLiveSegments(false);
+				}
+			});
+		}
 		return true;
 	}
 
+	/**
+	 * Uploads the segments in the playlist and then the playlist itself. 
+	 * Segments are deleted from local disk after they are uploaded so only the segments
+	 * that are not completed or not uploaded yet stay on disk.
+	 * 
+	 * @param finalUpload if it's true, playlist is uploaded even if it's not modified 
+	 * and it's deleted after upload if deleteFileOnExit is true
+	 * @return future that is completed when playlist upload is finished
+	 */
+	private CompletableFuture<Void> uploadLiveSegments(boolean finalUpload) {
+		long lastModified = file.lastModified();
+		if (!finalUpload && (lastModified == 0 || lastModified == lastPlaylistModified)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		lastPlaylistModified = lastModified;
+
+		StorageUploader uploader = StorageUploader.getInstance();
+		File playlistCopy = new File(file.getAbsolutePath() + ".upload");
+		List<CompletableFuture<Boolean>> segmentUploads = new ArrayList<>();
+		try {
+			// copy of the playlist is uploaded because muxer keeps updating the playlist
+			Files.copy(file.toPath(), playlistCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			for (String line : Files.readAllLines(playlistCopy.toPath())) {
+				if (!line.isEmpty() && !line.startsWith("#")) {
+					File segment = new File(file.getParentFile(), new File(line).getName());
+					if (segment.exists()) {
+						segmentUploads.add(uploader.upload(storageClient, getStorageKey(segment.getName()), segment, true));
+					}
+				}
+			}
+		} catch (IOException e) {
+			logger.error("Cannot read playlist {} for live upload: {}", file.getName(), e.getMessage());
+			return CompletableFuture.completedFuture(null);
+		}
+
+		// playlist is uploaded after the segments so that it does not refer to missing segments
+		return CompletableFuture.allOf(segmentUploads.toArray(new CompletableFuture[segmentUploads.size()]))
+				.thenCompose(v -> uploader.upload(storageClient, getStorageKey(file.getName()), playlistCopy, true))
+				.thenAccept(uploaded -> {
+					if (finalUpload && deleteFileOnExit) {
+						try {
+							Files.deleteIfExists(file.toPath());
+						} catch (IOException e) {
+							logger.error(e.getMessage());
+						}
+					}
+				});
+	}
+
+	private String getStorageKey(String fileName) {
+		return s3StreamsFolderPath + File.pathSeparator + subFolder + fileName;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -764,6 +871,44 @@ public class HLSMuxer extends Muxer  {
 		return deleteFileOnExit;
 	}
 
+	public boolean isLiveUploadEnabled() {
+		return liveUploadEnabled;
+	}
+
+	/**
+	 * If it's true, segments and playlist are uploaded to the storage while muxing and
+	 * segments are deleted from local disk after they are uploaded.
+	 * It should be called before {@link #init(IScope, String, int, String)}
+	 * 
+	 * @param liveUploadEnabled
+	 */
+	public void setLiveUploadEnabled(boolean liveUploadEnabled) {
+		this.liveUploadEnabled = liveUploadEnabled;
+	}
+
+	public boolean isMemoryOutputEnabled() {
+		return memoryOutputEnabled;
+	}
+
+	/**
+	 * If it's true, segments and playlist are written to {@link HLSMemoryStore} instead of disk.
+	 * It should be called before {@link #prepareIO()}
+	 * 
+	 * @param memoryOutputEnabled
+	 * @param spillToDisk if it's true, files are also written to disk in background 
+	 */
+	public void setMemoryOutputEnabled(boolean memoryOutputEnabled, boolean spillToDisk) {
+		this.memoryOutputEnabled = memoryOutputEnabled;
+		this.memorySpillToDisk = spillToDisk;
+	}
+
+	/**
+	 * @return store of the segments if memory output is enabled and muxer is running
+	 */
+	public HLSMemoryStore getMemoryStore() {
+		return memoryStore;
+	}
+
 	public void setDeleteFileOnExit(boolean deleteFileOnExist) {
 		this.deleteFileOnExit = deleteFileOnExist;
 	}
@@ -16,6 +16,7 @@ import static org.bytedeco.ffmpeg.global.avutil.av_rescale_q;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -27,6 +28,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.mina.core.buffer.IoBuffer;
@@ -63,6 +65,7 @@ import io.antmedia.datastore.db.DataStore;
 import io.antmedia.datastore.db.IDataStoreFactory;
 import io.antmedia.datastore.db.types.Broadcast;
 import io.antmedia.datastore.db.types.Endpoint;
+import io.antmedia.muxer.DirectBufferPool.PooledBuffer;
 import io.antmedia.muxer.parser.AACConfigParser;
 import io.antmedia.muxer.parser.AACConfigParser.AudioObjectTypes;
 import io.antmedia.settings.IServerSettings;
@@ -104,6 +107,35 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 	private long packetPollerId = -1;
 
+	/**
+	 * Number of packets to be processed in one wake up of the event driven drainer.
+	 * Remaining packets are processed in the next wake up so that other streams have chance to run
+	 */
+	public static final int PACKET_DRAIN_BUDGET_PER_WAKEUP = 64;
+
+	/**
+	 * If it's true, packets are drained when they are received instead of polling the queue periodically
+	 */
+	private volatile boolean eventDrivenPacketDrain = false;
+
+	/**
+	 * Max number of packets to be processed in a single {@link #execute()} call
+	 */
+	private volatile int packetDrainBudget = Integer.MAX_VALUE;
+
+	/**
+	 * It's set to true in {@link #start()} when event driven drain is enabled. 
+	 * Packets received before start are drained in the first job
+	 */
+	private volatile boolean packetDrainStarted = false;
+
+	/**
+	 * It's true when a drain job is scheduled or running for this stream
+	 */
+	private AtomicBoolean isPacketDrainScheduled = new AtomicBoolean(false);
+
+	private volatile boolean resourcesClosed = false;
+
 	private Queue<IStreamPacket> bufferQueue = new ConcurrentLinkedQueue<>();
 
 	private volatile boolean stopRequestExist = false;
@@ -169,12 +201,34 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	protected IServerSettings serverSettings;
 
 	/**
-	 * Packet times in ordered way to calculate streaming health
-	 * Key is the packet ime
-	 * Value is the system time at that moment
+	 * Number of packet times that are kept to calculate streaming health
+	 */
+	public static final int PACKET_TIME_RING_SIZE = 300;
+
+	/**
+	 * Speed is calculated and reported at most once in this period
+	 */
+	public static final int QUALITY_CHECK_PERIOD_MS = 500;
+
+	/**
+	 * Packet times in ordered way to calculate streaming health. It's a ring buffer of pairs
+	 * Even index is the packet time
+	 * Odd index is the system time at that moment
 	 *
 	 */
-	private LinkedList<PacketTime> packetTimeList = new LinkedList<PacketTime>();
+	private final long[] packetTimeRing = new long[PACKET_TIME_RING_SIZE * 2];
+
+	/**
+	 * Index of the oldest pair in {@link #packetTimeRing}
+	 */
+	private int packetTimeRingHead = 0;
+
+	/**
+	 * Number of pairs in {@link #packetTimeRing}
+	 */
+	private int packetTimeRingCount = 0;
+
+	private long lastQualityCheckTime = 0;
 
 	public static class PacketTime {
 		public final long packetTimeMs;
@@ -234,6 +288,28 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	
 	protected PacketFeeder packetFeeder;
 
+	/**
+	 * Pool of the direct buffers that keep the packet payload while it's written to the muxers
+	 */
+	private DirectBufferPool bufferPool = DirectBufferPool.getInstance();
+
+	/**
+	 * Number of audio/video payload bytes that are copied to the pooled buffers before writing to the muxers
+	 */
+	private final LongAdder copiedPayloadBytes = new LongAdder();
+
+	/**
+	 * If it's true, each muxer has its own queue and writes the packets in its own worker
+	 */
+	protected boolean parallelMuxingEnabled = false;
+	private int parallelMuxingQueueSize;
+	private String parallelMuxingOverflowPolicy;
+
+	/**
+	 * Queues of the muxers in parallel muxing. It's accessed in synchronized(muxerList) blocks
+	 */
+	private Map<Muxer, MuxerQueue> muxerQueueMap = new HashMap<>();
+
 
 	private static final int COUNT_TO_LOG_BUFFER = 500;
 
@@ -327,6 +403,10 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		previewHeight = appSettingsLocal.getPreviewHeight();
 		bufferTimeMs = appSettingsLocal.getRtmpIngestBufferTimeMs();
 		dataChannelWebHookURL = appSettingsLocal.getDataChannelWebHook();
+		eventDrivenPacketDrain = appSettingsLocal.isEventDrivenPacketDrainEnabled();
+		parallelMuxingEnabled = appSettingsLocal.isParallelMuxingEnabled();
+		parallelMuxingQueueSize = appSettingsLocal.getParallelMuxingQueueSize();
+		parallelMuxingOverflowPolicy = appSettingsLocal.getParallelMuxingOverflowPolicy();
 	}
 
 	public void initStorageClient() {
@@ -360,6 +440,8 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 			HLSMuxer hlsMuxer = new HLSMuxer(vertx, storageClient, hlsListSize, hlsTime, hlsPlayListType, getAppSettings().getHlsFlags(), getAppSettings().getHlsEncryptionKeyInfoFile(), getAppSettings().getS3StreamsFolderPath());
 			hlsMuxer.setDeleteFileOnExit(deleteHLSFilesOnExit);
+			hlsMuxer.setLiveUploadEnabled(getAppSettings().isHlsLiveUploadEnabled());
+			hlsMuxer.setMemoryOutputEnabled(getAppSettings().isHlsMemoryOutputEnabled(), getAppSettings().isHlsMemorySpillToDisk());
 			addMuxer(hlsMuxer);
 			logger.info("adding HLS Muxer for {}", streamId);
 		}
@@ -770,7 +852,6 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 				firstVideoPacketSkipped = true;
 				return;
 			}
-			int bodySize = packet.getData().limit();
 			byte frameType = packet.getData().position(0).get();
 
 			//position 1 nalu type
@@ -779,19 +860,30 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			long pts = dts + compositionTimeOffset;
 
 			//we get 5 less bytes because first 5 bytes is related to the video tag. It's not part of the generic packet
-			ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bodySize-5);
-			byteBuffer.put(packet.getData().buf().position(5));
-
-
-			synchronized (muxerList) 
-			{
-				packetFeeder.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY, 0, pts);
+			PooledBuffer pooledBuffer = copyPayload(packet.getData(), 5);
+			ByteBuffer byteBuffer = pooledBuffer.getBuffer();
 
-				for (Muxer muxer : muxerList) 
+			boolean isKeyFrame = (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY;
+			try {
+				synchronized (muxerList) 
 				{
-					muxer.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, (frameType & 0xF0) == IVideoStreamCodec.FLV_FRAME_KEY, 0, pts);
+					packetFeeder.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, isKeyFrame, 0, pts);
+
+					for (Muxer muxer : muxerList) 
+					{
+						if (parallelMuxingEnabled) {
+							getMuxerQueue(muxer).addVideoBuffer(byteBuffer, pooledBuffer, dts, videoStreamIndex, isKeyFrame, pts);
+						}
+						else {
+							muxer.writeVideoBuffer(byteBuffer, dts, 0, videoStreamIndex, isKeyFrame, 0, pts);
+						}
+					}
 				}
 			}
+			finally {
+				//packet feeder and muxers consume the buffer synchronously. Muxer queues retain it if they need
+				pooledBuffer.release();
+			}
 
 
 		}
@@ -806,25 +898,85 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 				firstAudioPacketSkipped = true;
 				return;
 			}
-			int bodySize = packet.getData().limit();
 			//we get 2 less bytes because first 2 bytes is related to the audio tag. It's not part of the generic packet
-			ByteBuffer byteBuffer = ByteBuffer.allocateDirect(bodySize-2);
-			byteBuffer.put(packet.getData().buf().position(2));
-
+			PooledBuffer pooledBuffer = copyPayload(packet.getData(), 2);
+			ByteBuffer byteBuffer = pooledBuffer.getBuffer();
 
-			synchronized (muxerList) 
-			{
-				packetFeeder.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
-
-				for (Muxer muxer : muxerList) 
+			try {
+				synchronized (muxerList) 
 				{
-					muxer.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
+					packetFeeder.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
+
+					for (Muxer muxer : muxerList) 
+					{
+						if (parallelMuxingEnabled) {
+							getMuxerQueue(muxer).addAudioBuffer(byteBuffer, pooledBuffer, audioStreamIndex, dts, !enableVideo);
+						}
+						else {
+							muxer.writeAudioBuffer(byteBuffer, audioStreamIndex, dts);
+						}
+					}
 				}
 			}
+			finally {
+				pooledBuffer.release();
+			}
+
+		}
+	}
 
+
+	/**
+	 * Returns the queue of the muxer in parallel muxing. It should be called in synchronized(muxerList) block
+	 * @param muxer
+	 * @return
+	 */
+	private MuxerQueue getMuxerQueue(Muxer muxer) {
+		MuxerQueue muxerQueue = muxerQueueMap.get(muxer);
+		if (muxerQueue == null) {
+			muxerQueue = new MuxerQueue(muxer, parallelMuxingQueueSize, parallelMuxingOverflowPolicy);
+			muxerQueueMap.put(muxer, muxerQueue);
+			logger.info("Muxer queue is created for muxer:{} stream:{}", muxer.getFormat(), streamId);
+		}
+		return muxerQueue;
+	}
+
+	/**
+	 * Writes the remaining packets in the queue of the muxer and closes the queue. 
+	 * It should be called before the trailer of the muxer is written
+	 * @param muxer
+	 */
+	private void closeMuxerQueue(Muxer muxer) {
+		if (!parallelMuxingEnabled) {
+			return;
 		}
+		MuxerQueue muxerQueue;
+		synchronized (muxerList) {
+			muxerQueue = muxerQueueMap.get(muxer);
+			if (muxerQueue == null) {
+				muxerQueue = new MuxerQueue(muxer, 1, parallelMuxingOverflowPolicy);
+				muxerQueueMap.put(muxer, muxerQueue);
+			}
+		}
+		//closed queue is kept in the map so that a late packet does not create a new queue after the trailer
+		muxerQueue.close();
 	}
 
+	/**
+	 * Copies the payload of the packet after the FLV tag header to a pooled direct buffer.
+	 * Caller should release the returned buffer
+	 * 
+	 * @param data packet data
+	 * @param tagHeaderSize 5 for video, 2 for audio
+	 * @return
+	 */
+	private PooledBuffer copyPayload(IoBuffer data, int tagHeaderSize) {
+		int payloadSize = data.limit() - tagHeaderSize;
+		PooledBuffer pooledBuffer = bufferPool.acquire(payloadSize);
+		pooledBuffer.getBuffer().put(data.buf().position(tagHeaderSize));
+		copiedPayloadBytes.add(payloadSize);
+		return pooledBuffer;
+	}
 
 	/**
 	 * Check if max analyze time has been passed. 
@@ -898,9 +1050,11 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 
 			IStreamPacket packet;
-			while ((packet = streamPacketQueue.poll()) != null) {
+			int processedPacketCount = 0;
+			while (processedPacketCount < packetDrainBudget && (packet = streamPacketQueue.poll()) != null) {
 
 				queueSize.decrementAndGet();
+				processedPacketCount++;
 
 
 				if (!firstKeyFrameReceivedChecked && packet.getDataType() == Constants.TYPE_VIDEO_DATA) {
@@ -985,7 +1139,8 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 			}
 
-			if (stopRequestExist) {
+			//if the budget is exhausted, there may be packets in the queue. They are written in the next call
+			if (stopRequestExist && processedPacketCount < packetDrainBudget) {
 				broadcastStream.removeStreamListener(MuxAdaptor.this);
 				logger.warn("closing adaptor for {} ", streamId);
 				closeResources();
@@ -1034,19 +1189,29 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 
 		long packetTime = av_rescale_q(pts, timebase, TIME_BASE_FOR_MS);
-		packetTimeList.add(new PacketTime(packetTime, System.currentTimeMillis()));
-
+		long now = System.currentTimeMillis();
 
-		if (packetTimeList.size() > 300) {
-			//limit the size.
-			packetTimeList.remove(0);
+		int lastIndex;
+		if (packetTimeRingCount < PACKET_TIME_RING_SIZE) {
+			lastIndex = (packetTimeRingHead + packetTimeRingCount) % PACKET_TIME_RING_SIZE;
+			packetTimeRingCount++;
 		}
+		else {
+			//limit the size. overwrite the oldest one
+			lastIndex = packetTimeRingHead;
+			packetTimeRingHead = (packetTimeRingHead + 1) % PACKET_TIME_RING_SIZE;
+		}
+		packetTimeRing[2 * lastIndex] = packetTime;
+		packetTimeRing[2 * lastIndex + 1] = now;
 
-		PacketTime firstPacket = packetTimeList.getFirst();
-		PacketTime lastPacket = packetTimeList.getLast();
+		if ((now - lastQualityCheckTime) < QUALITY_CHECK_PERIOD_MS) {
+			return;
+		}
+		lastQualityCheckTime = now;
 
-		long elapsedTime = lastPacket.systemTimeMs - firstPacket.systemTimeMs;
-		long packetTimeDiff = lastPacket.packetTimeMs - firstPacket.packetTimeMs;
+		long firstPacketTimeMs = packetTimeRing[2 * packetTimeRingHead];
+		long elapsedTime = now - packetTimeRing[2 * packetTimeRingHead + 1];
+		long packetTimeDiff = packetTime - firstPacketTimeMs;
 
 
 		double speed = 0L;
@@ -1054,7 +1219,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		{
 			speed = (double) packetTimeDiff / elapsedTime;
 			if (logger.isWarnEnabled() && Double.isNaN(speed)) {
-				logger.warn("speed is NaN, packetTime: {}, first item packetTime: {}, elapsedTime:{}", packetTime, firstPacket.packetTimeMs, elapsedTime);
+				logger.warn("speed is NaN, packetTime: {}, first item packetTime: {}, elapsedTime:{}", packetTime, firstPacketTimeMs, elapsedTime);
 			}
 		}
 		changeStreamQualityParameters(this.streamId, null, speed, getInputQueueSize());
@@ -1102,6 +1267,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	public synchronized void writeTrailer() {
 		packetFeeder.writeTrailer();
 		for (Muxer muxer : muxerList) {
+			closeMuxerQueue(muxer);
 			muxer.writeTrailer();
 		}
 	}
@@ -1144,6 +1310,46 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 
 		changeStreamQualityParameters(this.streamId, null, 0, getInputQueueSize());
 		getStreamHandler().muxAdaptorRemoved(this);
+		resourcesClosed = true;
+	}
+
+	/**
+	 * Schedules a drain job in worker thread if there is no drain job scheduled or running for this stream.
+	 * It's called when a packet is received and when stop is requested in event driven drain mode
+	 */
+	public void scheduleDrain() {
+		if (isPacketDrainScheduled.compareAndSet(false, true)) {
+			vertx.executeBlocking(p-> {
+				try {
+					drainPackets();
+				}
+				catch (Exception e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+				p.complete();
+			}, false, null);
+		}
+	}
+
+	/**
+	 * Processes at most {@link #PACKET_DRAIN_BUDGET_PER_WAKEUP} packets and reschedules itself
+	 * if there are still packets in the queue. 
+	 */
+	public void drainPackets() {
+		try {
+			execute();
+		}
+		finally {
+			isPacketDrainScheduled.set(false);
+		}
+
+		//check again after releasing the flag because a packet may be added before flag is released
+		//don't reschedule if the pipe reader is left running, it means execute does not process packets anymore
+		if (!isPipeReaderJobRunning.get() && !resourcesClosed 
+				&& ((isRecording && !streamPacketQueue.isEmpty()) || stopRequestExist)) 
+		{
+			scheduleDrain();
+		}
 	}
 
 
@@ -1157,16 +1363,26 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 			Boolean successful = false;
 			try {
 
-				packetPollerId = vertx.setPeriodic(10, t-> 
-				vertx.executeBlocking(p-> {
-					try {
-						execute();
-					}
-					catch (Exception e) {
-						logger.error(ExceptionUtils.getStackTrace(e));
-					}
-					p.complete();
-				}, false, null));
+				if (eventDrivenPacketDrain) 
+				{
+					logger.info("Packets are drained when they are received for stream: {}", streamId);
+					packetDrainBudget = PACKET_DRAIN_BUDGET_PER_WAKEUP;
+					packetDrainStarted = true;
+					scheduleDrain();
+				}
+				else 
+				{
+					packetPollerId = vertx.setPeriodic(10, t-> 
+					vertx.executeBlocking(p-> {
+						try {
+							execute();
+						}
+						catch (Exception e) {
+							logger.error(ExceptionUtils.getStackTrace(e));
+						}
+						p.complete();
+					}, false, null));
+				}
 
 
 
@@ -1211,6 +1427,9 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	public void stop() {
 		logger.info("Calling stop for {} input queue size:{}", streamId, getInputQueueSize());
 		stopRequestExist = true;
+		if (packetDrainStarted) {
+			scheduleDrain();
+		}
 	}
 
 	public int getInputQueueSize() {
@@ -1300,6 +1519,10 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		event.setTimestamp(packet.getTimestamp());
 
 		streamPacketQueue.add(event);
+
+		if (packetDrainStarted) {
+			scheduleDrain();
+		}
 	}
 
 	@Override
@@ -1572,6 +1795,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		if (muxer != null)
 		{
 			muxerList.remove(muxer);
+			closeMuxerQueue(muxer);
 			muxer.writeTrailer();
 			result = true;
 		}
@@ -1674,6 +1898,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		boolean result = false;
 		if (rtmpMuxer != null) {
 			muxerList.remove(rtmpMuxer);
+			closeMuxerQueue(rtmpMuxer);
 			rtmpMuxer.writeTrailer();
 			result = true;
 		}
@@ -1746,6 +1971,44 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		this.avc = avc;
 	}
 
+	public boolean isEventDrivenPacketDrain() {
+		return eventDrivenPacketDrain;
+	}
+
+	public void setEventDrivenPacketDrain(boolean eventDrivenPacketDrain) {
+		this.eventDrivenPacketDrain = eventDrivenPacketDrain;
+	}
+
+	public DirectBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	public void setBufferPool(DirectBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	public long getCopiedPayloadBytes() {
+		return copiedPayloadBytes.sum();
+	}
+
+	/**
+	 * @param muxer
+	 * @return the queue of the muxer in parallel muxing or null if it does not exist
+	 */
+	public MuxerQueue getMuxerQueueOf(Muxer muxer) {
+		synchronized (muxerList) {
+			return muxerQueueMap.get(muxer);
+		}
+	}
+
+	public boolean isParallelMuxingEnabled() {
+		return parallelMuxingEnabled;
+	}
+
+	public void setParallelMuxingEnabled(boolean parallelMuxingEnabled) {
+		this.parallelMuxingEnabled = parallelMuxingEnabled;
+	}
+
 	public Queue<IStreamPacket> getBufferQueue() {
 		return bufferQueue;
 	}
@@ -1754,7 +2017,16 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		this.bufferingFinishTimeMs = bufferingFinishTimeMs;
 	}
 
+	/**
+	 * Creates a list from the packet times in the ring. It's used in tests
+	 * @return packet times from the oldest to the newest
+	 */
 	public LinkedList<PacketTime> getPacketTimeList() {
+		LinkedList<PacketTime> packetTimeList = new LinkedList<>();
+		for (int i = 0; i < packetTimeRingCount; i++) {
+			int index = (packetTimeRingHead + i) % PACKET_TIME_RING_SIZE;
+			packetTimeList.add(new PacketTime(packetTimeRing[2 * index], packetTimeRing[2 * index + 1]));
+		}
 		return packetTimeList;
 	}
 	
@@ -1778,6 +2050,14 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 	}
 
 	public void addPacketListener(IPacketListener listener) {
+		addPacketListener(listener, false);
+	}
+
+	/**
+	 * @param listener
+	 * @param async if it's true, listener is fed in another thread so that a slow listener does not block muxing
+	 */
+	public void addPacketListener(IPacketListener listener, boolean async) {
 		StreamParametersInfo videoInfo = new StreamParametersInfo();
 		videoInfo.codecParameters = getVideoCodecParameters();
 		videoInfo.timeBase = getVideoTimeBase();
@@ -1787,7 +2067,7 @@ public class MuxAdaptor implements IRecordingListener, IEndpointStatusListener {
 		
 		listener.setVideoStreamInfo(streamId, videoInfo);
 		listener.setAudioStreamInfo(streamId, audioInfo);
-		packetFeeder.addListener(listener);
+		packetFeeder.addListener(listener, async);
 	}
 	
 	public void removePacketListener(IPacketListener listener) {
@@ -0,0 +1,276 @@
+package io.antmedia.muxer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.antmedia.muxer.DirectBufferPool.PooledBuffer;
+
+/**
+ * Bounded packet queue in front of a {@link Muxer}.
+ *
+ * It's used when parallel muxing is enabled so that a slow muxer(RTMP endpoint, disk stall in MP4)
+ * does not delay the other muxers of the same stream. Single producer is the stream's packet writer
+ * and packets are written to the muxer in the order they are added by the worker thread of the queue. Each queue
+ * has its own worker so that a muxer stalled in writing(e.g. dead RTMP endpoint) does not hold up the queues of
+ * the other muxers and streams.
+ *
+ * If the queue is full, either producer is blocked for a limited time or packets are dropped until the next
+ * video key frame according to the overflow policy. Producer adds packets while holding the muxer list lock of
+ * the stream so it's never blocked indefinitely, packets are dropped until the next key frame when the queue
+ * is still full after {@link #BLOCK_TIMEOUT_MS}.
+ */
+public class MuxerQueue {
+
+	private static Logger logger = LoggerFactory.getLogger(MuxerQueue.class);
+
+	/**
+	 * Drop incoming packets when queue is full and start adding again with the next video key frame
+	 */
+	public static final String OVERFLOW_POLICY_DROP_UNTIL_KEY_FRAME = "dropUntilKeyFrame";
+
+	/**
+	 * Block the producer until there is space in the queue or {@link #BLOCK_TIMEOUT_MS} passes
+	 */
+	public static final String OVERFLOW_POLICY_BLOCK = "block";
+
+	/**
+	 * Max time that producer waits for space in the queue in block policy
+	 */
+	public static final long BLOCK_TIMEOUT_MS = 200;
+
+	private static final AtomicInteger workerThreadCounter = new AtomicInteger(0);
+
+	/**
+	 * Worker of the queue. Workers are not run in vertx worker pool because producers may block on the queue 
+	 * in block policy and they already run in vertx worker pool. Thread is terminated when the queue is idle
+	 */
+	private final ThreadPoolExecutor workerExecutor;
+
+	private final Muxer muxer;
+
+	private final ArrayBlockingQueue<QueuedPacket> queue;
+
+	private final boolean blockOnOverflow;
+
+	private final AtomicBoolean isWorkerScheduled = new AtomicBoolean(false);
+
+	private volatile boolean closed = false;
+
+	/**
+	 * It's true after queue overflows in drop policy until the next video key frame
+	 */
+	private boolean waitingForKeyFrame = false;
+
+	private volatile long lastEnqueuedDts = 0;
+
+	private volatile long lastWrittenDts = 0;
+
+	private final AtomicLong droppedPacketCount = new AtomicLong(0);
+
+	private static class QueuedPacket {
+		private final ByteBuffer payload;
+		private final PooledBuffer pooledBuffer;
+		private final boolean video;
+		private final long dts;
+		private final long pts;
+		private final int streamIndex;
+		private final boolean keyFrame;
+
+		private QueuedPacket(ByteBuffer payload, PooledBuffer pooledBuffer, boolean video, long dts, long pts, int streamIndex, boolean keyFrame) {
+			this.payload = payload;
+			this.pooledBuffer = pooledBuffer;
+			this.video = video;
+			this.dts = dts;
+			this.pts = pts;
+			this.streamIndex = streamIndex;
+			this.keyFrame = keyFrame;
+		}
+
+		private void release() {
+			if (pooledBuffer != null) {
+				pooledBuffer.release();
+			}
+		}
+	}
+
+	public MuxerQueue(Muxer muxer, int capacity, String overflowPolicy) {
+		this.muxer = muxer;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.blockOnOverflow = OVERFLOW_POLICY_BLOCK.equals(overflowPolicy);
+		this.workerExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = new Thread(r, "muxer-worker-" + workerThreadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.workerExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Adds video packet to the queue. Buffer content should not be changed until it's written.
+	 * If pooled buffer is not null, it's retained until the packet is written or dropped
+	 */
+	public void addVideoBuffer(ByteBuffer encodedVideoFrame, PooledBuffer pooledBuffer, long dts, int streamIndex, boolean isKeyFrame, long pts) {
+		add(encodedVideoFrame, pooledBuffer, true, dts, pts, streamIndex, isKeyFrame);
+	}
+
+	/**
+	 * Adds audio packet to the queue.
+	 *
+	 * @param resumePoint true if dropping can stop at this packet. It should be true if the stream has no video
+	 */
+	public void addAudioBuffer(ByteBuffer audioFrame, PooledBuffer pooledBuffer, int streamIndex, long timestamp, boolean resumePoint) {
+		add(audioFrame, pooledBuffer, false, timestamp, timestamp, streamIndex, resumePoint);
+	}
+
+	private void add(ByteBuffer buffer, PooledBuffer pooledBuffer, boolean video, long dts, long pts, int streamIndex, boolean keyFrame) {
+		if (closed) {
+			return;
+		}
+
+		if (waitingForKeyFrame) {
+			if (!keyFrame) {
+				droppedPacketCount.incrementAndGet();
+				return;
+			}
+			logger.info("Key frame is received, packets are added to the queue again for muxer:{}", muxer.getFormat());
+			waitingForKeyFrame = false;
+		}
+
+		if (pooledBuffer != null) {
+			pooledBuffer.retain();
+		}
+		//each muxer changes the position of the buffer so give its own view
+		QueuedPacket packet = new QueuedPacket(buffer.duplicate(), pooledBuffer, video, dts, pts, streamIndex, keyFrame);
+
+		boolean added = blockOnOverflow ? offerPacket(packet) : queue.offer(packet);
+		if (!added) {
+			logger.warn("Queue is full for muxer:{} dropping packets until the next key frame", muxer.getFormat());
+			waitingForKeyFrame = true;
+		}
+
+		if (added) {
+			lastEnqueuedDts = dts;
+			scheduleWorker();
+		}
+		else {
+			droppedPacketCount.incrementAndGet();
+			packet.release();
+		}
+	}
+
+	private boolean offerPacket(QueuedPacket packet) {
+		try {
+			return queue.offer(packet, BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	private void scheduleWorker() {
+		if (isWorkerScheduled.compareAndSet(false, true)) {
+			try {
+				workerExecutor.execute(this::runWorker);
+			}
+			catch (RejectedExecutionException e) {
+				//queue is closed while the packet is being added
+				isWorkerScheduled.set(false);
+				releaseQueuedPackets();
+			}
+		}
+	}
+
+	private void releaseQueuedPackets() {
+		QueuedPacket packet;
+		while ((packet = queue.poll()) != null) {
+			droppedPacketCount.incrementAndGet();
+			packet.release();
+		}
+	}
+
+	private void runWorker() {
+		try {
+			writeQueuedPackets();
+		}
+		catch (Exception e) {
+			logger.error(ExceptionUtils.getStackTrace(e));
+		}
+		finally {
+			isWorkerScheduled.set(false);
+		}
+
+		//a packet may be added before the flag is released
+		if (!queue.isEmpty()) {
+			scheduleWorker();
+		}
+	}
+
+	private synchronized void writeQueuedPackets() {
+		QueuedPacket packet;
+		while ((packet = queue.poll()) != null) {
+			try {
+				if (packet.video) {
+					muxer.writeVideoBuffer(packet.payload, packet.dts, 0, packet.streamIndex, packet.keyFrame, 0, packet.pts);
+				}
+				else {
+					muxer.writeAudioBuffer(packet.payload, packet.streamIndex, packet.dts);
+				}
+				lastWrittenDts = packet.dts;
+			}
+			finally {
+				packet.release();
+			}
+		}
+	}
+
+	/**
+	 * Writes the packets in the queue to the muxer in the caller thread and does not accept new packets.
+	 * Call it before writing the trailer of the muxer
+	 */
+	public void close() {
+		closed = true;
+		writeQueuedPackets();
+		workerExecutor.shutdown();
+	}
+
+	public Muxer getMuxer() {
+		return muxer;
+	}
+
+	/**
+	 * @return number of packets waiting to be written to the muxer
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the difference between the timestamp of the last added packet and the last written packet in milliseconds
+	 */
+	public long getLagMs() {
+		if (queue.isEmpty()) {
+			return 0;
+		}
+		return lastEnqueuedDts - lastWrittenDts;
+	}
+
+	public long getDroppedPacketCount() {
+		return droppedPacketCount.get();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,148 @@
+package io.antmedia.plugin;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Calls a plugin listener in a worker thread with the items that are queued by the muxing or decoding thread.
+ *
+ * Dispatchers of all streams share a worker pool and each dispatcher is run by at most one thread at a time,
+ * so items are passed to the listener in order. A run dispatches at most {@link #MAX_BATCH_SIZE} items and
+ * the dispatcher is scheduled again for the rest, so a slow listener does not keep a worker from the other
+ * dispatchers. Trailer is passed after the pending items. After the dispatcher
+ * is closed, the listener is not called anymore and the pending items are freed.
+ *
+ * @param <T> type of the queued items
+ */
+public abstract class AsyncDispatcher<T> implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncDispatcher.class);
+
+	private static final AtomicInteger threadCounter = new AtomicInteger(0);
+
+	static final int MAX_BATCH_SIZE = 8;
+
+	private static final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+		Thread thread = new Thread(r, "plugin-async-" + threadCounter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	protected final String streamId;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private final AtomicBoolean trailerPending = new AtomicBoolean(false);
+
+	/**
+	 * Listener is called while holding this lock so that close can wait for the call in progress
+	 */
+	private final Object dispatchLock = new Object();
+
+	private volatile boolean closed = false;
+
+	protected AsyncDispatcher(String streamId) {
+		this.streamId = streamId;
+	}
+
+	/**
+	 * @return next pending item or null if there is no pending item
+	 */
+	protected abstract T poll();
+
+	/**
+	 * @return true if there is a pending item
+	 */
+	protected abstract boolean hasPending();
+
+	/**
+	 * Passes the item to the listener
+	 */
+	protected abstract void dispatch(T item);
+
+	/**
+	 * Passes the trailer to the listener
+	 */
+	protected abstract void dispatchTrailer();
+
+	/**
+	 * Called after the item is dispatched or skipped. It should free the item if the dispatcher is closed
+	 */
+	protected abstract void recycle(T item);
+
+	/**
+	 * Frees the pending and the pooled items. It's called when the dispatcher is closed
+	 */
+	protected abstract void freeAll();
+
+	protected void schedule() {
+		if (!closed && scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			T item;
+			int count = 0;
+			while (count < MAX_BATCH_SIZE && (item = poll()) != null) {
+				count++;
+				synchronized (dispatchLock) {
+					if (!closed) {
+						try {
+							dispatch(item);
+						}
+						catch (Exception e) {
+							logger.error("Async listener error for stream: {} {}", streamId, e.getMessage());
+						}
+					}
+				}
+				recycle(item);
+			}
+			if (count < MAX_BATCH_SIZE) {
+				//trailer is passed after all pending items
+				synchronized (dispatchLock) {
+					if (!closed && trailerPending.compareAndSet(true, false)) {
+						dispatchTrailer();
+					}
+				}
+			}
+		}
+		finally {
+			scheduled.set(false);
+		}
+		//the rest of the items, or an item that is added before the flag is released, is dispatched in the next run
+		if (hasPending() || trailerPending.get()) {
+			schedule();
+		}
+	}
+
+	/**
+	 * Passes the trailer to the listener after the pending items
+	 */
+	public void writeTrailer() {
+		trailerPending.set(true);
+		schedule();
+	}
+
+	/**
+	 * Stops calling the listener and frees the pending and pooled items. It waits for the listener call in progress
+	 */
+	public void close() {
+		closed = true;
+		synchronized (dispatchLock) {
+			//wait for the call in progress
+		}
+		freeAll();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -1,20 +1,233 @@
 package io.antmedia.plugin;
 
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_copy;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_get_buffer;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_unref;
+
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.bytedeco.ffmpeg.avutil.AVFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.antmedia.plugin.api.IFrameListener;
+import io.antmedia.statistic.LatencyHistogram;
 
 public class FrameFeeder {
 
+	/**
+	 * Execution model of a frame listener
+	 */
+	public enum ExecutionMode {
+		/**
+		 * Listener is called in the decoding thread and its output is passed to the next listener
+		 */
+		INLINE,
+		/**
+		 * Listener is called in a worker thread with a copy of the frame. If the listener is busy,
+		 * only the latest frame is kept and older frames are dropped. Output of the listener is not used
+		 * and audio frames are not passed to the listener
+		 */
+		ASYNC_COPY,
+		/**
+		 * Same with {@link #ASYNC_COPY} but only every Nth frame is passed to the listener
+		 */
+		ASYNC_SAMPLED
+	}
+
+	private static final int FRAME_POOL_SIZE = 2;
+
 	private String streamId;
-	
-	private ArrayList<IFrameListener> listeners = new ArrayList<>();
+
+	private List<FrameListenerStage> listeners = new CopyOnWriteArrayList<>();
 	private static final Logger logger = LoggerFactory.getLogger(FrameFeeder.class);
 
+	/**
+	 * Keeps the execution mode and the statistics of a frame listener
+	 */
+	public static class FrameListenerStage extends AsyncDispatcher<AVFrame> {
+
+		private final IFrameListener listener;
+		private final ExecutionMode mode;
+		private final int sampleInterval;
+		private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+		private final AtomicLong droppedFrameCount = new AtomicLong(0);
+		private final AtomicReference<AVFrame> pendingFrame = new AtomicReference<>();
+		private final ArrayBlockingQueue<AVFrame> framePool = new ArrayBlockingQueue<>(FRAME_POOL_SIZE);
+		private long frameCount = 0;
+
+		public FrameListenerStage(String streamId, IFrameListener listener, ExecutionMode mode, int sampleInterval) {
+			super(streamId);
+			this.listener = listener;
+			this.mode = mode;
+			this.sampleInterval = Math.max(1, sampleInterval);
+		}
+
+		AVFrame onVideoFrame(AVFrame frame) {
+			if (mode == ExecutionMode.INLINE) {
+				long startTime = System.nanoTime();
+				AVFrame processedFrame = listener.onVideoFrame(streamId, frame);
+				latencyHistogram.record((System.nanoTime() - startTime) / 1000);
+				return processedFrame;
+			}
+
+			if (frameCount++ % sampleInterval == 0) {
+				enqueue(frame);
+			}
+			return frame;
+		}
+
+		AVFrame onAudioFrame(AVFrame frame) {
+			if (mode == ExecutionMode.INLINE) {
+				return listener.onAudioFrame(streamId, frame);
+			}
+			return frame;
+		}
+
+		private void enqueue(AVFrame frame) {
+			if (isClosed()) {
+				return;
+			}
+			AVFrame copy;
+			synchronized (framePool) {
+				copy = framePool.poll();
+			}
+			if (copy == null) {
+				copy = av_frame_alloc();
+			}
+			if (copyFrame(copy, frame) < 0) {
+				recycle(copy);
+				droppedFrameCount.incrementAndGet();
+				return;
+			}
+			AVFrame oldFrame = pendingFrame.getAndSet(copy);
+			if (oldFrame != null) {
+				//listener could not process the previous frame in time, latest frame wins
+				droppedFrameCount.incrementAndGet();
+				recycle(oldFrame);
+			}
+			if (isClosed()) {
+				//closed while the frame is being added
+				freeAll();
+			}
+			else {
+				schedule();
+			}
+		}
+
+		/**
+		 * Copies the picture of the frame to the pooled frame. Decoder reuses the buffers of its frames,
+		 * so listener cannot be given a reference of them. Buffers of the pooled frame are reused if the
+		 * format and the size of the frame do not change
+		 */
+		private static int copyFrame(AVFrame copy, AVFrame frame) {
+			if (copy.buf(0) == null || copy.format() != frame.format() || copy.width() != frame.width() || copy.height() != frame.height()) {
+				av_frame_unref(copy);
+				copy.format(frame.format());
+				copy.width(frame.width());
+				copy.height(frame.height());
+				int ret = av_frame_get_buffer(copy, 0);
+				if (ret < 0) {
+					return ret;
+				}
+			}
+			int ret = av_frame_copy(copy, frame);
+			if (ret < 0) {
+				return ret;
+			}
+			copy.pts(frame.pts());
+			copy.pkt_dts(frame.pkt_dts());
+			copy.key_frame(frame.key_frame());
+			copy.pict_type(frame.pict_type());
+			return 0;
+		}
+
+		@Override
+		protected AVFrame poll() {
+			return pendingFrame.getAndSet(null);
+		}
+
+		@Override
+		protected boolean hasPending() {
+			return pendingFrame.get() != null;
+		}
+
+		@Override
+		protected void dispatch(AVFrame frame) {
+			long startTime = System.nanoTime();
+			listener.onVideoFrame(streamId, frame);
+			latencyHistogram.record((System.nanoTime() - startTime) / 1000);
+		}
+
+		@Override
+		protected void dispatchTrailer() {
+			listener.writeTrailer();
+		}
+
+		/**
+		 * Buffers of the frame are kept in the pool so that they're reused for the next frame
+		 */
+		@Override
+		protected void recycle(AVFrame frame) {
+			synchronized (framePool) {
+				if (isClosed() || !framePool.offer(frame)) {
+					av_frame_free(frame);
+				}
+			}
+		}
+
+		@Override
+		protected void freeAll() {
+			AVFrame frame = pendingFrame.getAndSet(null);
+			if (frame != null) {
+				av_frame_free(frame);
+			}
+			synchronized (framePool) {
+				while ((frame = framePool.poll()) != null) {
+					av_frame_free(frame);
+				}
+			}
+		}
+
+		@Override
+		public void writeTrailer() {
+			if (mode == ExecutionMode.INLINE) {
+				listener.writeTrailer();
+			}
+			else {
+				super.writeTrailer();
+			}
+		}
+
+		public IFrameListener getListener() {
+			return listener;
+		}
+
+		public ExecutionMode getMode() {
+			return mode;
+		}
+
+		/**
+		 * @return processing time of the video frames in microseconds
+		 */
+		public LatencyHistogram getLatencyHistogram() {
+			return latencyHistogram;
+		}
+
+		/**
+		 * @return number of the video frames that are dropped because listener was busy
+		 */
+		public long getDroppedFrameCount() {
+			return droppedFrameCount.get();
+		}
+	}
 
 	public FrameFeeder(String streamId) {
 		this.streamId = streamId;
@@ -22,8 +235,8 @@ public class FrameFeeder {
 
 	public AVFrame onVideoFrame(AVFrame frame) {
 		AVFrame processedFrame = frame;
-		for (IFrameListener iFrameListener : listeners) {
-			processedFrame = iFrameListener.onVideoFrame(streamId, processedFrame);
+		for (FrameListenerStage stage : listeners) {
+			processedFrame = stage.onVideoFrame(processedFrame);
 			if(processedFrame == null) {
 				break;
 			}
@@ -31,11 +244,11 @@ public class FrameFeeder {
 
 		return processedFrame;
 	}
-	
+
 	public AVFrame onAudioFrame(AVFrame frame) {
 		AVFrame processedFrame = frame;
-		for (IFrameListener iFrameListener : listeners) {
-			processedFrame = iFrameListener.onAudioFrame(streamId, processedFrame);
+		for (FrameListenerStage stage : listeners) {
+			processedFrame = stage.onAudioFrame(processedFrame);
 			if(processedFrame == null) {
 				break;
 			}
@@ -45,18 +258,40 @@ public class FrameFeeder {
 	}
 
 	public void addListener(IFrameListener listener) {
-		listeners.add(listener);
+		addListener(listener, ExecutionMode.INLINE, 1);
+	}
+
+	/**
+	 * @param listener
+	 * @param mode execution mode of the listener
+	 * @param sampleInterval listener is called for every Nth video frame in {@link ExecutionMode#ASYNC_SAMPLED} mode.
+	 * It's not used in other modes
+	 */
+	public void addListener(IFrameListener listener, ExecutionMode mode, int sampleInterval) {
+		listeners.add(new FrameListenerStage(streamId, listener, mode, mode == ExecutionMode.ASYNC_SAMPLED ? sampleInterval : 1));
 	}
-	
+
 	public void writeTrailer() {
-		for (IFrameListener iFrameListener : listeners) {
-			iFrameListener.writeTrailer();
+		for (FrameListenerStage stage : listeners) {
+			stage.writeTrailer();
 		}
 	}
 
 	public void removeFrameListener(IFrameListener listener) {
-		listeners.remove(listener);		
+		for (FrameListenerStage stage : listeners) {
+			if (stage.getListener() == listener) {
+				listeners.remove(stage);
+				stage.close();
+				break;
+			}
+		}
 	}
 
+	/**
+	 * @return execution mode and statistics of the listeners
+	 */
+	public List<FrameListenerStage> getListenerStages() {
+		return new ArrayList<>(listeners);
+	}
 
 }
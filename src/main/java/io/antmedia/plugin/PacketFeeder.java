@@ -2,24 +2,154 @@ package io.antmedia.plugin;
 
 import static org.bytedeco.ffmpeg.global.avcodec.AV_PKT_FLAG_KEY;
 import static org.bytedeco.ffmpeg.global.avcodec.av_init_packet;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_free;
+import static org.bytedeco.ffmpeg.global.avcodec.av_packet_ref;
 import static org.bytedeco.ffmpeg.global.avcodec.av_packet_unref;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.bytedeco.ffmpeg.avcodec.AVPacket;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.javacpp.BytePointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.antmedia.plugin.api.IPacketListener;
+import io.antmedia.plugin.api.StreamParametersInfo;
 
 
 public class PacketFeeder{
 
-	private ArrayList<IPacketListener> listeners = new ArrayList<IPacketListener>();
+	private static final Logger logger = LoggerFactory.getLogger(PacketFeeder.class);
+
+	public static final int ASYNC_QUEUE_SIZE = 100;
+
+	private List<IPacketListener> listeners = new CopyOnWriteArrayList<>();
 	private String streamId;
 	private AVPacket videoPkt, audioPkt;
 
+	/**
+	 * Native buffer that packet data is copied into. It's reused for all packets and
+	 * only reallocated when a larger packet arrives
+	 */
+	private BytePointer dataPointer;
+	private ByteBuffer dataBuffer;
+
+	/**
+	 * Feeds a listener in another thread through a bounded queue so that a slow listener does not block muxing.
+	 * Packets are dropped when the queue is full. It should be closed when the listener is removed to free
+	 * the queued and pooled packets
+	 */
+	public static class AsyncPacketListener extends AsyncDispatcher<AVPacket> implements IPacketListener {
+
+		private final IPacketListener listener;
+		private final ArrayBlockingQueue<AVPacket> queue;
+		private final ArrayBlockingQueue<AVPacket> packetPool;
+		private final AtomicLong droppedPacketCount = new AtomicLong(0);
+
+		public AsyncPacketListener(String streamId, IPacketListener listener, int queueSize) {
+			super(streamId);
+			this.listener = listener;
+			this.queue = new ArrayBlockingQueue<>(queueSize);
+			this.packetPool = new ArrayBlockingQueue<>(queueSize);
+		}
+
+		@Override
+		public AVPacket onPacket(String streamId, AVPacket packet) {
+			if (isClosed()) {
+				return packet;
+			}
+			AVPacket copy = packetPool.poll();
+			if (copy == null) {
+				copy = avcodec.av_packet_alloc();
+			}
+			if (av_packet_ref(copy, packet) < 0 || !queue.offer(copy)) {
+				av_packet_unref(copy);
+				recycle(copy);
+				if (droppedPacketCount.incrementAndGet() % 100 == 1) {
+					logger.warn("Packet is dropped for slow listener {} stream: {} total dropped: {}", listener.getClass().getSimpleName(), streamId, droppedPacketCount.get());
+				}
+			}
+			else if (isClosed()) {
+				//closed while the packet is being added
+				freeAll();
+			}
+			else {
+				schedule();
+			}
+			return packet;
+		}
+
+		@Override
+		protected AVPacket poll() {
+			return queue.poll();
+		}
+
+		@Override
+		protected boolean hasPending() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		protected void dispatch(AVPacket packet) {
+			listener.onPacket(streamId, packet);
+		}
+
+		@Override
+		protected void dispatchTrailer() {
+			listener.writeTrailer();
+		}
+
+		@Override
+		protected void recycle(AVPacket packet) {
+			av_packet_unref(packet);
+			synchronized (packetPool) {
+				if (isClosed() || !packetPool.offer(packet)) {
+					av_packet_free(packet);
+				}
+			}
+		}
+
+		@Override
+		protected void freeAll() {
+			AVPacket packet;
+			while ((packet = queue.poll()) != null) {
+				av_packet_unref(packet);
+				av_packet_free(packet);
+			}
+			synchronized (packetPool) {
+				while ((packet = packetPool.poll()) != null) {
+					av_packet_free(packet);
+				}
+			}
+		}
+
+		@Override
+		public void setVideoStreamInfo(String streamId, StreamParametersInfo videoStreamInfo) {
+			listener.setVideoStreamInfo(streamId, videoStreamInfo);
+		}
+
+		@Override
+		public void setAudioStreamInfo(String streamId, StreamParametersInfo audioStreamInfo) {
+			listener.setAudioStreamInfo(streamId, audioStreamInfo);
+		}
+
+		public IPacketListener getListener() {
+			return listener;
+		}
+
+		public long getDroppedPacketCount() {
+			return droppedPacketCount.get();
+		}
+
+		public int getQueueSize() {
+			return queue.size();
+		}
+	}
 
 	public PacketFeeder(String streamId) {
 		this.streamId = streamId;
@@ -46,21 +176,65 @@ public class PacketFeeder{
 		listeners.add(listener);
 	}
 
+	/**
+	 * @param listener
+	 * @param async if it's true, listener is called in another thread with a copy of the packets
+	 * and packets are dropped if the listener cannot keep up
+	 */
+	public void addListener(IPacketListener listener, boolean async) {
+		if (async) {
+			listeners.add(new AsyncPacketListener(streamId, listener, ASYNC_QUEUE_SIZE));
+		}
+		else {
+			listeners.add(listener);
+		}
+	}
+
 	public void removeListener(IPacketListener listener) {
-		listeners.remove(listener);
+		for (IPacketListener registeredListener : listeners) {
+			if (registeredListener == listener ||
+					(registeredListener instanceof AsyncPacketListener && ((AsyncPacketListener)registeredListener).getListener() == listener))
+			{
+				listeners.remove(registeredListener);
+				if (registeredListener instanceof AsyncPacketListener) {
+					((AsyncPacketListener)registeredListener).close();
+				}
+				break;
+			}
+		}
 	}
 
+	/**
+	 * Copies the buffer to the reused native buffer and sets it as the packet data
+	 */
+	private void setPacketData(AVPacket packet, ByteBuffer buffer) {
+		int size = buffer.limit();
+		if (dataPointer == null || dataPointer.capacity() < size) {
+			long capacity = 65536;
+			if (dataPointer != null) {
+				capacity = dataPointer.capacity() * 2;
+				dataPointer.close();
+			}
+			dataPointer = new BytePointer(Math.max(size, capacity));
+			dataBuffer = dataPointer.asByteBuffer();
+		}
+		buffer.rewind();
+		dataBuffer.clear();
+		dataBuffer.put(buffer);
+		buffer.rewind();
+
+		packet.data(dataPointer);
+		packet.size(size);
+		packet.position(0);
+	}
 
 	public void writeAudioBuffer(ByteBuffer audioFrame, int streamIndex, long timestamp) {
 		if(!listeners.isEmpty()) {
 			audioPkt.stream_index(streamIndex);
 			audioPkt.pts(timestamp);
 			audioPkt.dts(timestamp);
-			audioFrame.rewind();
 			audioPkt.flags(audioPkt.flags() | AV_PKT_FLAG_KEY);
-			audioPkt.data(new BytePointer(audioFrame));
-			audioPkt.size(audioFrame.limit());
-			audioPkt.position(0);
+			setPacketData(audioPkt, audioFrame);
 
 			writePacket(audioPkt);
 
@@ -75,16 +249,11 @@ public class PacketFeeder{
 			videoPkt.pts(pts);
 			videoPkt.dts(dts);
 
-			encodedVideoFrame.rewind();
 			if (isKeyFrame) {
 				videoPkt.flags(videoPkt.flags() | AV_PKT_FLAG_KEY);
 			}
 
-			BytePointer bytePointer = new BytePointer(encodedVideoFrame);
-			videoPkt.data(bytePointer);
-			videoPkt.size(encodedVideoFrame.limit());
-			videoPkt.position(0);
-
+			setPacketData(videoPkt, encodedVideoFrame);
 
 			writePacket(videoPkt);
 
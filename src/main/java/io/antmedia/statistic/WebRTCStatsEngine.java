@@ -0,0 +1,281 @@
+package io.antmedia.statistic;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.antmedia.statistic.type.RTMPToWebRTCStats;
+import io.antmedia.statistic.type.WebRTCAudioSendStats;
+import io.antmedia.statistic.type.WebRTCVideoSendStats;
+
+/**
+ * Collects WebRTC statistics of the streams and their viewers.
+ *
+ * Counters are kept in primitive arrays per viewer and latencies are recorded in a {@link LatencyHistogram} per stage
+ * of a stream, so recording does not lock or allocate. Totals of a stream are aggregated from its viewers when they are
+ * read. Stats of a stream and a viewer are created once, when they are first requested.
+ */
+public class WebRTCStatsEngine {
+
+	public static final String BEAN_NAME = "webRTCStatsEngine";
+
+	/**
+	 * Counters of a viewer
+	 */
+	public enum Counter {
+		VIDEO_PACKETS_SENT,
+		VIDEO_BYTES_SENT,
+		VIDEO_FRAMES_ENCODED,
+		VIDEO_FIR_COUNT,
+		VIDEO_PLI_COUNT,
+		VIDEO_NACK_COUNT,
+		AUDIO_PACKETS_SENT,
+		AUDIO_BYTES_SENT
+	}
+
+	/**
+	 * Stages of the RTMP to WebRTC pipeline whose latencies are recorded
+	 */
+	public enum Stage {
+		INGEST,
+		DECODE,
+		ENCODE_QUEUE,
+		ENCODE,
+		DELIVERY
+	}
+
+	private static final Counter[] COUNTERS = Counter.values();
+
+	private static final Stage[] STAGES = Stage.values();
+
+	private final Map<String, StreamStats> streams = new ConcurrentHashMap<>();
+
+	/**
+	 * Counters of a viewer. Each counter is updated without locking and can be written by more than one thread
+	 */
+	public static class ViewerStats {
+
+		private final String viewerId;
+
+		private final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+		public ViewerStats(String viewerId) {
+			this.viewerId = viewerId;
+		}
+
+		public void add(Counter counter, long delta) {
+			counters.addAndGet(counter.ordinal(), delta);
+		}
+
+		public void increment(Counter counter) {
+			counters.incrementAndGet(counter.ordinal());
+		}
+
+		public long get(Counter counter) {
+			return counters.get(counter.ordinal());
+		}
+
+		public String getViewerId() {
+			return viewerId;
+		}
+	}
+
+	/**
+	 * Counters and latency histograms of a stream
+	 */
+	public static class StreamStats {
+
+		private final String streamId;
+
+		private final Map<String, ViewerStats> viewers = new ConcurrentHashMap<>();
+
+		/**
+		 * Counters of the viewers that are removed so that totals of the stream do not decrease
+		 */
+		private final AtomicLongArray removedViewerCounters = new AtomicLongArray(COUNTERS.length);
+
+		private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+
+		private volatile int encoderCount;
+
+		public StreamStats(String streamId) {
+			this.streamId = streamId;
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+
+		/**
+		 * @return stats of the viewer, it's created if it does not exist
+		 */
+		public ViewerStats getViewerStats(String viewerId) {
+			ViewerStats viewerStats = viewers.get(viewerId);
+			if (viewerStats == null) {
+				viewerStats = viewers.computeIfAbsent(viewerId, ViewerStats::new);
+			}
+			return viewerStats;
+		}
+
+		public void removeViewer(String viewerId) {
+			ViewerStats viewerStats = viewers.remove(viewerId);
+			if (viewerStats != null) {
+				for (int i = 0; i < COUNTERS.length; i++) {
+					removedViewerCounters.addAndGet(i, viewerStats.counters.get(i));
+				}
+			}
+		}
+
+		/**
+		 * @param stage
+		 * @param latency latency of the stage, unit is up to the caller but it should be the same for a stage
+		 */
+		public void recordLatency(Stage stage, long latency) {
+			histograms[stage.ordinal()].record(latency);
+		}
+
+		public LatencyHistogram getLatencyHistogram(Stage stage) {
+			return histograms[stage.ordinal()];
+		}
+
+		public long getP50(Stage stage) {
+			return histograms[stage.ordinal()].getValueAtPercentile(50);
+		}
+
+		public long getP95(Stage stage) {
+			return histograms[stage.ordinal()].getValueAtPercentile(95);
+		}
+
+		public long getP99(Stage stage) {
+			return histograms[stage.ordinal()].getValueAtPercentile(99);
+		}
+
+		/**
+		 * @return total of the counter for the current and removed viewers
+		 */
+		public long getTotal(Counter counter) {
+			long total = removedViewerCounters.get(counter.ordinal());
+			for (ViewerStats viewerStats : viewers.values()) {
+				total += viewerStats.get(counter);
+			}
+			return total;
+		}
+
+		public int getViewerCount() {
+			return viewers.size();
+		}
+
+		public String getStreamId() {
+			return streamId;
+		}
+
+		public int getEncoderCount() {
+			return encoderCount;
+		}
+
+		public void setEncoderCount(int encoderCount) {
+			this.encoderCount = encoderCount;
+		}
+
+		/**
+		 * Clears the latency histograms, counters are not reset
+		 */
+		public void resetLatencies() {
+			for (LatencyHistogram histogram : histograms) {
+				histogram.reset();
+			}
+		}
+
+		public WebRTCVideoSendStats getVideoSendStats() {
+			WebRTCVideoSendStats videoSendStats = new WebRTCVideoSendStats();
+			videoSendStats.setVideoPacketsSent(getTotal(Counter.VIDEO_PACKETS_SENT));
+			videoSendStats.setVideoBytesSent(BigInteger.valueOf(getTotal(Counter.VIDEO_BYTES_SENT)));
+			videoSendStats.setVideoFramesEncoded(getTotal(Counter.VIDEO_FRAMES_ENCODED));
+			videoSendStats.setVideoFirCount(getTotal(Counter.VIDEO_FIR_COUNT));
+			videoSendStats.setVideoPliCount(getTotal(Counter.VIDEO_PLI_COUNT));
+			videoSendStats.setVideoNackCount(getTotal(Counter.VIDEO_NACK_COUNT));
+			videoSendStats.setTimeMs(System.currentTimeMillis());
+			return videoSendStats;
+		}
+
+		public WebRTCAudioSendStats getAudioSendStats() {
+			WebRTCAudioSendStats audioSendStats = new WebRTCAudioSendStats();
+			audioSendStats.setAudioPacketsSent(getTotal(Counter.AUDIO_PACKETS_SENT));
+			audioSendStats.setAudioBytesSent(BigInteger.valueOf(getTotal(Counter.AUDIO_BYTES_SENT)));
+			audioSendStats.setTimeMs(System.currentTimeMillis());
+			return audioSendStats;
+		}
+
+		/**
+		 * @return totals and counts of the stages together with their percentiles
+		 */
+		public RTMPToWebRTCStats getRTMPToWebRTCStats() {
+			RTMPToWebRTCStats stats = new RTMPToWebRTCStats(streamId);
+			stats.setEncoderCount(encoderCount);
+
+			LatencyHistogram histogram = getLatencyHistogram(Stage.INGEST);
+			stats.setTotalVideoIngestTime(histogram.getSum());
+			stats.setTotalIngestedVideoPacketCount(histogram.getCount());
+
+			histogram = getLatencyHistogram(Stage.DECODE);
+			stats.setTotalVideoDecodeTime(histogram.getSum());
+			stats.setTotalDecodedVideoFrameCount(histogram.getCount());
+
+			stats.setTotalVideoEncodeQueueTime(getLatencyHistogram(Stage.ENCODE_QUEUE).getSum());
+
+			histogram = getLatencyHistogram(Stage.ENCODE);
+			stats.setTotalVideoEncodeTime(histogram.getSum());
+			stats.setTotalEncodedVideoPacketCount(histogram.getCount());
+
+			histogram = getLatencyHistogram(Stage.DELIVERY);
+			stats.setTotalVideoDeliveryTime(histogram.getSum());
+			stats.setTotalDeliveredVideoPacketCount(histogram.getCount());
+
+			for (Stage stage : STAGES) {
+				stats.setLatencyPercentiles(stage.name(), getP50(stage), getP95(stage), getP99(stage));
+			}
+			return stats;
+		}
+	}
+
+	/**
+	 * @return stats of the stream, it's created if it does not exist
+	 */
+	public StreamStats getStreamStats(String streamId) {
+		StreamStats streamStats = streams.get(streamId);
+		if (streamStats == null) {
+			streamStats = streams.computeIfAbsent(streamId, StreamStats::new);
+		}
+		return streamStats;
+	}
+
+	/**
+	 * @return stats of the stream or null if there is no stats for the stream
+	 */
+	public StreamStats findStreamStats(String streamId) {
+		return streams.get(streamId);
+	}
+
+	public ViewerStats getViewerStats(String streamId, String viewerId) {
+		return getStreamStats(streamId).getViewerStats(viewerId);
+	}
+
+	public void recordLatency(String streamId, Stage stage, long latency) {
+		getStreamStats(streamId).recordLatency(stage, latency);
+	}
+
+	public void removeViewer(String streamId, String viewerId) {
+		StreamStats streamStats = streams.get(streamId);
+		if (streamStats != null) {
+			streamStats.removeViewer(viewerId);
+		}
+	}
+
+	public void removeStream(String streamId) {
+		streams.remove(streamId);
+	}
+
+	public int getStreamCount() {
+		return streams.size();
+	}
+}
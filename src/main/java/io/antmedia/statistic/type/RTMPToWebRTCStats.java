@@ -1,5 +1,8 @@
 package io.antmedia.statistic.type;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class RTMPToWebRTCStats 
 {
 	private String streamId;
@@ -30,6 +33,11 @@ public class RTMPToWebRTCStats
 	 */
 	private long captureTimeMs;
 	
+	/**
+	 * p50, p95 and p99 latencies of the stages keyed like "ENCODE.p95"
+	 */
+	private Map<String, Long> latencyPercentiles = new LinkedHashMap<>();
+	
 	public RTMPToWebRTCStats(String streamId) {
 		this.setStreamId(streamId);
 	}
@@ -138,4 +146,14 @@ public class RTMPToWebRTCStats
 		return frameId;
 	}
 	
+	public void setLatencyPercentiles(String stage, long p50, long p95, long p99) {
+		latencyPercentiles.put(stage + ".p50", p50);
+		latencyPercentiles.put(stage + ".p95", p95);
+		latencyPercentiles.put(stage + ".p99", p99);
+	}
+	
+	public Map<String, Long> getLatencyPercentiles() {
+		return latencyPercentiles;
+	}
+	
 }
@@ -8,7 +8,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -28,9 +28,11 @@ public class AmazonS3StorageClient extends StorageClient {
 
 	private AmazonS3 amazonS3;
 
+	private TransferManager transferManager;
+
 	protected static Logger logger = LoggerFactory.getLogger(AmazonS3StorageClient.class);
 
-	private AmazonS3 getAmazonS3() {
+	private synchronized AmazonS3 getAmazonS3() {
 		if (amazonS3 == null) {
 			AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard();
 
@@ -58,6 +60,18 @@ public class AmazonS3StorageClient extends StorageClient {
 		return amazonS3; 
 	}
 
+	/**
+	 * TransferManager is shared by all uploads because it keeps a thread pool and connections
+	 */
+	private synchronized TransferManager getTransferManager() {
+		if (transferManager == null) {
+			transferManager = TransferManagerBuilder.standard()
+					.withS3Client(getAmazonS3())
+					.build();
+		}
+		return transferManager;
+	}
+
 
 	public void delete(String key) {
 		if (isEnabled()) 
@@ -88,47 +102,40 @@ public class AmazonS3StorageClient extends StorageClient {
 
 	public void save(String key, File file)
 	{	
-		if (isEnabled()) {
-			AmazonS3 s3 = getAmazonS3();
-
-			TransferManager tm = TransferManagerBuilder.standard()
-					.withS3Client(s3)
-					.build();
+		trySave(key, file);
+	}
 
+	@Override
+	public boolean trySave(String key, File file)
+	{
+		boolean result = false;
+		if (isEnabled()) {
 			PutObjectRequest putRequest = new PutObjectRequest(getStorageName(), key, file);
 
 
 			putRequest.setCannedAcl(getCannedAcl());
 
 
-			Upload upload = tm.upload(putRequest);
+			Upload upload = getTransferManager().upload(putRequest);
 			// TransferManager processes all transfers asynchronously,
 			// so this call returns immediately.
-			//Upload upload = tm.upload(getStorageName(), key, file);
-			logger.info("Mp4 {} upload has started with key: {}", file.getName(), key);
+			logger.info("File {} upload has started with key: {}", file.getName(), key);
 
 			upload.addProgressListener((ProgressListener) event -> 
 			{
 				if (event.getEventType() == ProgressEventType.TRANSFER_FAILED_EVENT){
 					logger.error("S3 - Error: Upload failed for {} with key {}", file.getName(), key);
 				}
-				else if (event.getEventType() == ProgressEventType.TRANSFER_COMPLETED_EVENT){
-					try {
-						Files.delete(file.toPath());
-					} catch (IOException e) {
-						logger.error(ExceptionUtils.getStackTrace(e));
-					}
-					logger.info("File {} uploaded to S3 with key: {}", file.getName(), key);
-				}
 			});
 
 
-			// Optionally, wait for the upload to finish before continuing.
+			// Wait for the upload to finish before continuing.
 			try {  
 				upload.waitForCompletion();
-
-				logger.info("Mp4 {} upload completed", file.getName());
-			} catch (AmazonServiceException e1) {
+				Files.delete(file.toPath());
+				result = true;
+				logger.info("File {} uploaded to S3 with key: {}", file.getName(), key);
+			} catch (AmazonClientException | IOException e1) {
 				logger.error(ExceptionUtils.getStackTrace(e1));
 			} catch (InterruptedException e1) {
 				logger.error(ExceptionUtils.getStackTrace(e1));
@@ -138,7 +145,7 @@ public class AmazonS3StorageClient extends StorageClient {
 		else {
 			logger.debug("S3 is not enabled to save the file: {}", key);
 		}
-
+		return result;
 	}
 
 
@@ -0,0 +1,92 @@
+package io.antmedia.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Storage client that saves the files to a directory in the local file system.
+ * Storage name is the root directory. It's used for testing the uploads without an object storage
+ * and for mounted network file systems.
+ */
+public class LocalStorageClient extends StorageClient {
+
+	protected static Logger logger = LoggerFactory.getLogger(LocalStorageClient.class);
+
+	/**
+	 * @param key
+	 * @return path of the key in the root directory or null if key points outside of the root directory
+	 */
+	private Path getPath(String key) {
+		Path root = Paths.get(getStorageName()).toAbsolutePath().normalize();
+		Path path = root.resolve(key).normalize();
+		if (!path.startsWith(root)) {
+			logger.warn("Key is out of the storage directory: {}", key);
+			return null;
+		}
+		return path;
+	}
+
+	@Override
+	public void delete(String key) {
+		if (isEnabled()) {
+			Path path = getPath(key);
+			if (path != null) {
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+			}
+		}
+		else {
+			logger.debug("Local storage is not enabled to delete the file: {}", key);
+		}
+	}
+
+	@Override
+	public void save(String key, File file) {
+		trySave(key, file);
+	}
+
+	@Override
+	public boolean trySave(String key, File file) {
+		boolean result = false;
+		if (isEnabled()) {
+			Path path = getPath(key);
+			if (path != null) {
+				try {
+					Files.createDirectories(path.getParent());
+					Files.move(file.toPath(), path, StandardCopyOption.REPLACE_EXISTING);
+					logger.info("File {} saved to local storage with key: {}", file.getName(), key);
+					result = true;
+				} catch (IOException e) {
+					logger.error(ExceptionUtils.getStackTrace(e));
+				}
+			}
+		}
+		else {
+			logger.debug("Local storage is not enabled to save the file: {}", key);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean fileExist(String key) {
+		if (isEnabled()) {
+			Path path = getPath(key);
+			return path != null && Files.exists(path);
+		}
+		else {
+			logger.debug("Local storage is not enabled to check the file existence: {}", key);
+		}
+		return false;
+	}
+}
@@ -56,6 +56,20 @@ public abstract class StorageClient {
 	 */
 	public abstract void save(String key, File file);
 
+	/**
+	 * Save file to storage and delete the local file if it's uploaded successfully.
+	 * It blocks until upload is completed. Default implementation calls {@link #save(String, File)} 
+	 * and reports success if it does not throw, implementations should override it to report failures
+	 *
+	 * @param key
+	 * @param file
+	 * @return true if file is saved to storage
+	 */
+	public boolean trySave(String key, File file) {
+		save(key, file);
+		return true;
+	}
+
 	/**
 	 * Check if the key exists in the bucket
 	 * 
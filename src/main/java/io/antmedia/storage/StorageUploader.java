@@ -0,0 +1,197 @@
+package io.antmedia.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Uploads files to the storage with bounded concurrency that is shared by all streams.
+ *
+ * Uploads are queued and run by a fixed number of workers so that many streams ending at the same time
+ * do not block the caller or open unbounded connections. Failed uploads are retried with exponential backoff.
+ */
+public class StorageUploader {
+
+	private static Logger logger = LoggerFactory.getLogger(StorageUploader.class);
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+
+	public static final int DEFAULT_MAX_RETRY = 3;
+
+	public static final long DEFAULT_RETRY_DELAY_MS = 1000;
+
+	private static final StorageUploader instance = new StorageUploader(DEFAULT_CONCURRENCY, DEFAULT_MAX_RETRY, DEFAULT_RETRY_DELAY_MS);
+
+	private final ThreadPoolExecutor uploadExecutor;
+
+	private final ScheduledExecutorService retryScheduler;
+
+	private final int maxRetry;
+
+	private final long retryDelayMs;
+
+	private final AtomicInteger pendingUploadCount = new AtomicInteger(0);
+
+	private final AtomicLong uploadedBytes = new AtomicLong(0);
+
+	private final AtomicLong uploadedFileCount = new AtomicLong(0);
+
+	private final AtomicLong failedUploadCount = new AtomicLong(0);
+
+	private final AtomicLong retryCount = new AtomicLong(0);
+
+	private long rateCheckTime = System.currentTimeMillis();
+
+	private long rateCheckBytes = 0;
+
+	private long bytesPerSecond = 0;
+
+	public static StorageUploader getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @param concurrency max number of uploads that run at the same time
+	 * @param maxRetry number of retries after the first attempt fails
+	 * @param retryDelayMs delay before the first retry, it's doubled for each retry
+	 */
+	public StorageUploader(int concurrency, int maxRetry, long retryDelayMs) {
+		AtomicInteger threadCounter = new AtomicInteger(0);
+		uploadExecutor = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread thread = new Thread(r, "storage-uploader-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		uploadExecutor.allowCoreThreadTimeOut(true);
+		retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "storage-uploader-retry");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.maxRetry = maxRetry;
+		this.retryDelayMs = retryDelayMs;
+	}
+
+	/**
+	 * Queues the file to be uploaded
+	 *
+	 * @param storageClient
+	 * @param key of the file in the storage
+	 * @param file to be uploaded
+	 * @param deleteLocalFile if true, local file is deleted after upload or if storage is not enabled
+	 * @return future that is completed with true if the file is uploaded
+	 */
+	public CompletableFuture<Boolean> upload(StorageClient storageClient, String key, File file, boolean deleteLocalFile) {
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		pendingUploadCount.incrementAndGet();
+		submit(storageClient, key, file, deleteLocalFile, 0, future);
+		return future;
+	}
+
+	private void submit(StorageClient storageClient, String key, File file, boolean deleteLocalFile, int attempt, CompletableFuture<Boolean> future) {
+		uploadExecutor.execute(() -> runUpload(storageClient, key, file, deleteLocalFile, attempt, future));
+	}
+
+	private void runUpload(StorageClient storageClient, String key, File file, boolean deleteLocalFile, int attempt, CompletableFuture<Boolean> future) {
+		boolean uploaded = false;
+		boolean retry = false;
+		try {
+			if (!file.exists()) {
+				logger.warn("File does not exist to upload: {}", file.getAbsolutePath());
+			}
+			else if (!storageClient.isEnabled()) {
+				logger.debug("Storage is not enabled to upload the file: {}", key);
+			}
+			else {
+				long length = file.length();
+				uploaded = storageClient.trySave(key, file);
+				if (uploaded) {
+					uploadedBytes.addAndGet(length);
+					uploadedFileCount.incrementAndGet();
+				}
+				else {
+					retry = attempt < maxRetry;
+				}
+			}
+		}
+		catch (Exception e) {
+			logger.error("Upload failed for key:{} attempt:{} {}", key, attempt, ExceptionUtils.getStackTrace(e));
+			retry = attempt < maxRetry;
+		}
+
+		if (retry) {
+			retryCount.incrementAndGet();
+			long delay = retryDelayMs << attempt;
+			logger.warn("Upload will be retried in {}ms for key:{}", delay, key);
+			retryScheduler.schedule(() -> submit(storageClient, key, file, deleteLocalFile, attempt + 1, future), delay, TimeUnit.MILLISECONDS);
+			return;
+		}
+
+		if (!uploaded && file.exists() && storageClient.isEnabled()) {
+			failedUploadCount.incrementAndGet();
+			logger.error("Upload failed for key:{} after {} attempts", key, attempt + 1);
+		}
+		if (deleteLocalFile && file.exists()) {
+			try {
+				Files.delete(file.toPath());
+			} catch (IOException e) {
+				logger.error(ExceptionUtils.getStackTrace(e));
+			}
+		}
+		pendingUploadCount.decrementAndGet();
+		future.complete(uploaded);
+	}
+
+	/**
+	 * @return number of files that are queued, being uploaded or waiting for retry
+	 */
+	public int getQueueDepth() {
+		return pendingUploadCount.get();
+	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes.get();
+	}
+
+	public long getUploadedFileCount() {
+		return uploadedFileCount.get();
+	}
+
+	/**
+	 * @return number of files that could not be uploaded after all retries
+	 */
+	public long getFailedUploadCount() {
+		return failedUploadCount.get();
+	}
+
+	public long getRetryCount() {
+		return retryCount.get();
+	}
+
+	/**
+	 * @return upload rate since the previous call, it's updated at most once a second
+	 */
+	public synchronized long getBytesPerSecond() {
+		long now = System.currentTimeMillis();
+		long elapsed = now - rateCheckTime;
+		if (elapsed >= 1000) {
+			long bytes = uploadedBytes.get();
+			bytesPerSecond = (bytes - rateCheckBytes) * 1000 / elapsed;
+			rateCheckBytes = bytes;
+			rateCheckTime = now;
+		}
+		return bytesPerSecond;
+	}
+}
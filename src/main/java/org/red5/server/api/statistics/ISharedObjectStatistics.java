@@ -97,4 +97,18 @@ public interface ISharedObjectStatistics extends IStatisticsBase {
      */
     public int getTotalSends();
 
+    /**
+     * Return number of sync events that are generated by the changes, before they are coalesced.
+     * 
+     * @return number of raw events
+     */
+    public long getTotalRawEvents();
+
+    /**
+     * Return number of sync events that are sent to the listeners.
+     * 
+     * @return number of sent events
+     */
+    public long getTotalSentEvents();
+
 }
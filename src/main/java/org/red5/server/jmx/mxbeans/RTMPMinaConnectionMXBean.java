@@ -25,4 +25,9 @@ public interface RTMPMinaConnectionMXBean extends RTMPConnectionMXBean {
 
     public void invokeMethod(String method);
 
+    /**
+     * @return number of incoming bytes that are copied into the decoder's accumulation buffer because they could not be decoded in place
+     */
+    public long getDecoderCopiedBytes();
+
 }
@@ -21,6 +21,7 @@ package org.red5.server.messaging;
 import java.io.IOException;
 import java.util.Map;
 
+import org.red5.server.api.stream.IBroadcastStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +35,11 @@ public class InMemoryPushPushPipe extends AbstractPipe {
 
     private static final Logger log = LoggerFactory.getLogger(InMemoryPushPushPipe.class);
 
+    /**
+     * Delivers messages to consumers in worker threads when the provider is a live stream and live fan-out is enabled
+     */
+    private volatile LiveFanout liveFanout;
+
     public InMemoryPushPushPipe() {
         super();
     }
@@ -68,11 +74,37 @@ public class InMemoryPushPushPipe extends AbstractPipe {
             log.debug("Provider subscribe{} {} params: {}", new Object[] { (success ? "d" : " failed"), provider, paramMap });
         }
         if (success) {
+            if (liveFanout == null && provider instanceof IBroadcastStream && LiveFanout.isEnabled()) {
+                liveFanout = new LiveFanout(this);
+            }
             fireProviderConnectionEvent(provider, PipeConnectionEvent.EventType.PROVIDER_CONNECT_PUSH, paramMap);
         }
         return success;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean unsubscribe(IProvider provider) {
+        boolean success = super.unsubscribe(provider);
+        LiveFanout fanout = liveFanout;
+        if (success && fanout != null) {
+            liveFanout = null;
+            fanout.close();
+        }
+        return success;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean unsubscribe(IConsumer consumer) {
+        boolean success = super.unsubscribe(consumer);
+        LiveFanout fanout = liveFanout;
+        if (success && fanout != null) {
+            fanout.remove(consumer);
+        }
+        return success;
+    }
+
     /** {@inheritDoc} */
     public IMessage pullMessage() {
         return null;
@@ -84,7 +116,8 @@ public class InMemoryPushPushPipe extends AbstractPipe {
     }
 
     /**
-     * Pushes a message out to all the PushableConsumers.
+     * Pushes a message out to all the PushableConsumers. If live fan-out is used, message is queued for the consumers and this method returns without
+     * waiting for them.
      * 
      * @param message
      *            the message to be pushed to consumers
@@ -95,6 +128,11 @@ public class InMemoryPushPushPipe extends AbstractPipe {
         if (log.isDebugEnabled()) {
             log.debug("pushMessage: {} to {} consumers", message, consumers.size());
         }
+        LiveFanout fanout = liveFanout;
+        if (fanout != null) {
+            fanout.publish(message, consumers);
+            return;
+        }
         for (IConsumer consumer : consumers) {
             try {
                 IPushableConsumer pcon = (IPushableConsumer) consumer;
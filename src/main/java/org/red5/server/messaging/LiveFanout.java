@@ -0,0 +1,321 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ * 
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.red5.server.messaging;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.stream.message.RTMPMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Delivers the messages of a live pipe to its consumers without blocking the publisher.
+ * 
+ * Publisher writes each message once into a ring buffer and each consumer reads the ring at its own cursor in a shared worker pool. A consumer that
+ * falls behind more than half of the ring skips to the latest video keyframe in the last half of the ring, or to the end of the ring and waits for
+ * the next keyframe if there is none, so that a slow subscriber never holds up the publisher or the other subscribers.
+ * 
+ * Body of a message is retained while it's in the ring, because the publisher releases the message after it's pushed. It's released when its slot is
+ * overwritten, or when the fan-out is closed, and after the consumers that are pushing it have returned.
+ */
+public class LiveFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(LiveFanout.class);
+
+    private static volatile boolean enabled = false;
+
+    private static volatile int ringSize = 256;
+
+    private static ExecutorService executor;
+
+    private final IPipe pipe;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Entry> ring;
+
+    /**
+     * Sequence of the next message to be written
+     */
+    private volatile long writeSequence = 0;
+
+    private final ConcurrentHashMap<IConsumer, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicLong skippedMessageCount = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    private static final class Entry {
+
+        final long sequence;
+
+        final IMessage message;
+
+        final boolean keyFrame;
+
+        final boolean video;
+
+        final IRTMPEvent body;
+
+        /**
+         * One reference for the ring and one for each consumer that is pushing the message
+         */
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Entry(long sequence, IMessage message) {
+            this.sequence = sequence;
+            this.message = message;
+            this.body = message instanceof RTMPMessage ? ((RTMPMessage) message).getBody() : null;
+            this.video = body instanceof VideoData;
+            this.keyFrame = video && ((VideoData) body).getFrameType() == FrameType.KEYFRAME;
+            if (body != null) {
+                body.retain();
+            }
+        }
+
+        /**
+         * @return false if the entry has already been released
+         */
+        boolean acquire() {
+            int count;
+            do {
+                count = refs.get();
+                if (count <= 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0 && body != null) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Cursor of a consumer in the ring. It's drained by at most one worker at a time
+     */
+    private final class Subscriber implements Runnable {
+
+        private final IPushableConsumer consumer;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private long cursor;
+
+        private boolean waitForKeyFrame = false;
+
+        private volatile boolean closed = false;
+
+        Subscriber(IPushableConsumer consumer, long cursor) {
+            this.consumer = consumer;
+            this.cursor = cursor;
+        }
+
+        void schedule() {
+            if (!closed && scheduled.compareAndSet(false, true)) {
+                getExecutor().execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                long end;
+                while (!closed && cursor < (end = writeSequence)) {
+                    Entry entry = ring.get((int) (cursor & mask));
+                    if (end - cursor > capacity / 2 || entry == null || entry.sequence != cursor || !entry.acquire()) {
+                        // too slow or the entry has been overwritten
+                        skipToKeyFrame(end);
+                        continue;
+                    }
+                    try {
+                        cursor++;
+                        if (waitForKeyFrame && entry.video) {
+                            if (!entry.keyFrame) {
+                                skippedMessageCount.incrementAndGet();
+                                continue;
+                            }
+                            waitForKeyFrame = false;
+                        }
+                        consumer.pushMessage(pipe, entry.message);
+                    } catch (Throwable t) {
+                        log.error("Exception pushing message to consumer", t);
+                    } finally {
+                        entry.release();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (!closed && cursor < writeSequence) {
+                schedule();
+            }
+        }
+
+        /**
+         * Moves the cursor to the latest keyframe that is not more than half of the ring behind the end, so that the consumer is not behind
+         * the lag threshold again after the skip
+         */
+        private void skipToKeyFrame(long end) {
+            long start = Math.max(cursor, end - capacity / 2);
+            long next = end;
+            for (long sequence = end - 1; sequence >= start; sequence--) {
+                Entry entry = ring.get((int) (sequence & mask));
+                if (entry == null || entry.sequence != sequence) {
+                    break;
+                }
+                if (entry.keyFrame) {
+                    next = sequence;
+                    break;
+                }
+            }
+            // if there is no keyframe within the threshold, video is skipped until the next keyframe
+            waitForKeyFrame = next == end;
+            log.debug("Consumer is behind, skipping {} messages", next - cursor);
+            skippedMessageCount.addAndGet(next - cursor);
+            cursor = next;
+        }
+    }
+
+    public LiveFanout(IPipe pipe) {
+        this.pipe = pipe;
+        int size = Integer.highestOneBit((Math.max(16, ringSize) - 1) << 1);
+        this.capacity = size;
+        this.mask = size - 1;
+        this.ring = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Writes the message to the ring and wakes up the consumers
+     * 
+     * @param message
+     *            message to be delivered
+     * @param consumers
+     *            consumers of the pipe
+     */
+    public synchronized void publish(IMessage message, List<IConsumer> consumers) {
+        if (closed) {
+            return;
+        }
+        long sequence = writeSequence;
+        Entry previous = ring.getAndSet((int) (sequence & mask), new Entry(sequence, message));
+        writeSequence = sequence + 1;
+        if (previous != null) {
+            previous.release();
+        }
+        for (IConsumer consumer : consumers) {
+            Subscriber subscriber = subscribers.get(consumer);
+            if (subscriber == null) {
+                // new consumer starts from the current message
+                subscriber = new Subscriber((IPushableConsumer) consumer, sequence);
+                Subscriber existing = subscribers.putIfAbsent(consumer, subscriber);
+                if (existing != null) {
+                    subscriber = existing;
+                }
+            }
+            subscriber.schedule();
+        }
+    }
+
+    /**
+     * Stops delivering messages to the consumer
+     * 
+     * @param consumer
+     *            consumer that is unsubscribed
+     */
+    public void remove(IConsumer consumer) {
+        Subscriber subscriber = subscribers.remove(consumer);
+        if (subscriber != null) {
+            subscriber.closed = true;
+        }
+    }
+
+    /**
+     * Stops delivering messages to all consumers and releases the messages in the ring. It's called when the provider unsubscribes
+     */
+    public synchronized void close() {
+        closed = true;
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.closed = true;
+        }
+        subscribers.clear();
+        for (int i = 0; i < capacity; i++) {
+            Entry entry = ring.getAndSet(i, null);
+            if (entry != null) {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * @return number of messages that are not delivered to slow consumers
+     */
+    public long getSkippedMessageCount() {
+        return skippedMessageCount.get();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, new CustomizableThreadFactory("LiveFanout-"));
+        }
+        return executor;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable/disable delivering live stream messages to subscribers through a ring buffer in worker threads
+     * 
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        LiveFanout.enabled = enabled;
+    }
+
+    public static int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * Set number of messages kept in the ring of each live stream, it's rounded up to a power of two
+     * 
+     * @param ringSize
+     */
+    public static void setRingSize(int ringSize) {
+        LiveFanout.ringSize = ringSize;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ *
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.crypto.spec.DHParameterSpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of pre-generated Diffie-Hellman key pairs for RTMPE handshakes. Each key pair is handed out once. Pool is refilled in a background
+ * thread when it drops below half of its capacity, and a key pair is generated in the caller thread if the pool is empty.
+ */
+public class DHKeyPairPool {
+
+    private static Logger log = LoggerFactory.getLogger(DHKeyPairPool.class);
+
+    private final DHParameterSpec keySpec;
+
+    private final ArrayBlockingQueue<KeyPair> keyPairs;
+
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DHKeyPairPool-refill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final ThreadLocal<KeyPairGenerator> keyPairGenerator = new ThreadLocal<KeyPairGenerator>() {
+        @Override
+        protected KeyPairGenerator initialValue() {
+            try {
+                KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
+                keyGen.initialize(keySpec);
+                return keyGen;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("DH key pair generator could not be created", e);
+            }
+        }
+    };
+
+    /**
+     * Creates a pool for the given group.
+     *
+     * @param modulus DH modulus
+     * @param base DH base
+     * @param capacity number of pre-generated key pairs kept in the pool
+     */
+    public DHKeyPairPool(BigInteger modulus, BigInteger base, int capacity) {
+        this.keySpec = new DHParameterSpec(modulus, base);
+        this.keyPairs = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Returns a key pair that has not been used before.
+     *
+     * @return key pair
+     */
+    public KeyPair take() {
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPairs.size() < keyPairs.remainingCapacity()) {
+            refill();
+        }
+        if (keyPair == null) {
+            log.debug("Key pair pool is empty, generating in caller thread");
+            keyPair = keyPairGenerator.get().generateKeyPair();
+        }
+        return keyPair;
+    }
+
+    private void refill() {
+        if (refilling.compareAndSet(false, true)) {
+            refillExecutor.execute(() -> {
+                try {
+                    KeyPairGenerator keyGen = keyPairGenerator.get();
+                    while (keyPairs.remainingCapacity() > 0) {
+                        if (!keyPairs.offer(keyGen.generateKeyPair())) {
+                            break;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("Key pair pool refill failed", e);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return number of pre-generated key pairs in the pool
+     */
+    public int size() {
+        return keyPairs.size();
+    }
+
+}
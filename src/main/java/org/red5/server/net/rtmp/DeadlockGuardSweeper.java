@@ -0,0 +1,103 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ * 
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.red5.server.net.rtmp;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Periodically checks the received message task queues of the connections and runs the deadlock guard for the expired tasks. A single
+ * periodic job guards all connections, so a received message costs nothing to guard.
+ */
+final class DeadlockGuardSweeper implements Runnable {
+
+    private final static Logger log = LoggerFactory.getLogger(DeadlockGuardSweeper.class);
+
+    /**
+     * Interval between two checks in milliseconds, expired tasks are found at most this late
+     */
+    static final long SWEEP_INTERVAL = 50L;
+
+    /**
+     * Connections whose tasks are guarded
+     */
+    private static final Set<RTMPConnection> connections = ConcurrentHashMap.newKeySet();
+
+    private static ScheduledFuture<?> sweeperFuture;
+
+    private DeadlockGuardSweeper() {
+    }
+
+    /**
+     * Starts guarding the received message tasks of the connection.
+     * 
+     * @param conn
+     *            connection
+     * @return true if the connection is guarded, false if there is no deadlock guard scheduler
+     */
+    static boolean register(RTMPConnection conn) {
+        ThreadPoolTaskScheduler deadlockGuard = conn.getDeadlockGuardScheduler();
+        if (deadlockGuard == null) {
+            log.debug("Deadlock guard is null for {}", conn.getSessionId());
+            return false;
+        }
+        connections.add(conn);
+        start(deadlockGuard);
+        return true;
+    }
+
+    /**
+     * Stops guarding the received message tasks of the connection.
+     * 
+     * @param conn
+     *            connection
+     */
+    static void unregister(RTMPConnection conn) {
+        connections.remove(conn);
+    }
+
+    private static synchronized void start(ThreadPoolTaskScheduler deadlockGuard) {
+        if (sweeperFuture == null || sweeperFuture.isDone()) {
+            try {
+                sweeperFuture = deadlockGuard.scheduleWithFixedDelay(new DeadlockGuardSweeper(), new Date(System.currentTimeMillis() + SWEEP_INTERVAL), SWEEP_INTERVAL);
+            } catch (TaskRejectedException e) {
+                log.warn("DeadlockGuard sweeper is rejected", e);
+            }
+        }
+    }
+
+    public void run() {
+        for (RTMPConnection conn : connections) {
+            try {
+                conn.guardExpiredTasks();
+            } catch (Throwable t) {
+                log.warn("DeadlockGuard failed for {}", conn.getSessionId(), t);
+            }
+        }
+    }
+
+}
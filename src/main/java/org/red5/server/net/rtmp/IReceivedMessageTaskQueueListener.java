@@ -22,4 +22,6 @@ public interface IReceivedMessageTaskQueueListener {
     void onTaskAdded(ReceivedMessageTaskQueue queue);
 
     void onTaskRemoved(ReceivedMessageTaskQueue queue);
+
+    void onTasksPending(ReceivedMessageTaskQueue queue);
 }
@@ -30,6 +30,9 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -73,6 +76,7 @@ import org.red5.server.service.PendingCall;
 import org.red5.server.so.FlexSharedObjectMessage;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.so.SharedObjectSyncPayload;
 import org.red5.server.stream.AbstractClientStream;
 import org.red5.server.stream.ClientBroadcastStream;
 import org.red5.server.stream.OutputStream;
@@ -85,9 +89,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
-import org.springframework.util.concurrent.ListenableFutureTask;
 
 /**
  * RTMP connection. Stores information about client streams, data transfer channels, pending RPC calls, bandwidth configuration, AMF
@@ -143,6 +144,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     // ~320 streams seems like a sufficient max amount of streams for a single connection
     public static final double MAX_RESERVED_STREAMS = 320;
 
+    /**
+     * Incoming messages are handled in the thread pool executor
+     */
+    public static final String EXECUTOR_MODE_POOL = "pool";
+
+    /**
+     * Incoming messages of each stream are handled in a virtual thread. It requires Java 21 or later, executor is used otherwise
+     */
+    public static final String EXECUTOR_MODE_VIRTUAL = "virtual";
+
     /**
      * Initial channel capacity
      */
@@ -330,6 +341,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     protected transient ThreadPoolTaskScheduler deadlockGuardScheduler;
 
+    /**
+     * Whether the received message tasks are checked by the deadlock guard sweeper
+     */
+    private final AtomicBoolean deadlockGuarded = new AtomicBoolean(false);
+
+    /**
+     * Whether incoming messages are handled in virtual threads instead of the executor
+     */
+    protected boolean virtualThreadExecution = false;
+
     /**
      * Keep-alive worker flag
      */
@@ -951,6 +972,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
             }
             stopWaitForHandshake();
             stopRoundTripMeasurement();
+            DeadlockGuardSweeper.unregister(this);
             // update our state
             if (state != null) {
                 final byte s = getStateCode();
@@ -1105,6 +1127,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     public abstract void write(Packet out);
 
+    /**
+     * Returns whether live audio / video packets may be encoded after {@link #write(Packet)} returns. The data of these packets should be kept
+     * until they're written.
+     * 
+     * @return true if live packets are batched
+     */
+    public boolean isWriteBatchEnabled() {
+        return false;
+    }
+
     /**
      * Write raw byte buffer.
      * 
@@ -1290,6 +1322,15 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * Runs the deadlock guard for the expired received message tasks. It's called by the deadlock guard sweeper.
+     */
+    void guardExpiredTasks() {
+        for (ReceivedMessageTaskQueue queue : tasksByStreams.values()) {
+            queue.guardExpiredTasks();
+        }
+    }
+
     /**
      * Mark message as being written.
      * 
@@ -1298,14 +1339,26 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     protected void writingMessage(Packet message) {
         if (message.getMessage() instanceof VideoData) {
-            Number streamId = message.getHeader().getStreamId();
-            final AtomicInteger value = new AtomicInteger();
-            AtomicInteger old = pendingVideos.putIfAbsent(streamId.doubleValue(), value);
-            if (old == null) {
-                old = value;
-            }
-            old.incrementAndGet();
+            getPendingVideoCounter(message.getHeader().getStreamId()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the counter of the video messages that are being written for the stream. The counter is created if it does not exist, so
+     * callers may keep it and read it directly instead of looking it up for each message.
+     * 
+     * @param streamId
+     *            stream id
+     * @return pending video counter of the stream
+     */
+    public AtomicInteger getPendingVideoCounter(Number streamId) {
+        double id = streamId.doubleValue();
+        AtomicInteger count = pendingVideos.get(id);
+        if (count == null) {
+            // counter is created once per stream
+            count = pendingVideos.computeIfAbsent(id, key -> new AtomicInteger());
         }
+        return count;
     }
 
     /**
@@ -1389,7 +1442,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                 }
                 break;
             default:
-                if (executor != null) {
+                if (getMessageExecutor() != null) {
                     final String messageType = getMessageType(message);
                     try {
                         // increment the packet number
@@ -1404,6 +1457,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                         // set the packet expiration time if maxHandlingTimeout is not disabled (set to 0)
                         if (maxHandlingTimeout > 0) {
                             message.setExpirationTime(System.currentTimeMillis() + maxHandlingTimeout);
+                            // expired tasks are found by the sweeper, nothing is scheduled per message
+                            if (!deadlockGuarded.get() && deadlockGuarded.compareAndSet(false, true)) {
+                                DeadlockGuardSweeper.register(this);
+                            }
                         }
                         int streamId = message.getHeader().getStreamId().intValue();
                         if (log.isTraceEnabled()) {
@@ -1412,17 +1469,18 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                         // create a task to setProcessing the message
                         ReceivedMessageTask task = new ReceivedMessageTask(sessionId, message, handler, this);
                         task.setPacketNumber(packetNumber);
-                        // create a task queue
-                        ReceivedMessageTaskQueue newStreamTasks = new ReceivedMessageTaskQueue(streamId, this);
-                        // put the queue in the task by stream map
-                        ReceivedMessageTaskQueue currentStreamTasks = tasksByStreams.putIfAbsent(streamId, newStreamTasks);
-                        if (currentStreamTasks != null) {
-                            // add the task to the existing queue
-                            currentStreamTasks.addTask(task);
-                        } else {
-                            // add the task to the newly created and just added queue
-                            newStreamTasks.addTask(task);
+                        ReceivedMessageTaskQueue currentStreamTasks = tasksByStreams.get(streamId);
+                        if (currentStreamTasks == null) {
+                            // create a task queue
+                            ReceivedMessageTaskQueue newStreamTasks = new ReceivedMessageTaskQueue(streamId, this);
+                            // put the queue in the task by stream map
+                            currentStreamTasks = tasksByStreams.putIfAbsent(streamId, newStreamTasks);
+                            if (currentStreamTasks == null) {
+                                currentStreamTasks = newStreamTasks;
+                            }
                         }
+                        // add the task to the queue
+                        currentStreamTasks.addTask(task);
                     } catch (Exception e) {
                         log.error("Incoming message handling failed on session=[" + sessionId + "], messageType=[" + messageType + "]", e);
                         if (log.isDebugEnabled()) {
@@ -1445,64 +1503,42 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     @Override
     public void onTaskRemoved(ReceivedMessageTaskQueue queue) {
         currentQueueSize.decrementAndGet();
+    }
+
+    @Override
+    public void onTasksPending(ReceivedMessageTaskQueue queue) {
         processTasksQueue(queue);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Submits the task queue to the executor if it's not already scheduled. Thread running the queue processes the tasks in order.
+     * 
+     * @param currentStreamTasks
+     *            task queue of a stream
+     */
     private void processTasksQueue(final ReceivedMessageTaskQueue currentStreamTasks) {
         int streamId = currentStreamTasks.getStreamId();
         if (log.isTraceEnabled()) {
            log.trace("Process tasks for streamId {}", streamId);
         }
-        final ReceivedMessageTask task = currentStreamTasks.getTaskToProcess();
-        if (task != null) {
-            Packet packet = task.getPacket();
+        while (!currentStreamTasks.isEmpty() && currentStreamTasks.setScheduled()) {
             try {
-                final String messageType = getMessageType(packet);
-                ListenableFuture<Packet> future = (ListenableFuture<Packet>) executor.submitListenable(new ListenableFutureTask<Packet>(task));
-                future.addCallback(new ListenableFutureCallback<Packet>() {
-
-                    final long startTime = System.currentTimeMillis();
-
-                    int getProcessingTime() {
-                        return (int) (System.currentTimeMillis() - startTime);
-                    }
-
-                    public void onFailure(Throwable t) {
-                        log.debug("ReceivedMessageTask failure: {}", t);
-                        if (log.isWarnEnabled()) {
-                            log.warn("onFailure - session: {}, msgtype: {}, processingTime: {}, packetNum: {}", sessionId, messageType, getProcessingTime(), task.getPacketNumber());
-                        }
-                        currentStreamTasks.removeTask(task);
-                    }
-
-                    public void onSuccess(Packet packet) {
-                        log.debug("ReceivedMessageTask success");
-                        if (log.isDebugEnabled()) {
-                            log.debug("onSuccess - session: {}, msgType: {}, processingTime: {}, packetNum: {}", sessionId, messageType, getProcessingTime(), task.getPacketNumber());
-                        }
-                        currentStreamTasks.removeTask(task);
-                    }
-
-                });
+                getMessageExecutor().execute(currentStreamTasks);
+                return;
             } catch (TaskRejectedException tre) {
                 Throwable[] suppressed = tre.getSuppressed();
                 for (Throwable t : suppressed) {
                     log.warn("Suppressed exception on {}", sessionId, t);
                 }
-                log.info("Rejected message: {} on {}", packet, sessionId);
-                currentStreamTasks.removeTask(task);
+                log.info("Rejected message on stream: {} on {}", streamId, sessionId);
+                currentStreamTasks.rejectTask();
             } catch (Throwable e) {
                 log.error("Incoming message handling failed on session=[" + sessionId + "]", e);
                 if (log.isDebugEnabled()) {
                     log.debug("Execution rejected on {} - {}", getSessionId(), RTMP.states[getStateCode()]);
                     log.debug("Lock permits - decode: {} encode: {}", decoderLock.availablePermits(), encoderLock.availablePermits());
                 }
-                currentStreamTasks.removeTask(task);
-            }
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Channel {} task queue is empty", streamId);
+                currentStreamTasks.rejectTask();
             }
         }
     }
@@ -1581,6 +1617,28 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         }
     }
 
+    /**
+     * Send a shared object sync update whose serialized body is shared by all the listeners.
+     * 
+     * @param payload
+     *            sync update
+     */
+    public void sendSharedObjectMessage(SharedObjectSyncPayload payload) {
+        // message is still created for every client, only the serialized body is shared
+        SharedObjectMessage syncMessage = state.getEncoding() == Encoding.AMF3 ? new FlexSharedObjectMessage(null, payload.getName(), payload.getVersion(), payload.isPersistent()) : new SharedObjectMessage(null, payload.getName(), payload.getVersion(), payload.isPersistent());
+        syncMessage.setSyncPayload(payload);
+        try {
+            // get the channel for so updates
+            Channel channel = getChannel(3);
+            if (log.isTraceEnabled()) {
+                log.trace("Send to channel: {}", channel);
+            }
+            channel.write(syncMessage);
+        } catch (Exception e) {
+            log.warn("Exception sending shared object", e);
+        }
+    }
+
     /** {@inheritDoc} */
     public void ping() {
         long newPingTime = System.currentTimeMillis();
@@ -1691,6 +1749,37 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         this.executor = executor;
     }
 
+    /**
+     * Returns the executor that handles the incoming messages according to the executor mode
+     * 
+     * @return virtual thread executor if it's enabled and supported, executor otherwise
+     */
+    protected Executor getMessageExecutor() {
+        if (virtualThreadExecution) {
+            ExecutorService virtualThreadExecutor = VirtualThreadExecutorHolder.EXECUTOR;
+            if (virtualThreadExecutor != null) {
+                return virtualThreadExecutor;
+            }
+        }
+        return executor;
+    }
+
+    public String getExecutorMode() {
+        return virtualThreadExecution ? EXECUTOR_MODE_VIRTUAL : EXECUTOR_MODE_POOL;
+    }
+
+    /**
+     * Sets the executor mode of the incoming messages; {@value #EXECUTOR_MODE_POOL} or {@value #EXECUTOR_MODE_VIRTUAL}. Blocking work in the handlers
+     * (datastore lookups, token validation, webhooks) does not occupy a pool thread in virtual mode. Decoder and encoder locks are semaphores so they
+     * do not pin the carrier threads.
+     * 
+     * @param executorMode
+     *            executor mode
+     */
+    public void setExecutorMode(String executorMode) {
+        this.virtualThreadExecution = EXECUTOR_MODE_VIRTUAL.equals(executorMode);
+    }
+
     /**
      * Thread pool for guarding deadlocks
      *
@@ -1941,4 +2030,22 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 
     }
 
+    /**
+     * Lazily creates the shared virtual thread per task executor. It's created by reflection so that the server runs on the Java versions
+     * without virtual threads.
+     */
+    private static final class VirtualThreadExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = createExecutor();
+
+        private static ExecutorService createExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("Virtual threads are not supported in Java {}, executor is used for incoming messages", System.getProperty("java.version"));
+            }
+            return null;
+        }
+    }
+
 }
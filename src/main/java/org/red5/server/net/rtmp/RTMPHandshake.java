@@ -23,7 +23,6 @@ import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.spec.KeySpec;
@@ -34,7 +33,6 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.Mac;
 import javax.crypto.interfaces.DHPublicKey;
-import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -152,6 +150,36 @@ public abstract class RTMPHandshake implements IHandshake {
 
     protected static final Random random = new Random();
 
+    /**
+     * Number of pre-generated DH key pairs for RTMPE handshakes
+     */
+    protected static final int DH_KEY_PAIR_POOL_SIZE = Integer.getInteger("rtmpe.dh.pool.size", 32);
+
+    /**
+     * HMAC instances are reused by the handshake threads, they're initialized with the key on each digest
+     */
+    private static final ThreadLocal<Mac> HMAC_SHA256 = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
+            } catch (Exception e) {
+                throw new IllegalStateException("HMAC SHA256 could not be created", e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<KeyFactory> DH_KEY_FACTORY = new ThreadLocal<KeyFactory>() {
+        @Override
+        protected KeyFactory initialValue() {
+            try {
+                return KeyFactory.getInstance("DH");
+            } catch (Exception e) {
+                throw new IllegalStateException("DH key factory could not be created", e);
+            }
+        }
+    };
+
     protected KeyAgreement keyAgreement;
 
     protected Cipher cipherOut;
@@ -188,6 +216,13 @@ public abstract class RTMPHandshake implements IHandshake {
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    /**
+     * Key pairs are generated on the first RTMPE handshake
+     */
+    private static final class KeyPairPoolHolder {
+        private static final DHKeyPairPool POOL = new DHKeyPairPool(DH_MODULUS, DH_BASE, DH_KEY_PAIR_POOL_SIZE);
+    }
+
     public RTMPHandshake() {
         this((byte) 0);
     }
@@ -245,11 +280,8 @@ public abstract class RTMPHandshake implements IHandshake {
      */
     protected KeyPair generateKeyPair() {
         KeyPair keyPair = null;
-        DHParameterSpec keySpec = new DHParameterSpec(DH_MODULUS, DH_BASE);
         try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
-            keyGen.initialize(keySpec);
-            keyPair = keyGen.generateKeyPair();
+            keyPair = KeyPairPoolHolder.POOL.take();
             keyAgreement = KeyAgreement.getInstance("DH");
             // key agreement is initialized with "this" ends private key
             keyAgreement.init(keyPair.getPrivate());
@@ -284,7 +316,7 @@ public abstract class RTMPHandshake implements IHandshake {
     protected byte[] getSharedSecret(byte[] publicKeyBytes, KeyAgreement agreement) {
         BigInteger otherPublicKeyInt = new BigInteger(1, publicKeyBytes);
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("DH");
+            KeyFactory keyFactory = DH_KEY_FACTORY.get();
             KeySpec otherPublicKeySpec = new DHPublicKeySpec(otherPublicKeyInt, RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE);
             PublicKey otherPublicKey = keyFactory.generatePublic(otherPublicKeySpec);
             agreement.doPhase(otherPublicKey, true);
@@ -375,10 +407,10 @@ public abstract class RTMPHandshake implements IHandshake {
         }
         byte[] calcDigest;
         try {
-            Mac hmac = Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
-            hmac.init(new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
-            byte[] actualMessage = Arrays.copyOfRange(message, messageOffset, messageOffset + messageLen);
-            calcDigest = hmac.doFinal(actualMessage);
+            Mac hmac = HMAC_SHA256.get();
+            hmac.init(new SecretKeySpec(key, 0, keyLen, "HmacSHA256"));
+            hmac.update(message, messageOffset, messageLen);
+            calcDigest = hmac.doFinal();
             //if (log.isTraceEnabled()) {
             //    log.trace("Calculated digest: {}", Hex.encodeHexString(calcDigest));
             //}
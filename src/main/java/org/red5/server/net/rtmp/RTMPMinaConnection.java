@@ -24,9 +24,15 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -35,16 +41,24 @@ import javax.management.StandardMBean;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.future.CloseFuture;
 import org.apache.mina.core.future.IoFutureListener;
+import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.session.IoSession;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.jmx.mxbeans.RTMPMinaConnectionMXBean;
 import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.ClientBW;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.ServerBW;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.event.VideoData.FrameType;
+import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
@@ -59,6 +73,21 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 
     protected static Logger log = LoggerFactory.getLogger(RTMPMinaConnection.class);
 
+    /**
+     * Maximum body size of the packets in a write batch, batch is written when it's reached
+     */
+    private static final int MAX_WRITE_BATCH_SIZE = 65536;
+
+    /**
+     * Time window in milliseconds that live audio / video packets are collected before they are written together, 0 disables batching
+     */
+    private static volatile int writeBatchWindow;
+
+    /**
+     * Flushes the write batches whose window is elapsed
+     */
+    private static ScheduledExecutorService batchFlushExecutor;
+
     /**
      * Closing flag
      */
@@ -74,6 +103,36 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
      */
     private ObjectName oName;
 
+    /**
+     * Number of bytes copied to the accumulation buffer by the decoder
+     */
+    private final AtomicLong decoderCopiedBytes = new AtomicLong(0);
+
+    /**
+     * Guards the write batch
+     */
+    private final transient Object batchLock = new Object();
+
+    /**
+     * Serializes the writes of the batches
+     */
+    private final transient ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Live audio / video packets waiting to be written
+     */
+    private transient List<Packet> writeBatch;
+
+    /**
+     * Total body size of the packets in the write batch
+     */
+    private transient int writeBatchSize;
+
+    /**
+     * Flush task of the write batch
+     */
+    private transient ScheduledFuture<?> batchFlushFuture;
+
     protected int defaultServerBandwidth = 10000000;
 
     protected int defaultClientBandwidth = 10000000;
@@ -117,6 +176,17 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     @Override
     public void close() {
         if (closing.compareAndSet(false, true)) {
+            final List<Packet> packets;
+            synchronized (batchLock) {
+                packets = writeBatch;
+                writeBatch = null;
+                writeBatchSize = 0;
+                if (batchFlushFuture != null) {
+                    batchFlushFuture.cancel(false);
+                    batchFlushFuture = null;
+                }
+            }
+            releasePackets(packets);
             super.close();
             log.debug("IO Session closing: {}", (ioSession != null ? ioSession.isClosing() : null));
             if (ioSession != null && !ioSession.isClosing()) {
@@ -272,6 +342,22 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         return 0;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getDecoderCopiedBytes() {
+        return decoderCopiedBytes.get();
+    }
+
+    /**
+     * Adds to the number of bytes copied by the decoder for this connection
+     * 
+     * @param bytes
+     *            number of copied bytes
+     */
+    public void addDecoderCopiedBytes(long bytes) {
+        decoderCopiedBytes.addAndGet(bytes);
+    }
+
     public void invokeMethod(String method) {
         invoke(method);
     }
@@ -332,44 +418,187 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     @Override
     public void write(Packet out) {
         if (ioSession != null) {
-            final Semaphore lock = getLock();
-            if (log.isTraceEnabled()) {
-                log.trace("Write lock wait count: {} closed: {}", lock.getQueueLength(), isClosed());
+            if (writeBatchWindow > 0) {
+                if (isBatchable(out)) {
+                    addToBatch(out);
+                    return;
+                }
+                // keep the order of the packets
+                flushBatch();
             }
-            while (!isClosed()) {
-                boolean acquired = false;
-                try {
-                    acquired = lock.tryAcquire(10, TimeUnit.MILLISECONDS);
-                    if (acquired) {
-                        if (log.isTraceEnabled()) {
-                            log.trace("Writing message");
-                        }
-                        writingMessage(out);
-                        ioSession.write(out);
-                        break;
-                    }
-                } catch (InterruptedException e) {
-                    log.warn("Interrupted while waiting for write lock. State: {}", RTMP.states[state.getState()], e);
-                    if (log.isInfoEnabled()) {
-                        // further debugging to assist with possible connection problems
-                        log.info("Session id: {} in queue size: {} pending msgs: {} last ping/pong: {}", getSessionId(), currentQueueSize(), getPendingMessages(), getLastPingSentAndLastPongReceivedInterval());
-                        log.info("Available permits - decoder: {} encoder: {}", decoderLock.availablePermits(), encoderLock.availablePermits());
-                    }
-                    String exMsg = e.getMessage();
-                    // if the exception cause is null break out of here to prevent looping until closed
-                    if (exMsg == null || exMsg.indexOf("null") >= 0) {
-                        log.debug("Exception writing to connection: {}", this);
-                        break;
-                    }
-                } finally {
-                    if (acquired) {
-                        lock.release();
+            writingMessage(out);
+            writeToSession(out);
+        }
+    }
+
+    /**
+     * Writes the message to the session while holding the write lock.
+     * 
+     * @param message
+     *            packet or packet batch
+     * @return write future or null if the message is not written
+     */
+    private WriteFuture writeToSession(Object message) {
+        final Semaphore lock = getLock();
+        if (log.isTraceEnabled()) {
+            log.trace("Write lock wait count: {} closed: {}", lock.getQueueLength(), isClosed());
+        }
+        while (!isClosed()) {
+            boolean acquired = false;
+            try {
+                acquired = lock.tryAcquire(10, TimeUnit.MILLISECONDS);
+                if (acquired) {
+                    if (log.isTraceEnabled()) {
+                        log.trace("Writing message");
                     }
+                    return ioSession.write(message);
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for write lock. State: {}", RTMP.states[state.getState()], e);
+                if (log.isInfoEnabled()) {
+                    // further debugging to assist with possible connection problems
+                    log.info("Session id: {} in queue size: {} pending msgs: {} last ping/pong: {}", getSessionId(), currentQueueSize(), getPendingMessages(), getLastPingSentAndLastPongReceivedInterval());
+                    log.info("Available permits - decoder: {} encoder: {}", decoderLock.availablePermits(), encoderLock.availablePermits());
+                }
+                String exMsg = e.getMessage();
+                // if the exception cause is null break out of here to prevent looping until closed
+                if (exMsg == null || exMsg.indexOf("null") >= 0) {
+                    log.debug("Exception writing to connection: {}", this);
+                    break;
                 }
+            } finally {
+                if (acquired) {
+                    lock.release();
+                }
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isWriteBatchEnabled() {
+        return writeBatchWindow > 0;
+    }
+
+    /**
+     * Only live audio / video packets are batched, other messages are written immediately.
+     * 
+     * @param packet
+     *            packet to be written
+     * @return true if the packet can be added to the write batch
+     */
+    private boolean isBatchable(Packet packet) {
+        IRTMPEvent message = packet.getMessage();
+        return (message instanceof AudioData || message instanceof VideoData) && message.getSourceType() == Constants.SOURCE_TYPE_LIVE;
+    }
+
+    /**
+     * Adds the packet to the write batch. Batch is written when its window elapses, its size limit is reached or a key frame is added so
+     * that key frames are not delayed.
+     * 
+     * @param packet
+     *            live audio / video packet
+     */
+    private void addToBatch(Packet packet) {
+        // data of the event is a view of the publisher's buffer, publisher's event is retained by the event until it's encoded
+        IRTMPEvent message = packet.getMessage();
+        IoBuffer data = message instanceof AudioData ? ((AudioData) message).getData() : ((VideoData) message).getData();
+        boolean flush = message instanceof VideoData && ((VideoData) message).getFrameType() == FrameType.KEYFRAME;
+        writingMessage(packet);
+        synchronized (batchLock) {
+            if (writeBatch == null) {
+                writeBatch = new ArrayList<>();
+                batchFlushFuture = getBatchFlushExecutor().schedule(this::flushBatch, writeBatchWindow, TimeUnit.MILLISECONDS);
             }
+            writeBatch.add(packet);
+            writeBatchSize += data != null ? data.limit() : 0;
+            flush |= writeBatchSize >= MAX_WRITE_BATCH_SIZE;
+        }
+        if (flush) {
+            flushBatch();
         }
     }
 
+    /**
+     * Writes the packets in the write batch with a single write.
+     */
+    private void flushBatch() {
+        // flushes are serialized so that batches are not reordered, batch lock is only held while the batch is swapped out so that adding
+        // packets does not wait for the write
+        flushLock.lock();
+        try {
+            final List<Packet> packets;
+            final PacketBatch batch;
+            synchronized (batchLock) {
+                packets = writeBatch;
+                if (packets == null) {
+                    return;
+                }
+                batch = new PacketBatch(packets, writeBatchSize);
+                writeBatch = null;
+                writeBatchSize = 0;
+                if (batchFlushFuture != null) {
+                    batchFlushFuture.cancel(false);
+                    batchFlushFuture = null;
+                }
+            }
+            if (ioSession != null) {
+                WriteFuture future = writeToSession(batch);
+                if (future != null) {
+                    // handler is only notified about the batch, so mark its packets as sent here
+                    future.addListener(f -> {
+                        for (Packet packet : packets) {
+                            messageSent(packet);
+                        }
+                    });
+                    return;
+                }
+            }
+            // batch is not passed to the encoder, which releases the events
+            releasePackets(packets);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Releases the events of the packets that are dropped before they're encoded
+     * 
+     * @param packets
+     *            dropped packets
+     */
+    private static void releasePackets(List<Packet> packets) {
+        if (packets != null) {
+            for (Packet packet : packets) {
+                packet.getMessage().release();
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getBatchFlushExecutor() {
+        if (batchFlushExecutor == null) {
+            batchFlushExecutor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), new CustomizableThreadFactory("RTMPWriteBatch-"));
+        }
+        return batchFlushExecutor;
+    }
+
+    public static int getWriteBatchWindow() {
+        return writeBatchWindow;
+    }
+
+    /**
+     * Sets the time window in milliseconds that live audio / video packets of a subscriber are collected before they are written
+     * together. Batching reduces the locking and the writes per packet for large audiences, 20 - 50 ms is a reasonable window. 0 disables
+     * batching
+     * 
+     * @param writeBatchWindow
+     *            batch window in milliseconds
+     */
+    public static void setWriteBatchWindow(int writeBatchWindow) {
+        RTMPMinaConnection.writeBatchWindow = Math.max(0, writeBatchWindow);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void writeRaw(IoBuffer out) {
@@ -18,17 +18,13 @@
 
 package org.red5.server.net.rtmp;
 
-import java.util.Date;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.message.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.task.TaskRejectedException;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * Wraps processing of incoming messages.
@@ -51,9 +47,9 @@ public final class ReceivedMessageTask implements Callable<Packet> {
 
     private final AtomicBoolean processing = new AtomicBoolean(false);
 
-    private Thread taskThread;
+    private final AtomicBoolean done = new AtomicBoolean(false);
 
-    private ScheduledFuture<Runnable> deadlockFuture;
+    private volatile Thread taskThread;
 
     public ReceivedMessageTask(String sessionId, Packet packet, IRTMPHandler handler, RTMPConnection conn) {
         this.sessionId = sessionId;
@@ -83,46 +79,22 @@ public final class ReceivedMessageTask implements Callable<Packet> {
     }
 
     /**
-     * Runs deadlock guard task
+     * Marks task as processing if it is not processing yet.
      *
-     * @param deadlockGuardTask
-     *            deadlock guard task
-     */
-    @SuppressWarnings("unchecked")
-    public void runDeadlockFuture(Runnable deadlockGuardTask) {
-        if (deadlockFuture == null) {
-            ThreadPoolTaskScheduler deadlockGuard = conn.getDeadlockGuardScheduler();
-            if (deadlockGuard != null) {
-                try {
-                    deadlockFuture = (ScheduledFuture<Runnable>) deadlockGuard.schedule(deadlockGuardTask, new Date(packet.getExpirationTime()));
-                } catch (TaskRejectedException e) {
-                    log.warn("DeadlockGuard task is rejected for {}", sessionId, e);
-                }
-            } else {
-                log.debug("Deadlock guard is null for {}", sessionId);
-            }
-        } else {
-            log.warn("Deadlock future is already create for {}", sessionId);
-        }
-    }
-
-    /**
-     * Cancels deadlock future if it was created
+     * @return true if successful, or false otherwise
      */
-    public void cancelDeadlockFuture() {
-        // kill the future for the deadlock since processing is complete
-        if (deadlockFuture != null) {
-            deadlockFuture.cancel(true);
-        }
+    public boolean setProcessing() {
+        return processing.compareAndSet(false, true);
     }
 
     /**
-     * Marks task as processing if it is not processing yet.
+     * Marks task as done if it is not done yet. Either the thread processing the task or the deadlock guard abandoning it
+     * marks the task as done.
      *
      * @return true if successful, or false otherwise
      */
-    public boolean setProcessing() {
-        return processing.compareAndSet(false, true);
+    public boolean setDone() {
+        return done.compareAndSet(false, true);
     }
 
     public long getPacketNumber() {
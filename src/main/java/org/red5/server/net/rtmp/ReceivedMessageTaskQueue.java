@@ -20,6 +20,7 @@ package org.red5.server.net.rtmp;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.red5.server.net.rtmp.message.Packet;
 import org.slf4j.Logger;
@@ -27,10 +28,16 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Contains queue of tasks for processing messages in the specified channel. Ensures that all messages which has got in channel will be processed sequentially.
+ * 
+ * Queue is a serial executor; it's submitted to the executor once when it has pending tasks and the thread running it processes the tasks
+ * in order until the queue is empty. If deadlock guard abandons a hanging task, the queue is handed over to another thread.
+ * 
+ * Expired tasks are found by the deadlock guard sweeper which checks the queues of the connections periodically, so guarding a task
+ * does not schedule anything.
  *
  * @author Maria Chabanets (m.e.platova@gmail.com)
  */
-public class ReceivedMessageTaskQueue {
+public class ReceivedMessageTaskQueue implements Runnable {
 
     private final static Logger log = LoggerFactory.getLogger(ReceivedMessageTaskQueue.class);
 
@@ -49,6 +56,11 @@ public class ReceivedMessageTaskQueue {
      */
     private final IReceivedMessageTaskQueueListener listener;
 
+    /**
+     * Whether a thread is scheduled or running to process the tasks.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
     public ReceivedMessageTaskQueue(int streamId, IReceivedMessageTaskQueueListener listener) {
         this.streamId = streamId;
         this.listener = listener;
@@ -62,12 +74,6 @@ public class ReceivedMessageTaskQueue {
      */
     public void addTask(ReceivedMessageTask task) {
         tasks.add(task);
-        Packet packet = task.getPacket();
-        // don't run the deadlock guard if timeout is <= 0
-        if (packet.getExpirationTime() > 0L) {
-            // run a deadlock guard so hanging tasks will be interrupted
-            task.runDeadlockFuture(new DeadlockGuard(task));
-        }
         if (listener != null) {
             listener.onTaskAdded(this);
         }
@@ -81,7 +87,6 @@ public class ReceivedMessageTaskQueue {
      */
     public void removeTask(ReceivedMessageTask task) {
         if (tasks.remove(task)) {
-            task.cancelDeadlockFuture();
             if (listener != null) {
                 listener.onTaskRemoved(this);
             }
@@ -89,26 +94,82 @@ public class ReceivedMessageTaskQueue {
     }
 
     /**
-     * Gets first task from queue if it can be processed. If first task is already in process it returns null.
+     * Marks queue as scheduled if it is not scheduled yet. Queue should be submitted to the executor if it's successful.
      *
-     * @return task that can be processed or null otherwise
+     * @return true if successful, or false otherwise
+     */
+    public boolean setScheduled() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Called when the queue could not be submitted to the executor. First task is dropped and scheduled flag is released.
      */
-    public ReceivedMessageTask getTaskToProcess() {
+    public void rejectTask() {
         ReceivedMessageTask task = tasks.peek();
+        scheduled.set(false);
         if (task != null && task.setProcessing()) {
-            return task;
+            task.setDone();
+            removeTask(task);
+        }
+    }
+
+    /**
+     * Processes the tasks in order until the queue is empty.
+     */
+    public void run() {
+        ReceivedMessageTask task;
+        while ((task = tasks.peek()) != null) {
+            // task is skipped if deadlock guard has removed it before it started
+            if (task.setProcessing()) {
+                final long startTime = System.currentTimeMillis();
+                try {
+                    task.call();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Task success: {} processingTime: {}", task, System.currentTimeMillis() - startTime);
+                    }
+                } catch (Throwable t) {
+                    log.warn("Task failure: {} processingTime: {}", task, System.currentTimeMillis() - startTime, t);
+                }
+                if (!task.setDone()) {
+                    // deadlock guard abandoned the task and handed over the queue to another thread
+                    log.debug("Task was abandoned by deadlock guard {}", task);
+                    return;
+                }
+            }
+            removeTask(task);
+        }
+        scheduled.set(false);
+        // a task may be added after the queue is seen empty
+        if (!tasks.isEmpty() && listener != null) {
+            listener.onTasksPending(this);
         }
-        return null;
+    }
+
+    public boolean isEmpty() {
+        return tasks.isEmpty();
     }
 
     /**
      * Removes all tasks from the queue.
      */
     public void removeAllTasks() {
+        tasks.clear();
+    }
+
+    /**
+     * Runs the deadlock guard for the tasks whose packets are expired. Tasks are in the order of their expiration, so checking stops at
+     * the first task that is not expired.
+     */
+    public void guardExpiredTasks() {
         for (ReceivedMessageTask task : tasks) {
-            task.cancelDeadlockFuture();
+            Packet packet = task.getPacket();
+            // don't run the deadlock guard if timeout is <= 0
+            if (packet.getExpirationTime() <= 0L || !packet.isExpired()) {
+                break;
+            }
+            guard(task);
         }
-        tasks.clear();
     }
 
     public int getStreamId() {
@@ -116,54 +177,62 @@ public class ReceivedMessageTaskQueue {
     }
 
     /**
-     * Prevents deadlocked message handling.
+     * Prevents deadlocked message handling. Expired task is removed from the queue and if it's being processed, the thread processing it is
+     * interrupted and the queue is handed over to another thread.
+     *
+     * @param task
+     *            expired task
      */
-    private class DeadlockGuard implements Runnable {
-
-        private final ReceivedMessageTask task;
-
-        /**
-         * Creates the deadlock guard to prevent a message task from taking too long to setProcessing.
-         *
-         * @param task
-         */
-        private DeadlockGuard(ReceivedMessageTask task) {
-            this.task = task;
-            if (log.isTraceEnabled()) {
-                log.trace("DeadlockGuard is created for {}", task);
-            }
+    private void guard(ReceivedMessageTask task) {
+        Packet packet = task.getPacket();
+        if (log.isTraceEnabled()) {
+            log.trace("DeadlockGuard is started for {}", task);
         }
-
-        /**
-         * Save the reference to the task, and wait until the maxHandlingTimeout has elapsed. If it elapsed, remove task and stop its thread.
-         * */
-        public void run() {
-            Packet packet = task.getPacket();
-            if (log.isTraceEnabled()) {
-                log.trace("DeadlockGuard is started for {}", task);
-            }
-            // skip processed packet
-            if (packet.isProcessed()) {
-                log.debug("DeadlockGuard skipping task for processed packet {}", task);
-            } else if (packet.isExpired()) {
-                // try to interrupt thread
-                log.debug("DeadlockGuard skipping task for expired packet {}", task);
+        boolean abandoned = false;
+        // skip processed packet
+        if (packet.isProcessed()) {
+            log.debug("DeadlockGuard skipping task for processed packet {}", task);
+        } else {
+            // if the message task is not yet done interrupt it
+            // if the task thread hasn't been interrupted check its live-ness
+            // if the task thread is alive, interrupt it
+            abandoned = abandon(task);
+            Thread taskThread = task.getTaskThread();
+            if (!abandoned) {
+                log.debug("Task {} is not started or finished", task);
+            } else if (taskThread == null) {
+                log.debug("Task has not start yet {}", task);
+            } else if (!taskThread.isInterrupted() && taskThread.isAlive()) {
+                log.warn("Interrupting unfinished active task {}", task);
+                taskThread.interrupt();
             } else {
-                // if the message task is not yet done or is not expired interrupt
-                // if the task thread hasn't been interrupted check its live-ness
-                // if the task thread is alive, interrupt it
-                Thread taskThread = task.getTaskThread();
-                if (taskThread == null) {
-                    log.debug("Task has not start yet {}", task);
-                } else if (!taskThread.isInterrupted() && taskThread.isAlive()) {
-                    log.warn("Interrupting unfinished active task {}", task);
-                    taskThread.interrupt();
-                } else {
-                    log.debug("Unfinished task {} already interrupted", task);
-                }
+                log.debug("Unfinished task {} already interrupted", task);
             }
-            // remove this task from the queue in any case
-            removeTask(task);
         }
+        // remove this task from the queue in any case
+        removeTask(task);
+        if (abandoned) {
+            // hand over the queue to another thread, hanging thread stops processing when the task returns
+            scheduled.set(false);
+            if (!tasks.isEmpty() && listener != null) {
+                listener.onTasksPending(this);
+            }
+        }
+    }
+
+    /**
+     * Marks the task as done so that the thread processing it does not continue with the queue.
+     *
+     * @param task
+     *            expired task
+     * @return true if the task was being processed and it's abandoned, false if it's not started or it's finished
+     */
+    private boolean abandon(ReceivedMessageTask task) {
+        if (task.setProcessing()) {
+            // not started yet, it won't be started
+            task.setDone();
+            return false;
+        }
+        return task.setDone();
     }
 }
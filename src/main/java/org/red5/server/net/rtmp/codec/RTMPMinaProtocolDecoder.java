@@ -30,6 +30,7 @@ import org.apache.mina.filter.codec.ProtocolDecoderOutput;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +41,11 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
 
     protected static Logger log = LoggerFactory.getLogger(RTMPMinaProtocolDecoder.class);
 
+    /**
+     * Session attribute key of the buffer that accumulates the incomplete data between reads
+     */
+    private static final String BUFFER_KEY = "buffer";
+
     private RTMPProtocolDecoder decoder = new RTMPProtocolDecoder();
 
     /** {@inheritDoc} */
@@ -60,34 +66,36 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
         if (conn != null) {
             // set the connection to local if its referred to by this session
             Red5.setConnectionLocal(conn);
-            // copy data range from incoming
             if (log.isTraceEnabled()) {
                 log.trace("Incoming: in.position {}, in.limit {}, in.remaining {}", new Object[] { in.position(), in.limit(), in.remaining() });
             }
-            byte[] arr = new byte[in.remaining()];
-            in.get(arr);
-            // create a buffer and store it on the session
-            IoBuffer buf = (IoBuffer) session.getAttribute("buffer");
-            if (buf == null) {
-                buf = IoBuffer.allocate(arr.length);
-                buf.setAutoExpand(true);
-                session.setAttribute("buffer", buf);
-            }
-            // copy incoming into buffer
-            buf.put(arr);
-            // flip so we can read
-            buf.flip();
-            if (log.isTraceEnabled()) {
-                //log.trace("Buffer before: {}", Hex.encodeHexString(arr));
-                log.trace("Buffers info before: buf.position {}, buf.limit {}, buf.remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
-            }
             // get the connections decoder lock
             final Semaphore lock = conn.getDecoderLock();
             try {
                 // acquire the decoder lock
                 lock.acquire();
-                // construct any objects from the decoded bugger
-                List<?> objects = decoder.decodeBuffer(conn, buf);
+                // buffer that keeps the incomplete data of the previous reads
+                IoBuffer buf = (IoBuffer) session.getAttribute(BUFFER_KEY);
+                List<?> objects;
+                if (buf == null || buf.position() == 0) {
+                    // nothing is pending, decode the incoming buffer in place
+                    objects = decoder.decodeBuffer(conn, in, false);
+                    if (in.hasRemaining()) {
+                        // keep the incomplete chunk for the next read
+                        buf = append(session, conn, buf, in);
+                    }
+                } else {
+                    // append incoming to the pending data and decode
+                    buf = append(session, conn, buf, in);
+                    buf.flip();
+                    if (log.isTraceEnabled()) {
+                        log.trace("Buffers info before: buf.position {}, buf.limit {}, buf.remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
+                    }
+                    objects = decoder.decodeBuffer(conn, buf);
+                    if (log.isTraceEnabled()) {
+                        log.trace("Buffers info after: buf.position {}, buf.limit {}, buf.remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
+                    }
+                }
                 log.trace("Decoded: {}", objects);
                 if (objects != null) {
                     int writeCount = 0;
@@ -99,15 +107,13 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
                 }
             } catch (Exception e) {
                 log.error("Error during decode", e);
+                // skip the incoming data, it's not decoded or buffered
+                in.position(in.limit());
             } finally {
                 lock.release();
                 // clear local
                 Red5.setConnectionLocal(null);
             }
-            if (log.isTraceEnabled()) {
-                //log.trace("Buffer after: {}", Hex.encodeHexString(Arrays.copyOfRange(buf.array(), buf.position(), buf.limit())));
-                log.trace("Buffers info after: buf.position {}, buf.limit {}, buf.remaining {}", new Object[] { buf.position(), buf.limit(), buf.remaining() });
-            }
         } else {
             log.debug("Closing and skipping decode for unregistered connection: {}", sessionId);
             session.closeNow();
@@ -115,6 +121,34 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
         }
     }
 
+    /**
+     * Appends the remaining data of the incoming buffer to the accumulation buffer of the session. Accumulation buffer
+     * is compacted after each decode so that it's reused by the session instead of being allocated for each read.
+     * 
+     * @param session
+     *            I/O session
+     * @param conn
+     *            RTMP connection
+     * @param buf
+     *            accumulation buffer or null if it's not created yet
+     * @param in
+     *            incoming data
+     * @return accumulation buffer
+     */
+    private IoBuffer append(IoSession session, RTMPConnection conn, IoBuffer buf, IoBuffer in) {
+        int length = in.remaining();
+        if (buf == null) {
+            buf = IoBuffer.allocate(Math.max(length, conn.getState().getReadChunkSize() * 2));
+            buf.setAutoExpand(true);
+            session.setAttribute(BUFFER_KEY, buf);
+        }
+        buf.put(in);
+        if (conn instanceof RTMPMinaConnection) {
+            ((RTMPMinaConnection) conn).addDecoderCopiedBytes(length);
+        }
+        return buf;
+    }
+
     /**
      * Sets the RTMP protocol decoder.
      * 
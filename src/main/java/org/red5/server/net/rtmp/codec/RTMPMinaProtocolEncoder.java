@@ -30,6 +30,9 @@ import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,20 +72,36 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
                 //log.trace("Encoder lock acquiring.. {}", conn.getSessionId());
                 lock.acquire();
                 log.trace("Encoder lock acquired {}", conn.getSessionId());
-                // get the buffer
-                final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
-                if (buf != null) {
-                    int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
-                    log.trace("Requested chunk size: {} target chunk size: {}", requestedWriteChunkSize, targetChunkSize);
-                    if (buf.remaining() <= targetChunkSize * 2) {
-                        log.trace("Writing output data");
+                if (message instanceof PacketBatch) {
+                    // packets of the batch are gathered in a single buffer and written at once
+                    final IoBuffer buf = encodeBatch((PacketBatch) message);
+                    if (buf != null) {
                         out.write(buf);
-                    } else {
-                        int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
-                        log.trace("Wrote {} chunks", sentChunks);
+                    }
+                } else if (encoder.isSharedPacket(message)) {
+                    // header is encoded for this connection, body is shared by the subscribers
+                    final IoBuffer[] bufs = encoder.encodeSharedPacket((Packet) message);
+                    if (bufs != null) {
+                        for (IoBuffer buf : bufs) {
+                            out.write(buf);
+                        }
                     }
                 } else {
-                    log.trace("Response buffer was null after encoding");
+                    // get the buffer
+                    final IoBuffer buf = message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
+                    if (buf != null) {
+                        int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
+                        log.trace("Requested chunk size: {} target chunk size: {}", requestedWriteChunkSize, targetChunkSize);
+                        if (buf.remaining() <= targetChunkSize * 2) {
+                            log.trace("Writing output data");
+                            out.write(buf);
+                        } else {
+                            int sentChunks = Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
+                            log.trace("Wrote {} chunks", sentChunks);
+                        }
+                    } else {
+                        log.trace("Response buffer was null after encoding");
+                    }
                 }
             } catch (InterruptedException ex) {
                 log.error("InterruptedException during encode", ex);
@@ -105,6 +124,41 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         }
     }
 
+    /**
+     * Encodes the packets of the batch into a single buffer.
+     * 
+     * @param batch
+     *            packet batch
+     * @return encoded packets or null if nothing is encoded
+     * @throws Exception
+     *             on encoding errors
+     */
+    private IoBuffer encodeBatch(PacketBatch batch) throws Exception {
+        // chunk headers are added to the body size so leave some room for them
+        IoBuffer result = IoBuffer.allocate(batch.getDataSize() + batch.getPackets().size() * 32 + 256).setAutoExpand(true);
+        for (Packet packet : batch.getPackets()) {
+            if (encoder.isSharedPacket(packet)) {
+                final IoBuffer[] bufs = encoder.encodeSharedPacket(packet);
+                if (bufs != null) {
+                    for (IoBuffer buf : bufs) {
+                        result.put(buf.duplicate());
+                    }
+                }
+            } else {
+                final IoBuffer buf = encoder.encode(packet);
+                if (buf != null) {
+                    result.put(buf);
+                }
+            }
+        }
+        result.flip();
+        if (result.hasRemaining()) {
+            return result;
+        }
+        result.free();
+        return null;
+    }
+
     /**
      * Sets an RTMP protocol encoder
      * 
@@ -144,6 +198,28 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
         encoder.setDropLiveFuture(dropLiveFuture);
     }
 
+    /**
+     * Setter for sharedChunkEncoding. If it's true, chunked body of a live audio / video message is encoded
+     * once and shared by all subscribers. Default is false
+     * 
+     * @param sharedChunkEncoding
+     *            shared chunk encoding
+     */
+    public void setSharedChunkEncoding(boolean sharedChunkEncoding) {
+        SharedChunkCache.setEnabled(sharedChunkEncoding);
+    }
+
+    /**
+     * Setter for writeBatchWindow. If it's greater than zero, live audio / video packets of a subscriber are collected for this many
+     * milliseconds and written together. Default is 0, which writes every packet separately
+     * 
+     * @param writeBatchWindow
+     *            batch window in milliseconds
+     */
+    public void setWriteBatchWindow(int writeBatchWindow) {
+        RTMPMinaConnection.setWriteBatchWindow(writeBatchWindow);
+    }
+
     /**
      * @return the targetChunkSize
      */
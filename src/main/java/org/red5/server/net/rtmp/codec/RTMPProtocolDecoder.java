@@ -100,6 +100,21 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
      * @return a list of decoded objects, may be empty if nothing could be decoded
      */
     public List<Object> decodeBuffer(RTMPConnection conn, IoBuffer buffer) {
+        return decodeBuffer(conn, buffer, true);
+    }
+
+    /**
+     * Decode all available objects in buffer.
+     * 
+     * @param conn
+     *            RTMP connection
+     * @param buffer
+     *            IoBuffer of data to be decoded
+     * @param compact
+     *            true to compact the buffer after decoding. If it's false, data that can not be decoded yet is left between the position and the limit of the buffer
+     * @return a list of decoded objects, may be empty if nothing could be decoded
+     */
+    public List<Object> decodeBuffer(RTMPConnection conn, IoBuffer buffer, boolean compact) {
         final int position = buffer.position();
         if (log.isTraceEnabled()) {
             log.trace("decodeBuffer: {}", Hex.encodeHexString(Arrays.copyOfRange(buffer.array(), position, buffer.limit())));
@@ -150,14 +165,20 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
                 // catch any non-handshake exception in the decoding; close the connection
                 log.warn("Closing connection because decoding failed: {}", conn, ex);
                 // clear the buffer to eliminate memory leaks when we can't parse protocol
-                buffer.clear();
+                if (compact) {
+                    buffer.clear();
+                } else {
+                    buffer.position(buffer.limit());
+                }
                 // close connection because we can't parse data from it
                 conn.close();
             } finally {
                 if (log.isTraceEnabled()) {
                     log.trace("decodeBuffer - post decode input buffer position: {} remaining: {}", buffer.position(), buffer.remaining());
                 }
-                buffer.compact();
+                if (compact) {
+                    buffer.compact();
+                }
             }
         } else {
             log.error("Decoding buffer failed, no current connection!?");
@@ -296,15 +317,14 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
             in.position(position);
             return null;
         }
-        // get the chunk from our input
-        byte[] chunk = Arrays.copyOfRange(in.array(), in.position(), in.position() + length);
         if (log.isTraceEnabled()) {
-            log.trace("Read chunkSize: {}, length: {}, chunk: {}", readChunkSize, length, Hex.encodeHexString(chunk));
+            log.trace("Read chunkSize: {}, length: {}, chunk: {}", readChunkSize, length, Hex.encodeHexString(Arrays.copyOfRange(in.array(), in.position(), in.position() + length)));
         }
-        // move the position
-        in.skip(length);
-        // put the chunk into the packet
-        buf.put(chunk);
+        // put the chunk into the packet directly from our input
+        final int limit = in.limit();
+        in.limit(in.position() + length);
+        buf.put(in);
+        in.limit(limit);
         if (buf.hasRemaining()) {
             log.trace("Packet is incomplete ({},{})", buf.remaining(), buf.limit());
             return null;
@@ -1132,4 +1152,6 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
         }
     }
 
+    }
+
 }
@@ -38,6 +38,7 @@ import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.codec.RTMP.LiveTimestampMapping;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.ClientBW;
@@ -63,6 +64,8 @@ import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.so.SharedObjectSyncPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -196,6 +199,67 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         return out;
     }
 
+    /**
+     * Checks whether the packet is a live audio / video packet whose chunked body is shared by the subscribers
+     * 
+     * @param message
+     *            message to be encoded
+     * @return true if {@link #encodeSharedPacket(Packet)} should be used
+     */
+    public boolean isSharedPacket(Object message) {
+        if (message instanceof Packet) {
+            IRTMPEvent event = ((Packet) message).getMessage();
+            return (event instanceof AudioData || event instanceof VideoData) && ((BaseEvent) event).getChunkCache() != null;
+        }
+        return false;
+    }
+
+    /**
+     * Encode live audio / video packet. Only the header of the first chunk is encoded for the connection and
+     * chunked body is taken from the {@link SharedChunkCache} of the message so that it's encoded once for all subscribers.
+     *
+     * @param packet
+     *            RTMP packet
+     * @return header and chunked body buffers to be written in order or null if message is dropped
+     */
+    public IoBuffer[] encodeSharedPacket(Packet packet) {
+        IoBuffer[] out = null;
+        final Header header = packet.getHeader();
+        final int channelId = header.getChannelId();
+        log.trace("Channel id: {}", channelId);
+        final IRTMPEvent message = packet.getMessage();
+        if (!dropMessage(channelId, message)) {
+            IoBuffer data = encodeMessage(header, message);
+            if (data != null) {
+                RTMP rtmp = ((RTMPConnection) Red5.getConnectionLocal()).getState();
+                if (data.position() != 0) {
+                    data.flip();
+                } else {
+                    data.rewind();
+                }
+                header.setSize(data.limit());
+                // get last header
+                Header lastHeader = rtmp.getLastWriteHeader(channelId);
+                // set last write header
+                rtmp.setLastWriteHeader(channelId, header);
+                // set last write packet
+                rtmp.setLastWritePacket(channelId, packet);
+                // maximum header size with extended timestamp (Chunk message header type 0 with 11 byte)
+                IoBuffer headerBuf = IoBuffer.allocate(18, false);
+                encodeHeader(header, lastHeader, headerBuf);
+                headerBuf.flip();
+                // extended timestamp is set to the header while encoding it
+                IoBuffer body = ((BaseEvent) message).getChunkCache().getChunkedBody(data, rtmp.getWriteChunkSize(), channelId, header.getExtendedTimestamp());
+                out = new IoBuffer[] { headerBuf, body };
+                data.free();
+            }
+        } else {
+            log.trace("Dropped: {}", message);
+        }
+        message.release();
+        return out;
+    }
+
     /**
      * Determine if this message should be dropped. If the traffic from server to client is congested, then drop LIVE messages to help alleviate congestion.
      * 
@@ -631,6 +695,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     /** {@inheritDoc} */
     public IoBuffer encodeFlexSharedObject(ISharedObjectMessage so) {
+        if (so instanceof SharedObjectMessage && ((SharedObjectMessage) so).getSyncPayload() != null) {
+            return encodeSyncPayload(((SharedObjectMessage) so).getSyncPayload(), true);
+        }
         final IoBuffer out = IoBuffer.allocate(128);
         out.setAutoExpand(true);
         out.put((byte) 0x00); // unknown (not AMF version)
@@ -640,12 +707,44 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
     /** {@inheritDoc} */
     public IoBuffer encodeSharedObject(ISharedObjectMessage so) {
+        if (so instanceof SharedObjectMessage && ((SharedObjectMessage) so).getSyncPayload() != null) {
+            return encodeSyncPayload(((SharedObjectMessage) so).getSyncPayload(), false);
+        }
         final IoBuffer out = IoBuffer.allocate(128);
         out.setAutoExpand(true);
         doEncodeSharedObject(so, out);
         return out;
     }
 
+    /**
+     * Returns the serialized body of a sync update. Body is serialized by the first connection with the same encoding and shared by the
+     * others.
+     * 
+     * @param payload
+     *            sync update
+     * @param flex
+     *            whether it's a flex shared object message
+     * @return body of the update
+     */
+    private IoBuffer encodeSyncPayload(SharedObjectSyncPayload payload, boolean flex) {
+        final Encoding encoding = Red5.getConnectionLocal().getEncoding();
+        synchronized (payload) {
+            IoBuffer body = payload.getBody(encoding);
+            if (body == null) {
+                final IoBuffer out = IoBuffer.allocate(128);
+                out.setAutoExpand(true);
+                if (flex) {
+                    out.put((byte) 0x00); // unknown (not AMF version)
+                }
+                doEncodeSharedObject(payload.getMessage(), out);
+                out.flip();
+                payload.setBody(encoding, out);
+                body = payload.getBody(encoding);
+            }
+            return body;
+        }
+    }
+
     /**
      * Perform the actual encoding of the shared object contents.
      *
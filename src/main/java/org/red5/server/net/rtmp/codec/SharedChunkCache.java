@@ -0,0 +1,102 @@
+package org.red5.server.net.rtmp.codec;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.utils.BufferUtils;
+import org.red5.server.net.rtmp.RTMPUtils;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Cache of the chunked body of a live audio / video message.
+ *
+ * Chunked body is the message data split by the chunk size with the continuation chunk headers between the chunks.
+ * It only depends on the chunk size, channel id and extended timestamp so it's encoded once and shared read-only
+ * by the subscribers of the stream. Only the header of the first chunk is encoded for each connection.
+ */
+public class SharedChunkCache {
+
+    /**
+     * Subscribers generally use the same chunk size and channel so a few entries are enough
+     */
+    private static final int MAX_ENTRY_COUNT = 4;
+
+    /**
+     * Maximum chunk header size with extended timestamp
+     */
+    private static final int MAX_CHUNK_HEADER_SIZE = 7;
+
+    private static volatile boolean enabled = false;
+
+    private final int[] chunkSizes = new int[MAX_ENTRY_COUNT];
+
+    private final int[] channelIds = new int[MAX_ENTRY_COUNT];
+
+    private final int[] extendedTimestamps = new int[MAX_ENTRY_COUNT];
+
+    private final IoBuffer[] bodies = new IoBuffer[MAX_ENTRY_COUNT];
+
+    private int entryCount = 0;
+
+    /**
+     * Returns the chunked body of the data for the given parameters. It's encoded if it's not in the cache
+     *
+     * @param data
+     *            message data, its position is not changed
+     * @param chunkSize
+     *            write chunk size of the connection
+     * @param channelId
+     *            channel id of the message
+     * @param extendedTimestamp
+     *            extended timestamp written after continuation headers, 0 if there is no extended timestamp
+     * @return read-only buffer that can be written to the connection
+     */
+    public synchronized IoBuffer getChunkedBody(IoBuffer data, int chunkSize, int channelId, int extendedTimestamp) {
+        for (int i = 0; i < entryCount; i++) {
+            if (chunkSizes[i] == chunkSize && channelIds[i] == channelId && extendedTimestamps[i] == extendedTimestamp) {
+                return bodies[i].duplicate();
+            }
+        }
+        IoBuffer body = chunk(data, chunkSize, channelId, extendedTimestamp).asReadOnlyBuffer();
+        if (entryCount < MAX_ENTRY_COUNT) {
+            chunkSizes[entryCount] = chunkSize;
+            channelIds[entryCount] = channelId;
+            extendedTimestamps[entryCount] = extendedTimestamp;
+            bodies[entryCount] = body;
+            entryCount++;
+        }
+        return body.duplicate();
+    }
+
+    /**
+     * Splits the data into chunks and puts continuation chunk headers between them
+     */
+    public static IoBuffer chunk(IoBuffer data, int chunkSize, int channelId, int extendedTimestamp) {
+        IoBuffer source = data.duplicate();
+        int dataLen = source.remaining();
+        int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
+        IoBuffer out = IoBuffer.allocate(dataLen + (numChunks > 0 ? (numChunks - 1) * MAX_CHUNK_HEADER_SIZE : 0), false);
+        for (int i = 0; i < numChunks - 1; i++) {
+            BufferUtils.put(out, source, chunkSize);
+            dataLen -= chunkSize;
+            RTMPUtils.encodeHeaderByte(out, Constants.HEADER_CONTINUE, channelId);
+            if (extendedTimestamp != 0) {
+                out.putInt(extendedTimestamp);
+            }
+        }
+        BufferUtils.put(out, source, dataLen);
+        out.flip();
+        return out;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable/disable sharing the chunked body of live messages across subscribers
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        SharedChunkCache.enabled = enabled;
+    }
+}
@@ -101,12 +101,11 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
 
     public void setData(IoBuffer data) {
         if (data != null && data.limit() > 0) {
-            data.mark();
+            // absolute reads so that the position of a buffer shared by subscribers is not changed
             codecId = ((data.get(0) & 0xff) & ITag.MASK_SOUND_FORMAT) >> 4;
             if (codecId == AudioCodec.AAC.getId()) {
-                config = (data.get() == 0);
+                config = (data.get(data.position()) == 0);
             }
-            data.reset();
         }
         this.data = data;
     }
@@ -25,6 +25,7 @@ import java.io.ObjectOutput;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.red5.server.api.event.IEventListener;
+import org.red5.server.net.rtmp.codec.SharedChunkCache;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.slf4j.Logger;
@@ -77,6 +78,16 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected AtomicInteger refcount = new AtomicInteger(1);
 
+    /**
+     * Chunked body of the event shared by the subscribers of a live stream
+     */
+    private transient volatile SharedChunkCache chunkCache;
+
+    /**
+     * Event that owns the data buffer shared by this event, it's retained until this event is released
+     */
+    private transient volatile IRTMPEvent dataOwner;
+
     public BaseEvent() {
         // set a default type
         this(Type.SERVER, null);
@@ -189,6 +200,11 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
         final int baseCount = refcount.decrementAndGet();
         if (baseCount == 0) {
             releaseInternal();
+            IRTMPEvent owner = dataOwner;
+            if (owner != null) {
+                dataOwner = null;
+                owner.release();
+            }
         } else if (allocationDebugging && baseCount < 0) {
             throw new RuntimeException("attempt to retain object with invalid ref count");
         }
@@ -199,6 +215,56 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected abstract void releaseInternal();
 
+    /**
+     * Getter for the shared chunk cache
+     * 
+     * @return chunk cache or null if it's not shared
+     */
+    public SharedChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    /**
+     * Setter for the shared chunk cache. Subscribers' copies of a live event use the cache of the source event
+     * 
+     * @param chunkCache
+     *            chunk cache
+     */
+    public void setChunkCache(SharedChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
+    /**
+     * Retains the event whose data buffer is shared by this event until this event is released, so that the buffer is not freed while this
+     * event is waiting to be written
+     * 
+     * @param dataOwner
+     *            event that owns the data buffer
+     */
+    public void setDataOwner(IRTMPEvent dataOwner) {
+        dataOwner.retain();
+        this.dataOwner = dataOwner;
+    }
+
+    /**
+     * Returns the chunk cache of this event and creates it if it does not exist
+     * 
+     * @return chunk cache
+     */
+    public SharedChunkCache getOrCreateChunkCache() {
+        SharedChunkCache cache = chunkCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = chunkCache;
+                if (cache == null) {
+                    cache = new SharedChunkCache();
+                    chunkCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
         type = (Type) in.readObject();
         sourceType = in.readByte();
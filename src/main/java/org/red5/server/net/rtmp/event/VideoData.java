@@ -127,13 +127,12 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
     public void setData(IoBuffer data) {
         this.data = data;
         if (data != null && data.limit() > 0) {
-            data.mark();
+            // absolute reads so that the position of a buffer shared by subscribers is not changed
             int firstByte = data.get(0) & 0xff;
             codecId = firstByte & ITag.MASK_VIDEO_CODEC;
             if (codecId == VideoCodec.AVC.getId()) {
-                config = (data.get() == 0);
+                config = (data.get(data.position()) == 0);
             }
-            data.reset();
             int frameType = (firstByte & MASK_VIDEO_FRAMETYPE) >> 4;
             if (frameType == FLAG_FRAMETYPE_KEYFRAME) {
                 this.frameType = FrameType.KEYFRAME;
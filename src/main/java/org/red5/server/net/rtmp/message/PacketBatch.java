@@ -0,0 +1,63 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ * 
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.red5.server.net.rtmp.message;
+
+import java.util.List;
+
+/**
+ * Packets that are encoded together and written to the session with a single write.
+ */
+public class PacketBatch {
+
+    /**
+     * Packets in write order
+     */
+    private final List<Packet> packets;
+
+    /**
+     * Total body size of the packets
+     */
+    private final int dataSize;
+
+    public PacketBatch(List<Packet> packets, int dataSize) {
+        this.packets = packets;
+        this.dataSize = dataSize;
+    }
+
+    /**
+     * @return packets in write order
+     */
+    public List<Packet> getPackets() {
+        return packets;
+    }
+
+    /**
+     * @return total body size of the packets
+     */
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketBatch [packets=" + packets.size() + ", dataSize=" + dataSize + "]";
+    }
+
+}
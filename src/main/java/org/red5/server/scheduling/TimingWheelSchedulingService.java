@@ -0,0 +1,453 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ * 
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.red5.server.scheduling;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Scheduling service that uses a hashed timing wheel as backend. It's optimized for many short periodic jobs like the pull jobs of the
+ * VOD subscribers.
+ * 
+ * A single ticker thread advances the wheel every tick and hands the expired jobs to a worker pool. Adding and removing a job is O(1)
+ * and does not create any trigger or job detail. Jobs are paced with the wall clock: next execution of a periodic job is calculated
+ * from its previous deadline, so delays do not accumulate, and a job is never executed concurrently with itself.
+ * 
+ * Subscriber streams use this service for playback when it's defined with the name {@value #BEAN_NAME}.
+ */
+public class TimingWheelSchedulingService implements ISchedulingService, InitializingBean, DisposableBean {
+
+    private static Logger log = Red5LoggerFactory.getLogger(TimingWheelSchedulingService.class);
+
+    /**
+     * Bean name of the playback scheduling service
+     */
+    public static final String BEAN_NAME = "playbackSchedulingService";
+
+    private static final int STATE_ACTIVE = 0;
+
+    private static final int STATE_CANCELLED = 1;
+
+    /**
+     * Number of job details
+     */
+    protected AtomicLong jobDetailCounter = new AtomicLong(0);
+
+    /**
+     * Duration of a tick in milliseconds
+     */
+    protected int tickDuration = 10;
+
+    /**
+     * Number of buckets in the wheel, it's rounded up to a power of two
+     */
+    protected int wheelSize = 512;
+
+    /**
+     * Number of threads that execute the jobs
+     */
+    protected int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Scheduled jobs by name
+     */
+    protected ConcurrentMap<String, Timeout> jobs = new ConcurrentHashMap<String, Timeout>();
+
+    /**
+     * Jobs to be placed in the wheel by the ticker thread
+     */
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    /**
+     * Cancelled jobs to be removed from the wheel by the ticker thread
+     */
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+
+    private Bucket[] wheel;
+
+    private int mask;
+
+    private long tickNanos;
+
+    private long startTime;
+
+    private long tick;
+
+    private volatile boolean running;
+
+    private Thread tickerThread;
+
+    private ExecutorService executor;
+
+    /**
+     * Scheduled job and its position in the wheel. Wheel fields are only accessed by the ticker thread.
+     */
+    protected final class Timeout implements Runnable {
+
+        final String name;
+
+        final IScheduledJob job;
+
+        /**
+         * Interval in nanoseconds, 0 for the jobs that are executed once
+         */
+        final long interval;
+
+        /**
+         * Deadline in nanoseconds relative to the start time of the wheel
+         */
+        long deadline;
+
+        long remainingRounds;
+
+        Bucket bucket;
+
+        Timeout prev;
+
+        Timeout next;
+
+        volatile boolean paused;
+
+        final AtomicInteger state = new AtomicInteger(STATE_ACTIVE);
+
+        Timeout(String name, IScheduledJob job, long interval, long deadline) {
+            this.name = name;
+            this.job = job;
+            this.interval = interval;
+            this.deadline = deadline;
+        }
+
+        boolean cancel() {
+            if (state.compareAndSet(STATE_ACTIVE, STATE_CANCELLED)) {
+                cancelledTimeouts.add(this);
+                return true;
+            }
+            return false;
+        }
+
+        boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public void run() {
+            if (!paused && !isCancelled()) {
+                try {
+                    job.execute(TimingWheelSchedulingService.this);
+                } catch (Throwable e) {
+                    log.error("Job {} execution failed", job.toString(), e);
+                }
+            }
+            if (interval > 0) {
+                if (!isCancelled()) {
+                    // keep the wall clock pace, skip the missed executions if the job could not keep up
+                    deadline = Math.max(deadline + interval, System.nanoTime() - startTime);
+                    pendingTimeouts.add(this);
+                }
+            } else {
+                jobs.remove(name, this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout [name=" + name + ", job=" + job + ", interval=" + TimeUnit.NANOSECONDS.toMillis(interval) + "]";
+        }
+    }
+
+    /**
+     * Doubly linked list of the jobs that expire in the same tick of a round
+     */
+    private static final class Bucket {
+
+        Timeout head;
+
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void afterPropertiesSet() throws Exception {
+        log.debug("Initializing...");
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickDuration));
+        executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new CustomizableThreadFactory("TimingWheelWorker-"));
+        startTime = System.nanoTime();
+        running = true;
+        tickerThread = new Thread(this::runTicker, "TimingWheelTicker");
+        tickerThread.setDaemon(true);
+        tickerThread.start();
+    }
+
+    /**
+     * Advances the wheel one tick at a time until the service is destroyed.
+     */
+    private void runTicker() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (!running) {
+                break;
+            }
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+            expireTimeouts(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick.
+     * 
+     * @return end of the current tick in nanoseconds relative to the start time
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (running) {
+            long sleepTime = deadline - (System.nanoTime() - startTime);
+            if (sleepTime <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, sleepTime);
+        }
+        return deadline;
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // jobs whose deadline is passed are executed in the current tick
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(Bucket bucket, long deadline) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next;
+            if (timeout.isCancelled()) {
+                next = bucket.remove(timeout);
+            } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                next = bucket.remove(timeout);
+                try {
+                    executor.execute(timeout);
+                } catch (RejectedExecutionException e) {
+                    log.warn("Job {} could not be executed", timeout.name);
+                }
+            } else {
+                if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                next = timeout.next;
+            }
+            timeout = next;
+        }
+    }
+
+    private String addTimeout(IScheduledJob job, long interval, long delay) {
+        String name = getJobName();
+        Timeout timeout = new Timeout(name, job, TimeUnit.MILLISECONDS.toNanos(interval), System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay)));
+        jobs.put(name, timeout);
+        pendingTimeouts.add(timeout);
+        return name;
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledJob(int interval, IScheduledJob job) {
+        return addTimeout(job, Math.max(1, interval), 1);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledOnceJob(long timeDelta, IScheduledJob job) {
+        return addTimeout(job, 0, timeDelta);
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledOnceJob(Date date, IScheduledJob job) {
+        return addTimeout(job, 0, date.getTime() - System.currentTimeMillis());
+    }
+
+    /** {@inheritDoc} */
+    public String addScheduledJobAfterDelay(int interval, IScheduledJob job, int delay) {
+        return addTimeout(job, Math.max(1, interval), delay);
+    }
+
+    /**
+     * Getter for job name.
+     *
+     * @return Job name
+     */
+    public String getJobName() {
+        return String.format("ScheduledJob_%d", jobDetailCounter.getAndIncrement());
+    }
+
+    /** {@inheritDoc} */
+    public void pauseScheduledJob(String name) {
+        Timeout timeout = jobs.get(name);
+        if (timeout != null) {
+            timeout.paused = true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void resumeScheduledJob(String name) {
+        Timeout timeout = jobs.get(name);
+        if (timeout != null) {
+            timeout.paused = false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void removeScheduledJob(String name) {
+        Timeout timeout = jobs.remove(name);
+        if (timeout != null) {
+            timeout.cancel();
+        } else {
+            log.debug("No job found: {}", name);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public List<String> getScheduledJobNames() {
+        return new ArrayList<String>(jobs.keySet());
+    }
+
+    public void destroy() throws Exception {
+        log.debug("Destroying...");
+        running = false;
+        if (tickerThread != null) {
+            LockSupport.unpark(tickerThread);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        jobs.clear();
+        pendingTimeouts.clear();
+        cancelledTimeouts.clear();
+    }
+
+    public int getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * @param tickDuration
+     *            duration of a tick in milliseconds, it's the resolution of the scheduler
+     */
+    public void setTickDuration(int tickDuration) {
+        this.tickDuration = tickDuration;
+    }
+
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    /**
+     * @param wheelSize
+     *            number of buckets in the wheel
+     */
+    public void setWheelSize(int wheelSize) {
+        this.wheelSize = wheelSize;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount
+     *            number of threads that execute the jobs
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+}
@@ -52,10 +52,12 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.IScopeAware;
 import org.red5.server.api.scope.IScopeHandler;
 import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.service.IServiceInvoker;
 import org.red5.server.api.statistics.IScopeStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
 import org.red5.server.exception.ScopeException;
 import org.red5.server.jmx.mxbeans.ScopeMXBean;
+import org.red5.server.service.ServiceInvoker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
@@ -1132,6 +1134,33 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             removeChildren();
         }
         running = false;
+        invalidateServiceMethods();
+    }
+
+    /**
+     * Removes the cached service methods of the scope from the service invoker, so that the classes of a stopped application are not
+     * kept.
+     */
+    private void invalidateServiceMethods() {
+        try {
+            IContext context = getContext();
+            IServiceInvoker invoker = context != null ? context.getServiceInvoker() : null;
+            if (invoker instanceof ServiceInvoker) {
+                ServiceInvoker serviceInvoker = (ServiceInvoker) invoker;
+                if (type == ScopeType.APPLICATION) {
+                    serviceInvoker.invalidateMethodCache(context.getClassLoader());
+                } else {
+                    Map<String, Object> serviceHandlers = getServiceHandlers(false);
+                    if (serviceHandlers != null) {
+                        for (Object serviceHandler : serviceHandlers.values()) {
+                            serviceInvoker.invalidateMethodCache(serviceHandler.getClass());
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Could not invalidate service methods of scope {}", name, e);
+        }
     }
 
     /* (non-Javadoc)
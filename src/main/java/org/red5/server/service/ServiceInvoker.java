@@ -18,15 +18,23 @@
 
 package org.red5.server.service;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.red5.annotations.DeclarePrivate;
 import org.red5.annotations.DeclareProtected;
+import org.red5.io.utils.ConversionUtils;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.api.scope.IScope;
@@ -57,6 +65,27 @@ public class ServiceInvoker implements IServiceInvoker {
      */
     private Set<IServiceResolver> serviceResolvers = new HashSet<IServiceResolver>();
 
+    /**
+     * Maximum number of resolved methods to cache, least recently used ones are evicted when the limit is reached
+     */
+    private volatile int maxCachedMethods = 4096;
+
+    /**
+     * Resolved methods keyed by service class, method name and argument types. Lookups don't lock, the entries are stamped
+     * with the cache clock when they are used and the least recently used one is evicted when the limit is exceeded.
+     */
+    private final ConcurrentMap<MethodKey, MethodPlan> methodCache = new ConcurrentHashMap<MethodKey, MethodPlan>();
+
+    /**
+     * Cache clock, it's advanced when a method is cached so that entries used since the last insert share the same stamp
+     */
+    private final AtomicLong cacheClock = new AtomicLong();
+
+    /**
+     * Generic type of the cached method handles; (service, params) returning the result
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
     /**
      * Setter for service resolvers.
      * 
@@ -65,6 +94,104 @@ public class ServiceInvoker implements IServiceInvoker {
      */
     public void setServiceResolvers(Set<IServiceResolver> resolvers) {
         serviceResolvers = resolvers;
+        clearMethodCache();
+    }
+
+    /**
+     * Setter for the maximum number of cached method resolutions.
+     * 
+     * @param maxCachedMethods
+     *            maximum number of cached methods, 0 disables the cache
+     */
+    public void setMaxCachedMethods(int maxCachedMethods) {
+        this.maxCachedMethods = maxCachedMethods;
+        clearMethodCache();
+    }
+
+    /**
+     * Removes the cached methods of the given service class. It should be called when a service is registered again or
+     * unregistered.
+     * 
+     * @param serviceClass
+     *            service class
+     */
+    public void invalidateMethodCache(Class<?> serviceClass) {
+        methodCache.keySet().removeIf(key -> key.serviceClass == serviceClass);
+    }
+
+    /**
+     * Removes the cached methods of the service classes that are loaded by the given class loader. It should be called
+     * when an application stops, so that its classes are not kept.
+     * 
+     * @param classLoader
+     *            class loader of the application
+     */
+    public void invalidateMethodCache(ClassLoader classLoader) {
+        methodCache.keySet().removeIf(key -> key.serviceClass.getClassLoader() == classLoader);
+    }
+
+    /**
+     * Removes all the cached methods.
+     */
+    public void clearMethodCache() {
+        methodCache.clear();
+    }
+
+    /**
+     * @return number of cached methods
+     */
+    int getCachedMethodCount() {
+        return methodCache.size();
+    }
+
+    /**
+     * Caches the resolved method and evicts the least recently used ones if the limit is exceeded. Eviction scans the
+     * cache, it only happens when a new method is resolved while the cache is full.
+     * 
+     * @param key
+     *            cache key
+     * @param plan
+     *            resolved method
+     */
+    private void cacheMethod(MethodKey key, MethodPlan plan) {
+        plan.lastUsed = cacheClock.incrementAndGet();
+        if (methodCache.putIfAbsent(key, plan) == null) {
+            while (methodCache.size() > maxCachedMethods) {
+                Map.Entry<MethodKey, MethodPlan> eldest = null;
+                for (Map.Entry<MethodKey, MethodPlan> entry : methodCache.entrySet()) {
+                    if (eldest == null || entry.getValue().lastUsed < eldest.getValue().lastUsed) {
+                        eldest = entry;
+                    }
+                }
+                if (eldest == null) {
+                    break;
+                }
+                methodCache.remove(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given method is the only one that the lookup can choose for the given number of arguments. Only
+     * then the method chosen after a parameter conversion doesn't depend on the argument values, so the conversion can be
+     * cached and repeated for the next calls.
+     * 
+     * @param serviceClass
+     *            service class
+     * @param methodName
+     *            method name
+     * @param numArgs
+     *            number of arguments without the connection
+     * @return true if there is a single method with the name taking the arguments with or without the connection
+     */
+    private static boolean isSingleCandidate(Class<?> serviceClass, String methodName, int numArgs) {
+        int candidates = 0;
+        for (Method method : serviceClass.getMethods()) {
+            if (method.getName().equals(methodName) && (method.getParameterCount() == numArgs || method.getParameterCount() == numArgs + 1)) {
+                candidates++;
+            }
+        }
+        return candidates == 1;
     }
 
     /**
@@ -140,42 +267,78 @@ public class ServiceInvoker implements IServiceInvoker {
         } else {
             argsWithConnection = new Object[] { conn };
         }
-        // find the method
-        Object[] methodResult = null;
-        // First, search for method with the connection as first parameter.
-        methodResult = ReflectionUtils.findMethodWithExactParameters(service, methodName, argsWithConnection);
-        if (methodResult.length == 0 || methodResult[0] == null) {
-            // Second, search for method without the connection as first parameter.
-            methodResult = ReflectionUtils.findMethodWithExactParameters(service, methodName, args);
+        // find the method, resolved methods are cached by the argument types
+        MethodKey key = new MethodKey(service.getClass(), methodName, conn, args);
+        MethodPlan plan = maxCachedMethods > 0 ? methodCache.get(key) : null;
+        Object[] params = null;
+        if (plan != null) {
+            long now = cacheClock.get();
+            if (plan.lastUsed != now) {
+                plan.lastUsed = now;
+            }
+            params = plan.withConnection ? argsWithConnection : args;
+            if (plan.convert) {
+                params = plan.convertParams(params);
+                if (params == null) {
+                    // conversion of these values failed, so another method may be chosen
+                    log.debug("Cached parameter conversion failed for {}, method is resolved again", plan.method);
+                    plan = null;
+                }
+            }
+        }
+        if (plan == null) {
+            Object[] methodResult = null;
+            Object[] input = argsWithConnection;
+            boolean withConnection = true;
+            boolean listParams = false;
+            // First, search for method with the connection as first parameter.
+            methodResult = ReflectionUtils.findMethodWithExactParameters(service, methodName, argsWithConnection);
             if (methodResult.length == 0 || methodResult[0] == null) {
-                // Third, search for method with the connection as first parameter in a list argument.
-                methodResult = ReflectionUtils.findMethodWithListParameters(service, methodName, argsWithConnection);
+                // Second, search for method without the connection as first parameter.
+                input = args;
+                withConnection = false;
+                methodResult = ReflectionUtils.findMethodWithExactParameters(service, methodName, args);
                 if (methodResult.length == 0 || methodResult[0] == null) {
-                    // Fourth, search for method without the connection as first parameter in a list argument.
-                    methodResult = ReflectionUtils.findMethodWithListParameters(service, methodName, args);
+                    // Third, search for method with the connection as first parameter in a list argument.
+                    input = argsWithConnection;
+                    withConnection = true;
+                    listParams = true;
+                    methodResult = ReflectionUtils.findMethodWithListParameters(service, methodName, argsWithConnection);
                     if (methodResult.length == 0 || methodResult[0] == null) {
-                        log.error("Method {} with parameters {} not found in {}", new Object[] { methodName, (args == null ? Collections.EMPTY_LIST : Arrays.asList(args)), service });
-                        call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
-                        if (args != null && args.length > 0) {
-                            call.setException(new MethodNotFoundException(methodName, args));
-                        } else {
-                            call.setException(new MethodNotFoundException(methodName));
+                        // Fourth, search for method without the connection as first parameter in a list argument.
+                        input = args;
+                        withConnection = false;
+                        methodResult = ReflectionUtils.findMethodWithListParameters(service, methodName, args);
+                        if (methodResult.length == 0 || methodResult[0] == null) {
+                            log.error("Method {} with parameters {} not found in {}", new Object[] { methodName, (args == null ? Collections.EMPTY_LIST : Arrays.asList(args)), service });
+                            call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
+                            if (args != null && args.length > 0) {
+                                call.setException(new MethodNotFoundException(methodName, args));
+                            } else {
+                                call.setException(new MethodNotFoundException(methodName));
+                            }
+                            return false;
                         }
-                        return false;
                     }
                 }
             }
+            params = (Object[]) methodResult[1];
+            boolean convert = params != input;
+            plan = new MethodPlan((Method) methodResult[0], withConnection, convert);
+            // a converted call is cached only if no other method could be chosen for other argument values of the same types
+            if (maxCachedMethods > 0 && (!convert || (!listParams && isSingleCandidate(service.getClass(), methodName, args == null ? 0 : args.length)))) {
+                cacheMethod(key, plan);
+            }
         }
         Object result = null;
-        Method method = (Method) methodResult[0];
-        Object[] params = (Object[]) methodResult[1];
+        Method method = plan.method;
         try {
-            if (method.isAnnotationPresent(DeclarePrivate.class)) {
+            if (plan.declaredPrivate) {
                 // Method may not be called by clients.
                 log.debug("Method {} is declared private.", method);
                 throw new NotAllowedException("Access denied, method is private");
             }
-            final DeclareProtected annotation = method.getAnnotation(DeclareProtected.class);
+            final DeclareProtected annotation = plan.protectedAnnotation;
             if (annotation != null) {
                 if (!conn.getClient().hasPermission(conn, annotation.permission())) {
                     // client doesn't have required permission
@@ -184,12 +347,12 @@ public class ServiceInvoker implements IServiceInvoker {
                 }
             }
             log.debug("Invoking method: {}", method.toString());
-            if (method.getReturnType().equals(Void.TYPE)) {
+            if (plan.returnsVoid) {
                 log.debug("result: void");
-                method.invoke(service, params);
+                plan.invoke(service, params);
                 call.setStatus(Call.STATUS_SUCCESS_VOID);
             } else {
-                result = method.invoke(service, params);
+                result = plan.invoke(service, params);
                 log.debug("result: {}", result);
                 call.setStatus(result == null ? Call.STATUS_SUCCESS_NULL : Call.STATUS_SUCCESS_RESULT);
             }
@@ -222,4 +385,133 @@ public class ServiceInvoker implements IServiceInvoker {
         return true;
     }
 
+    /**
+     * Cache key of a resolved method. Argument types are part of the key since the method and the parameter conversion
+     * are chosen by the types of the arguments.
+     */
+    private static final class MethodKey {
+
+        private final Class<?> serviceClass;
+
+        private final String methodName;
+
+        private final Class<?>[] types;
+
+        private final int hash;
+
+        MethodKey(Class<?> serviceClass, String methodName, IConnection conn, Object[] args) {
+            this.serviceClass = serviceClass;
+            this.methodName = methodName;
+            int count = args == null ? 0 : args.length;
+            // first type is the connection type, null arguments are kept as null types
+            types = new Class<?>[count + 1];
+            types[0] = conn == null ? null : conn.getClass();
+            for (int i = 0; i < count; i++) {
+                types[i + 1] = args[i] == null ? null : args[i].getClass();
+            }
+            // args being null and empty args are resolved differently
+            hash = 31 * (31 * serviceClass.hashCode() + methodName.hashCode()) + Arrays.hashCode(types) + (args == null ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) obj;
+            return hash == other.hash && serviceClass == other.serviceClass && methodName.equals(other.methodName) && Arrays.equals(types, other.types);
+        }
+    }
+
+    /**
+     * Resolved method of a service call with a method handle to invoke it. Parameters are the arguments, with or without the
+     * connection as the first one, converted to the parameter types of the method if needed.
+     */
+    private static final class MethodPlan {
+
+        final Method method;
+
+        final Class<?>[] parameterTypes;
+
+        /**
+         * Handle taking the service and the parameter array, null if the method is not accessible through a public lookup
+         */
+        final MethodHandle handle;
+
+        final boolean withConnection;
+
+        /**
+         * Whether the arguments are converted to the parameter types
+         */
+        final boolean convert;
+
+        final boolean returnsVoid;
+
+        final boolean declaredPrivate;
+
+        final DeclareProtected protectedAnnotation;
+
+        /**
+         * Cache clock value when the plan was last used
+         */
+        volatile long lastUsed;
+
+        MethodPlan(Method method, boolean withConnection, boolean convert) {
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            this.withConnection = withConnection;
+            this.convert = convert;
+            this.returnsVoid = method.getReturnType().equals(Void.TYPE);
+            this.declaredPrivate = method.isAnnotationPresent(DeclarePrivate.class);
+            this.protectedAnnotation = method.getAnnotation(DeclareProtected.class);
+            MethodHandle methodHandle = null;
+            try {
+                methodHandle = MethodHandles.publicLookup().unreflect(method).asFixedArity().asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+            } catch (IllegalAccessException e) {
+                log.debug("Method handle is not accessible, reflection will be used for {}", method);
+            }
+            this.handle = methodHandle;
+        }
+
+        /**
+         * Converts the arguments to the parameter types in the same way as the method lookup.
+         * 
+         * @param args
+         *            arguments
+         * @return converted parameters or null if the conversion failed
+         */
+        Object[] convertParams(Object[] args) {
+            try {
+                Object[] params = ConversionUtils.convertParams(args, parameterTypes);
+                if (args.length > 0 && (args[0] instanceof IConnection) && (!(params[0] instanceof IConnection))) {
+                    // first IConnection parameter is not converted
+                    return null;
+                }
+                return params;
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+
+        Object invoke(Object service, Object[] params) throws IllegalAccessException, InvocationTargetException {
+            if (handle == null) {
+                return method.invoke(service, params);
+            }
+            try {
+                return (Object) handle.invokeExact(service, params);
+            } catch (Throwable t) {
+                // wrap like reflection does so that the call status is set in the same way
+                throw new InvocationTargetException(t);
+            }
+        }
+    }
+
 }
@@ -19,7 +19,10 @@
 package org.red5.server.so;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +30,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.Input;
@@ -115,6 +119,11 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
      */
     protected transient volatile ConcurrentLinkedQueue<ISharedObjectEvent> syncEvents = new ConcurrentLinkedQueue<ISharedObjectEvent>();
 
+    /**
+     * Synchronization events that are coalesced until {@link #flushUpdates()} is called
+     */
+    protected transient volatile ConcurrentLinkedQueue<CoalescedEvent> coalescedEvents = new ConcurrentLinkedQueue<CoalescedEvent>();
+
     /**
      * Listeners
      */
@@ -155,6 +164,26 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
      */
     protected AtomicInteger sendStats = new AtomicInteger();
 
+    /**
+     * Counts number of sync events before they are coalesced.
+     */
+    protected AtomicLong rawEventStats = new AtomicLong();
+
+    /**
+     * Counts number of sync events sent to the listeners.
+     */
+    protected AtomicLong sentEventStats = new AtomicLong();
+
+    /**
+     * Whether sync events are coalesced and sent by {@link #flushUpdates()} instead of at the end of every update
+     */
+    protected volatile boolean coalesceUpdates;
+
+    /**
+     * Whether there are coalesced changes that are not stored yet
+     */
+    protected AtomicBoolean unsaved = new AtomicBoolean();
+
     /**
      * Whether or not this shared object is closed
      */
@@ -301,6 +330,14 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
      */
     protected void sendUpdates() {
         log.debug("sendUpdates");
+        sendOwnerUpdates();
+        sendSyncUpdates(source);
+    }
+
+    /**
+     * Send the pending owner events to the source of the update.
+     */
+    protected void sendOwnerUpdates() {
         // get the current version
         final int currentVersion = getVersion();
         log.debug("Current version: {}", currentVersion);
@@ -335,6 +372,19 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         } else if (log.isTraceEnabled()) {
             log.trace("No owner events to send");
         }
+    }
+
+    /**
+     * Send the pending sync events to the listeners.
+     * 
+     * @param skipped
+     *            listener that should not receive the events, since it's the source of them
+     */
+    protected void sendSyncUpdates(IEventListener skipped) {
+        // get the current version
+        final int currentVersion = getVersion();
+        // get the name
+        final String name = getName();
         // tell all the listeners
         if (!syncEvents.isEmpty()) {
             // get all current sync events 
@@ -348,47 +398,97 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
                 events.addAll(syncEvents);
                 syncEvents.removeAll(events);
             }
-            // get the listeners
-            Set<IEventListener> listeners = getListeners();
-            if (log.isDebugEnabled()) {
-                log.debug("Listeners: {}", listeners);
-            }
-            // updates all registered clients of this shared object
-            for (IEventListener listener : listeners) {
-                if (listener != source) {
-                    if (listener instanceof RTMPConnection) {
-                        final RTMPConnection con = (RTMPConnection) listener;
-                        if (con.getStateCode() == RTMP.STATE_CONNECTED) {
-                            // create a worker
-                            SharedObjectService.submitTask(new Runnable() {
-                                public void run() {
-                                    Red5.setConnectionLocal(con);
-                                    con.sendSharedObjectMessage(name, currentVersion, persistent, events);
-                                    Red5.setConnectionLocal(null);
-                                }
-                            });
-                        } else {
-                            log.debug("Skipping unconnected connection");
+            rawEventStats.addAndGet(events.size());
+            sentEventStats.addAndGet(events.size());
+            // serialized once per encoding and shared by the listeners
+            final SharedObjectSyncPayload payload = new SharedObjectSyncPayload(name, currentVersion, persistent, events);
+            sendSyncPayload(payload, getListeners(), skipped != null ? Collections.singleton(skipped) : Collections.<IEventListener> emptySet());
+        } else if (log.isTraceEnabled()) {
+            log.trace("No sync events to send");
+        }
+    }
+
+    /**
+     * Send the sync update to the listeners.
+     * 
+     * @param payload
+     *            sync update
+     * @param listeners
+     *            listeners to send the update
+     * @param skipped
+     *            listeners that should not receive the update, since they're the source of it
+     */
+    private void sendSyncPayload(SharedObjectSyncPayload payload, Set<IEventListener> listeners, Set<IEventListener> skipped) {
+        if (log.isDebugEnabled()) {
+            log.debug("Listeners: {}", listeners);
+        }
+        // updates all registered clients of this shared object, a task handles a batch of listeners
+        List<RTMPConnection> batch = new ArrayList<RTMPConnection>();
+        for (IEventListener listener : listeners) {
+            if (!skipped.contains(listener)) {
+                if (listener instanceof RTMPConnection) {
+                    final RTMPConnection con = (RTMPConnection) listener;
+                    if (con.getStateCode() == RTMP.STATE_CONNECTED) {
+                        batch.add(con);
+                        if (batch.size() >= SharedObjectService.MAXIMUM_LISTENERS_PER_TASK) {
+                            submitSyncTask(payload, batch);
+                            batch = new ArrayList<RTMPConnection>();
                         }
                     } else {
-                        log.warn("Can't send sync message to unknown connection {}", listener);
+                        log.debug("Skipping unconnected connection");
                     }
                 } else {
-                    // don't re-send update to active client
-                    log.debug("Skipped {}", source);
+                    log.warn("Can't send sync message to unknown connection {}", listener);
                 }
+            } else {
+                // don't re-send update to active client
+                log.debug("Skipped {}", listener);
             }
-        } else if (log.isTraceEnabled()) {
-            log.trace("No sync events to send");
+        }
+        if (!batch.isEmpty()) {
+            submitSyncTask(payload, batch);
         }
     }
 
+    /**
+     * Sends the sync update to a batch of listeners in a single task.
+     * 
+     * @param payload
+     *            sync update
+     * @param connections
+     *            listeners
+     */
+    private void submitSyncTask(final SharedObjectSyncPayload payload, final List<RTMPConnection> connections) {
+        // create a worker
+        SharedObjectService.submitTask(new Runnable() {
+            public void run() {
+                for (RTMPConnection con : connections) {
+                    Red5.setConnectionLocal(con);
+                    con.sendSharedObjectMessage(payload);
+                }
+                Red5.setConnectionLocal(null);
+            }
+        });
+    }
+
     /**
      * Send notification about modification of SO
      */
     protected void notifyModified() {
         log.debug("notifyModified - modified: {} update counter: {}", modified.get(), updateCounter.get());
         if (updateCounter.get() == 0) {
+            if (coalesceUpdates) {
+                if (modified.compareAndSet(true, false)) {
+                    // version is increased before the owner gets its results, listeners get the version of the flush, which is not older
+                    updateVersion();
+                    lastModified = System.currentTimeMillis();
+                    unsaved.set(true);
+                }
+                coalesceSyncEvents(source);
+                // owner gets its results now, sync events are sent when the updates are flushed
+                sendOwnerUpdates();
+                return;
+            }
             if (modified.get()) {
                 // client sent at least one update -> increase version of SO
                 updateVersion();
@@ -402,6 +502,131 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         }
     }
 
+    /**
+     * Keeps the sync events of the update together with its source until they're flushed.
+     * 
+     * @param source
+     *            listener that is the source of the update, null for the server side updates
+     */
+    private void coalesceSyncEvents(IEventListener source) {
+        ISharedObjectEvent event;
+        while ((event = syncEvents.poll()) != null) {
+            coalescedEvents.add(new CoalescedEvent(event, source));
+        }
+    }
+
+    /**
+     * Send the coalesced sync events to all listeners. An attribute update that is followed by another update or delete of the same
+     * attribute is dropped, so listeners only get the last value. A listener does not get the events that it's the source of.
+     */
+    protected void flushUpdates() {
+        coalesceSyncEvents(null);
+        List<CoalescedEvent> events = mergeCoalescedEvents();
+        for (int i = 0; i < events.size(); i += SharedObjectService.MAXIMUM_EVENTS_PER_UPDATE) {
+            sendCoalescedUpdates(events.subList(i, Math.min(events.size(), i + SharedObjectService.MAXIMUM_EVENTS_PER_UPDATE)));
+        }
+    }
+
+    /**
+     * Drops the attribute updates that are overridden by a later event of the same attribute.
+     * 
+     * @return events to be sent in order
+     */
+    private List<CoalescedEvent> mergeCoalescedEvents() {
+        List<CoalescedEvent> events = new ArrayList<CoalescedEvent>();
+        CoalescedEvent coalescedEvent;
+        while ((coalescedEvent = coalescedEvents.poll()) != null) {
+            events.add(coalescedEvent);
+        }
+        LinkedList<CoalescedEvent> merged = new LinkedList<CoalescedEvent>();
+        Set<String> changedKeys = new HashSet<String>();
+        for (int i = events.size() - 1; i >= 0; i--) {
+            coalescedEvent = events.get(i);
+            Type type = coalescedEvent.event.getType();
+            String key = coalescedEvent.event.getKey();
+            if (key != null && (type == Type.CLIENT_UPDATE_DATA || type == Type.CLIENT_DELETE_DATA)) {
+                if (!changedKeys.add(key) && type == Type.CLIENT_UPDATE_DATA) {
+                    // count it as a raw event, it's not sent
+                    rawEventStats.incrementAndGet();
+                    continue;
+                }
+            }
+            merged.addFirst(coalescedEvent);
+        }
+        return merged;
+    }
+
+    /**
+     * Send the coalesced events to the listeners. Listeners that are not the source of any event share a single update, each source gets
+     * an update without its own events.
+     * 
+     * @param events
+     *            coalesced events
+     */
+    private void sendCoalescedUpdates(List<CoalescedEvent> events) {
+        final int currentVersion = getVersion();
+        final String name = getName();
+        ConcurrentLinkedQueue<ISharedObjectEvent> allEvents = new ConcurrentLinkedQueue<ISharedObjectEvent>();
+        Set<IEventListener> sources = new HashSet<IEventListener>();
+        for (CoalescedEvent coalescedEvent : events) {
+            allEvents.add(coalescedEvent.event);
+            if (coalescedEvent.source != null) {
+                sources.add(coalescedEvent.source);
+            }
+        }
+        rawEventStats.addAndGet(allEvents.size());
+        sentEventStats.addAndGet(allEvents.size());
+        Set<IEventListener> listeners = getListeners();
+        sendSyncPayload(new SharedObjectSyncPayload(name, currentVersion, persistent, allEvents), listeners, sources);
+        for (IEventListener source : sources) {
+            if (!listeners.contains(source)) {
+                continue;
+            }
+            ConcurrentLinkedQueue<ISharedObjectEvent> otherEvents = new ConcurrentLinkedQueue<ISharedObjectEvent>();
+            for (CoalescedEvent coalescedEvent : events) {
+                if (coalescedEvent.source != source) {
+                    otherEvents.add(coalescedEvent.event);
+                }
+            }
+            if (!otherEvents.isEmpty()) {
+                sendSyncPayload(new SharedObjectSyncPayload(name, currentVersion, persistent, otherEvents), Collections.singleton(source), Collections.<IEventListener> emptySet());
+            }
+        }
+    }
+
+    /**
+     * Store the coalesced changes if there are any.
+     */
+    protected void saveUpdates() {
+        if (unsaved.compareAndSet(true, false)) {
+            if (storage == null || !storage.save(this)) {
+                log.warn("Could not store shared object");
+            }
+        }
+    }
+
+    /**
+     * @return true if there are changes that are not stored or messages that are not sent to the listeners yet
+     */
+    protected boolean hasPendingUpdates() {
+        return unsaved.get() || !syncEvents.isEmpty() || !coalescedEvents.isEmpty();
+    }
+
+    /**
+     * @return number of sync events that are not sent to the listeners yet
+     */
+    protected int getPendingEventCount() {
+        return coalescedEvents.size();
+    }
+
+    /**
+     * @param coalesceUpdates
+     *            whether sync events are coalesced until {@link #flushUpdates()} is called
+     */
+    protected void setCoalesceUpdates(boolean coalesceUpdates) {
+        this.coalesceUpdates = coalesceUpdates;
+    }
+
     /**
      * Return an error message to the client.
      * 
@@ -767,6 +992,7 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         super.removeAttributes();
         listeners.clear();
         syncEvents.clear();
+        coalescedEvents.clear();
         ownerMessage.getEvents().clear();
     }
 
@@ -859,6 +1085,16 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         return sendStats.intValue();
     }
 
+    /** {@inheritDoc} */
+    public long getTotalRawEvents() {
+        return rawEventStats.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getTotalSentEvents() {
+        return sentEventStats.get();
+    }
+
     /**
      * Sets a modified or dirty property on this object to indicate whether or not a modification has been made.
      * 
@@ -870,4 +1106,19 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
         modified.set(dirty);
     }
 
+    /**
+     * Coalesced sync event and the listener that is the source of it
+     */
+    protected static final class CoalescedEvent {
+
+        final ISharedObjectEvent event;
+
+        final IEventListener source;
+
+        CoalescedEvent(ISharedObjectEvent event, IEventListener source) {
+            this.event = event;
+            this.source = source;
+        }
+    }
+
 }
@@ -59,6 +59,11 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
      */
     private boolean persistent;
 
+    /**
+     * Shared sync update whose serialized body is written instead of the events
+     */
+    private transient SharedObjectSyncPayload syncPayload;
+
     public SharedObjectMessage() {
     }
 
@@ -154,6 +159,23 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
         this.persistent = persistent;
     }
 
+    /**
+     * @return shared sync update of the message or null if the message is serialized from its own events
+     */
+    public SharedObjectSyncPayload getSyncPayload() {
+        return syncPayload;
+    }
+
+    /**
+     * Sets the shared sync update whose serialized body is written for this message.
+     * 
+     * @param syncPayload
+     *            shared sync update
+     */
+    public void setSyncPayload(SharedObjectSyncPayload syncPayload) {
+        this.syncPayload = syncPayload;
+    }
+
     /** {@inheritDoc} */
     public void addEvent(ISharedObjectEvent event) {
         events.add(event);
@@ -188,7 +210,7 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
 
     /** {@inheritDoc} */
     public boolean isEmpty() {
-        return events.isEmpty();
+        return events.isEmpty() && syncPayload == null;
     }
 
     /** {@inheritDoc} */
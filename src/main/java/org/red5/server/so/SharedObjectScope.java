@@ -26,6 +26,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.red5.server.BaseConnection;
@@ -38,6 +39,7 @@ import org.red5.server.api.scheduling.IScheduledJob;
 import org.red5.server.api.scheduling.ISchedulingService;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.scope.ScopeType;
+import org.red5.server.api.service.IServiceInvoker;
 import org.red5.server.api.so.ISharedObject;
 import org.red5.server.api.so.ISharedObjectListener;
 import org.red5.server.api.so.ISharedObjectSecurity;
@@ -47,6 +49,7 @@ import org.red5.server.net.rtmp.status.StatusCodes;
 import org.red5.server.scheduling.QuartzSchedulingService;
 import org.red5.server.scope.BasicScope;
 import org.red5.server.service.ReflectionUtils;
+import org.red5.server.service.ServiceInvoker;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,6 +96,30 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
      */
     private String lingerJobName;
 
+    /**
+     * Time window in milliseconds that sync events are coalesced, 0 sends them at the end of every update
+     */
+    private volatile int coalescingWindow;
+
+    /**
+     * Coalesced events are sent immediately when their number reaches this limit
+     */
+    private int maxCoalescedEvents = 64;
+
+    /**
+     * Minimum interval in milliseconds between two saves of the coalesced changes
+     */
+    private long persistInterval = 1000L;
+
+    /**
+     * Last time the coalesced changes are saved
+     */
+    private volatile long lastSaved;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
     /**
      * Creates shared object with given parent scope, name, persistence flag state and store object
      * 
@@ -197,6 +224,13 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
         // end update of SO
         try {
             so.endUpdate();
+            if (coalescingWindow > 0 && so.updateCounter.get() == 0 && so.hasPendingUpdates()) {
+                if (so.getPendingEventCount() >= maxCoalescedEvents) {
+                    flushUpdates();
+                } else {
+                    scheduleFlush();
+                }
+            }
         } catch (Exception ex) {
             log.warn("Exception on so.endUpdate", ex);
         } finally {
@@ -209,6 +243,97 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
         return so.getVersion();
     }
 
+    /**
+     * Sends the coalesced events and schedules saving of the changes. It should be called while holding the lock.
+     */
+    private void flushUpdates() {
+        so.flushUpdates();
+        if (so.unsaved.get() && saveScheduled.compareAndSet(false, true)) {
+            // changes are stored in background and at most once in the persist interval
+            long delay = Math.max(0, lastSaved + persistInterval - System.currentTimeMillis());
+            SharedObjectService.scheduleTask(new Runnable() {
+                public void run() {
+                    lock.lock();
+                    try {
+                        saveScheduled.set(false);
+                        lastSaved = System.currentTimeMillis();
+                        so.saveUpdates();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }, delay);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            SharedObjectService.scheduleTask(new Runnable() {
+                public void run() {
+                    lock.lock();
+                    try {
+                        flushScheduled.set(false);
+                        flushUpdates();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }, coalescingWindow);
+        }
+    }
+
+    public int getCoalescingWindow() {
+        return coalescingWindow;
+    }
+
+    /**
+     * Sets the time window that the sync events are coalesced. Updates of the same attribute in the window are merged and listeners
+     * get the last value, which saves bandwidth for high frequency updates like cursor positions. Changes are stored at most once in the
+     * persist interval. Default is 0, which sends and stores every update immediately.
+     *
+     * Owner of an update gets its results with the new version at the end of the update and does not get its own events again when they're
+     * flushed. Listeners get the version of the latest update in the window.
+     *
+     * @param coalescingWindow
+     *            window in milliseconds
+     */
+    public void setCoalescingWindow(int coalescingWindow) {
+        lock.lock();
+        try {
+            this.coalescingWindow = Math.max(0, coalescingWindow);
+            so.setCoalesceUpdates(this.coalescingWindow > 0);
+            if (this.coalescingWindow == 0 && so.hasPendingUpdates()) {
+                flushUpdates();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxCoalescedEvents() {
+        return maxCoalescedEvents;
+    }
+
+    /**
+     * @param maxCoalescedEvents
+     *            coalesced events are sent immediately when their number reaches this limit
+     */
+    public void setMaxCoalescedEvents(int maxCoalescedEvents) {
+        this.maxCoalescedEvents = maxCoalescedEvents;
+    }
+
+    public long getPersistInterval() {
+        return persistInterval;
+    }
+
+    /**
+     * @param persistInterval
+     *            minimum interval in milliseconds between two saves of the coalesced changes
+     */
+    public void setPersistInterval(long persistInterval) {
+        this.persistInterval = persistInterval;
+    }
+
     /** {@inheritDoc} */
     public void sendMessage(String handler, List<?> arguments) {
         if (so != null) {
@@ -767,19 +892,40 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
         if (name == null) {
             name = "";
         }
-        handlers.put(name, handler);
+        Object previous = handlers.put(name, handler);
+        if (previous != null) {
+            invalidateServiceMethods(previous);
+        }
     }
 
     public void unregisterServiceHandler() {
         unregisterServiceHandler("");
     }
 
+    /**
+     * Removes the cached methods of the service handler from the service invoker.
+     * 
+     * @param handler
+     *            service handler that is replaced or unregistered
+     */
+    private void invalidateServiceMethods(Object handler) {
+        if (hasParent()) {
+            IServiceInvoker invoker = getParent().getContext().getServiceInvoker();
+            if (invoker instanceof ServiceInvoker) {
+                ((ServiceInvoker) invoker).invalidateMethodCache(handler.getClass());
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     public void unregisterServiceHandler(String name) {
         if (name == null) {
             name = "";
         }
-        handlers.remove(name);
+        Object previous = handlers.remove(name);
+        if (previous != null) {
+            invalidateServiceMethods(previous);
+        }
     }
 
     /** {@inheritDoc} */
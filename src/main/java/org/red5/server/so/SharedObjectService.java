@@ -18,6 +18,7 @@
 
 package org.red5.server.so;
 
+import java.util.Date;
 import java.util.Set;
 
 import org.red5.server.api.persistence.IPersistable;
@@ -59,6 +60,11 @@ public class SharedObjectService implements ISharedObjectService {
      */
     public static int MAXIMUM_EVENTS_PER_UPDATE = 16;
 
+    /**
+     * Maximum listeners that a single sync task sends the update to
+     */
+    public static int MAXIMUM_LISTENERS_PER_TASK = 64;
+
     /**
      * Persistence class name
      */
@@ -74,6 +80,18 @@ public class SharedObjectService implements ISharedObjectService {
         scheduler.execute(task);
     }
 
+    /**
+     * Pushes a task to the scheduler for single execution after the delay.
+     * 
+     * @param task
+     *            runnable
+     * @param delay
+     *            delay in milliseconds
+     */
+    public static void scheduleTask(Runnable task, long delay) {
+        scheduler.schedule(task, new Date(System.currentTimeMillis() + delay));
+    }
+
     /**
      * @param maximumEventsPerUpdate
      *            the maximumEventsPerUpdate to set
@@ -82,6 +100,14 @@ public class SharedObjectService implements ISharedObjectService {
         MAXIMUM_EVENTS_PER_UPDATE = maximumEventsPerUpdate;
     }
 
+    /**
+     * @param maximumListenersPerTask
+     *            the maximumListenersPerTask to set
+     */
+    public void setMaximumListenersPerTask(int maximumListenersPerTask) {
+        MAXIMUM_LISTENERS_PER_TASK = Math.max(1, maximumListenersPerTask);
+    }
+
     /**
      * Setter for persistence class name.
      * 
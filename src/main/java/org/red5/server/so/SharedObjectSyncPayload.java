@@ -0,0 +1,101 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/
+ * 
+ * Copyright 2006-2016 by respective authors (see below). All rights reserved.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.red5.server.so;
+
+import java.util.Queue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.api.IConnection.Encoding;
+
+/**
+ * Sync update of a shared object version that is sent to all of its listeners. Body of the update is serialized once for each encoding
+ * and the serialized body is shared by the listeners.
+ */
+public class SharedObjectSyncPayload {
+
+    /**
+     * Message that the body is serialized from, it's never written to a connection
+     */
+    private final SharedObjectMessage message;
+
+    /**
+     * Serialized body for AMF0 connections
+     */
+    private IoBuffer amf0Body;
+
+    /**
+     * Serialized body for AMF3 connections
+     */
+    private IoBuffer amf3Body;
+
+    public SharedObjectSyncPayload(String name, int version, boolean persistent, Queue<ISharedObjectEvent> events) {
+        message = new SharedObjectMessage(null, name, version, persistent);
+        message.addEvents(events);
+    }
+
+    /**
+     * @return message that holds the name, the version and the events of the update
+     */
+    public ISharedObjectMessage getMessage() {
+        return message;
+    }
+
+    /**
+     * Returns the serialized body for the encoding. The returned buffer shares the content of the cached body but has its own position,
+     * so it can be consumed by the caller.
+     * 
+     * @param encoding
+     *            object encoding of the connection
+     * @return serialized body or null if it's not serialized for the encoding yet
+     */
+    public synchronized IoBuffer getBody(Encoding encoding) {
+        IoBuffer body = encoding == Encoding.AMF3 ? amf3Body : amf0Body;
+        return body != null ? body.asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Caches the serialized body for the encoding.
+     * 
+     * @param encoding
+     *            object encoding of the connection
+     * @param body
+     *            flipped body buffer
+     */
+    public synchronized void setBody(Encoding encoding, IoBuffer body) {
+        if (encoding == Encoding.AMF3) {
+            amf3Body = body;
+        } else {
+            amf0Body = body;
+        }
+    }
+
+    public String getName() {
+        return message.getName();
+    }
+
+    public int getVersion() {
+        return message.getVersion();
+    }
+
+    public boolean isPersistent() {
+        return message.isPersistent();
+    }
+
+}
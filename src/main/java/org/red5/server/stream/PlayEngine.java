@@ -67,6 +67,7 @@ import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.InMemoryPushPushPipe;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
@@ -116,6 +117,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
 	private Number streamId;
 
+	/**
+	 * Pending video counter of the subscriber stream, it's read directly when the subscriber is an RTMP connection
+	 */
+	private AtomicInteger pendingVideoCounter;
+
 	/**
 	 * Receive video?
 	 */
@@ -1622,6 +1628,17 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 	 * @return Number of pending video messages
 	 */
 	private long pendingVideoMessages() {
+		AtomicInteger counter = pendingVideoCounter;
+		if (counter == null) {
+			IStreamCapableConnection conn = subscriberStream.getConnection();
+			if (conn instanceof RTMPConnection) {
+				counter = ((RTMPConnection) conn).getPendingVideoCounter(streamId);
+				pendingVideoCounter = counter;
+			}
+		}
+		if (counter != null) {
+			return counter.get();
+		}
 		IMessageOutput out = msgOutReference.get();
 		if (out != null) {
 			OOBControlMessage pendingRequest = new OOBControlMessage();
@@ -38,6 +38,7 @@ import org.red5.server.api.stream.IPlaylistSubscriberStream;
 import org.red5.server.api.stream.IStreamAwareScopeHandler;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
+import org.red5.server.scheduling.TimingWheelSchedulingService;
 import org.slf4j.Logger;
 
 /**
@@ -177,7 +178,12 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
             IScope scope = getScope();
             if (scope != null) {
                 IContext ctx = scope.getContext();
-                if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
+                if (ctx.hasBean(TimingWheelSchedulingService.BEAN_NAME)) {
+                    // playback jobs are paced by the timing wheel if it's configured
+                    schedulingService = (ISchedulingService) ctx.getBean(TimingWheelSchedulingService.BEAN_NAME);
+                } else if (scope.hasParent() && scope.getParent().getContext().hasBean(TimingWheelSchedulingService.BEAN_NAME)) {
+                    schedulingService = (ISchedulingService) scope.getParent().getContext().getBean(TimingWheelSchedulingService.BEAN_NAME);
+                } else if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
                     schedulingService = (ISchedulingService) ctx.getBean(ISchedulingService.BEAN_NAME);
                 } else {
                     //try the parent
@@ -31,6 +31,7 @@ import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
 import org.red5.server.net.rtmp.Channel;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.codec.SharedChunkCache;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
@@ -168,6 +169,14 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         audioData.setTimestamp(header.getTimer());
                         log.trace("Source type: {}", ((AudioData) msg).getSourceType());
                         audioData.setSourceType(((AudioData) msg).getSourceType());
+                        if (conn.isWriteBatchEnabled()) {
+                            // data is shared with the source event, keep it until the batch is written
+                            audioData.setDataOwner(msg);
+                        }
+                        if (SharedChunkCache.isEnabled()) {
+                            // subscribers of the same message share the chunked body
+                            audioData.setChunkCache(((AudioData) msg).getOrCreateChunkCache());
+                        }
                         audio.write(audioData);
                     } else {
                         log.warn("Audio data was not found");
@@ -182,6 +191,14 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         videoData.setTimestamp(header.getTimer());
                         log.trace("Source type: {}", ((VideoData) msg).getSourceType());
                         videoData.setSourceType(((VideoData) msg).getSourceType());
+                        if (conn.isWriteBatchEnabled()) {
+                            // data is shared with the source event, keep it until the batch is written
+                            videoData.setDataOwner(msg);
+                        }
+                        if (SharedChunkCache.isEnabled()) {
+                            // subscribers of the same message share the chunked body
+                            videoData.setChunkCache(((VideoData) msg).getOrCreateChunkCache());
+                        }
                         video.write(videoData);
                     } else {
                         log.warn("Video data was not found");
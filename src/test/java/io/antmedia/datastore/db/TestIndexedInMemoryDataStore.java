@@ -0,0 +1,196 @@
+package io.antmedia.datastore.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.antmedia.datastore.db.types.Broadcast;
+import io.antmedia.datastore.db.types.BroadcastStatus;
+import io.antmedia.datastore.db.types.VoD;
+
+public class TestIndexedInMemoryDataStore {
+
+	private IndexedInMemoryDataStore dataStore;
+
+	@Before
+	public void setUp() {
+		dataStore = new IndexedInMemoryDataStore("testdb");
+	}
+
+	private Broadcast saveBroadcast(String streamId, String name, long date, String status) throws Exception {
+		Broadcast broadcast = new Broadcast(status, name);
+		broadcast.setStreamId(streamId);
+		broadcast.setDate(date);
+		dataStore.save(broadcast);
+		return broadcast;
+	}
+
+	private VoD addVoD(String vodId, String vodName, String streamId, long creationDate) {
+		VoD vod = new VoD("streamName", streamId, "path", vodName, creationDate, 0, 0, VoD.USER_VOD, vodId);
+		dataStore.addVod(vod);
+		return vod;
+	}
+
+	private static List<String> broadcastIds(List<Broadcast> broadcasts) {
+		List<String> ids = new ArrayList<>();
+		for (Broadcast broadcast : broadcasts) {
+			ids.add(broadcast.getStreamId());
+		}
+		return ids;
+	}
+
+	private static List<String> vodIds(List<VoD> vods) {
+		List<String> ids = new ArrayList<>();
+		for (VoD vod : vods) {
+			ids.add(vod.getVodId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testPagingAndOffset() throws Exception {
+		for (int i = 0; i < 25; i++) {
+			saveBroadcast("stream" + i, "name" + i, i, BroadcastStatus.UNPUBLISHED);
+		}
+
+		//default order is the insertion order
+		List<Broadcast> page = dataStore.getBroadcastList(0, 10, null, null, null, null);
+		assertEquals(10, page.size());
+		assertEquals("stream0", page.get(0).getStreamId());
+		assertEquals("stream9", page.get(9).getStreamId());
+
+		page = dataStore.getBroadcastList(20, 10, null, null, null, null);
+		assertEquals(5, page.size());
+		assertEquals("stream20", page.get(0).getStreamId());
+		assertEquals("stream24", page.get(4).getStreamId());
+
+		assertTrue(dataStore.getBroadcastList(25, 10, null, null, null, null).isEmpty());
+		assertTrue(dataStore.getBroadcastList(100, 10, null, null, null, null).isEmpty());
+
+		//negative offset is treated as zero
+		page = dataStore.getBroadcastList(-5, 3, null, null, null, null);
+		assertEquals(Arrays.asList("stream0", "stream1", "stream2"), broadcastIds(page));
+
+		//type filter is applied before the offset
+		saveBroadcast("camera1", "camera1", 100, BroadcastStatus.UNPUBLISHED).setType(IndexedInMemoryDataStore.IP_CAMERA);
+		saveBroadcast("camera2", "camera2", 101, BroadcastStatus.UNPUBLISHED).setType(IndexedInMemoryDataStore.IP_CAMERA);
+		page = dataStore.getBroadcastList(1, 10, IndexedInMemoryDataStore.IP_CAMERA, null, null, null);
+		assertEquals(Arrays.asList("camera2"), broadcastIds(page));
+	}
+
+	@Test
+	public void testSortBroadcasts() throws Exception {
+		saveBroadcast("b", "Bravo", 300, BroadcastStatus.UNPUBLISHED);
+		saveBroadcast("a", "alpha", 100, BroadcastStatus.LIVE_STOPPED);
+		saveBroadcast("c", "charlie", 200, BroadcastStatus.LIVE_NOW);
+
+		assertEquals(Arrays.asList("a", "b", "c"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "name", "asc", null)));
+		assertEquals(Arrays.asList("c", "b", "a"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "name", "desc", null)));
+
+		assertEquals(Arrays.asList("a", "c", "b"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "date", "asc", null)));
+		assertEquals(Arrays.asList("b", "c", "a"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "date", "desc", null)));
+
+		//LIVE < LIVE_STOPPED < UNPUBLISHED
+		assertEquals(Arrays.asList("c", "a", "b"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "status", "asc", null)));
+		assertEquals(Arrays.asList("b", "a", "c"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "status", "desc", null)));
+
+		//offset is applied in the sorted order
+		assertEquals(Arrays.asList("c"), broadcastIds(dataStore.getBroadcastList(1, 1, null, "date", "asc", null)));
+	}
+
+	@Test
+	public void testSortVoDs() {
+		addVoD("v2", "second", "s1", 2000);
+		addVoD("v1", "First", "s2", 3000);
+		addVoD("v3", "third", "s1", 1000);
+
+		assertEquals(Arrays.asList("v1", "v2", "v3"), vodIds(dataStore.getVodList(0, 10, "name", "asc", null, null)));
+		assertEquals(Arrays.asList("v3", "v2", "v1"), vodIds(dataStore.getVodList(0, 10, "name", "desc", null, null)));
+		assertEquals(Arrays.asList("v3", "v2", "v1"), vodIds(dataStore.getVodList(0, 10, "date", "asc", null, null)));
+		assertEquals(Arrays.asList("v1", "v2", "v3"), vodIds(dataStore.getVodList(0, 10, "date", "desc", null, null)));
+
+		//stream id filter
+		assertEquals(Arrays.asList("v2", "v3"), vodIds(dataStore.getVodList(0, 10, "date", "desc", "s1", null)));
+		assertEquals(Arrays.asList("v3"), vodIds(dataStore.getVodList(1, 10, "date", "desc", "s1", null)));
+	}
+
+	@Test
+	public void testSearch() throws Exception {
+		saveBroadcast("id1", "Morning Show", 1, BroadcastStatus.UNPUBLISHED);
+		saveBroadcast("id2", "evening show", 2, BroadcastStatus.UNPUBLISHED);
+		saveBroadcast("id3", "news", 3, BroadcastStatus.UNPUBLISHED);
+
+		//longer than gram length
+		assertEquals(Arrays.asList("id2", "id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "name", "asc", "SHOW")));
+		assertEquals(2, dataStore.getPartialBroadcastNumber("show"));
+		assertEquals(Arrays.asList("id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, null, null, "orning sh")));
+		assertTrue(dataStore.getBroadcastList(0, 10, null, null, null, "showx").isEmpty());
+
+		//shorter than gram length
+		assertTrue(NGramIndex.GRAM_LENGTH > 2);
+		assertEquals(Arrays.asList("id2", "id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "date", "desc", "IN")));
+		assertEquals(Arrays.asList("id1", "id2", "id3"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "date", "asc", "n")));
+
+		//stream id is searchable as well
+		assertEquals(Arrays.asList("id2"), broadcastIds(dataStore.getBroadcastList(0, 10, null, null, null, "id2")));
+
+		//offset and size are applied to the search results
+		assertEquals(Arrays.asList("id2"), broadcastIds(dataStore.getBroadcastList(1, 1, null, "date", "asc", "n")));
+
+		addVoD("vod1", "Concert", "concertStream", 1);
+		addVoD("vod2", "Match", "matchStream", 2);
+		assertEquals(Arrays.asList("vod1"), vodIds(dataStore.getVodList(0, 10, null, null, null, "cert")));
+		assertEquals(Arrays.asList("vod2"), vodIds(dataStore.getVodList(0, 10, null, null, null, "matchstr")));
+		assertEquals(Arrays.asList("vod1", "vod2"), vodIds(dataStore.getVodList(0, 10, "date", "asc", null, "c")));
+		assertEquals(1, dataStore.getPartialVodNumber("concert"));
+	}
+
+	@Test
+	public void testUpdateAndDeleteKeepIndexes() throws Exception {
+		saveBroadcast("id1", "alpha", 1, BroadcastStatus.UNPUBLISHED);
+		saveBroadcast("id2", "beta", 2, BroadcastStatus.UNPUBLISHED);
+		saveBroadcast("id3", "gamma", 3, BroadcastStatus.UNPUBLISHED);
+
+		//name update moves the record in the name index and the search index
+		Broadcast update = new Broadcast();
+		update.setName("zeta");
+		dataStore.updateBroadcastFields("id1", update);
+		assertEquals(Arrays.asList("id2", "id3", "id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "name", "asc", null)));
+		assertTrue(dataStore.getBroadcastList(0, 10, null, null, null, "alpha").isEmpty());
+		assertEquals(Arrays.asList("id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, null, null, "zeta")));
+
+		//status update moves the record in the status index
+		dataStore.updateStatus("id3", BroadcastStatus.LIVE_NOW);
+		assertEquals("id3", dataStore.getBroadcastList(0, 10, null, "status", "asc", null).get(0).getStreamId());
+
+		//saving again keeps the insertion order and does not duplicate the record
+		saveBroadcast("id2", "beta", 2, BroadcastStatus.UNPUBLISHED);
+		assertEquals(Arrays.asList("id1", "id2", "id3"), broadcastIds(dataStore.getBroadcastList(0, 10, null, null, null, null)));
+
+		//deleted record is removed from all indexes
+		assertTrue(dataStore.delete("id2"));
+		assertNull(dataStore.get("id2"));
+		assertEquals(2, dataStore.getBroadcastCount());
+		assertEquals(Arrays.asList("id1", "id3"), broadcastIds(dataStore.getBroadcastList(0, 10, null, null, null, null)));
+		assertEquals(Arrays.asList("id3", "id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "name", "asc", null)));
+		assertEquals(Arrays.asList("id3", "id1"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "date", "desc", null)));
+		assertEquals(Arrays.asList("id1", "id3"), broadcastIds(dataStore.getBroadcastList(0, 10, null, "status", "desc", null)));
+		assertTrue(dataStore.getBroadcastList(0, 10, null, null, null, "beta").isEmpty());
+		assertEquals(0, dataStore.getPartialBroadcastNumber("beta"));
+
+		addVoD("vod1", "first", "s1", 1);
+		addVoD("vod2", "second", "s1", 2);
+		assertTrue(dataStore.deleteVod("vod1"));
+		assertEquals(Arrays.asList("vod2"), vodIds(dataStore.getVodList(0, 10, "name", "asc", null, null)));
+		assertEquals(Arrays.asList("vod2"), vodIds(dataStore.getVodList(0, 10, "date", "desc", null, null)));
+		assertTrue(dataStore.getVodList(0, 10, null, null, null, "first").isEmpty());
+		assertEquals(1, dataStore.getTotalVodNumber());
+	}
+}
@@ -0,0 +1,51 @@
+package io.antmedia.datastore.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class TestNGramIndex {
+
+	@Test
+	public void testSearchShorterAndLongerThanGramLength() {
+		NGramIndex index = new NGramIndex();
+		index.put("1", "Stream One", null);
+		index.put("2", "another", "streamTwo");
+		index.put("3", "ab");
+
+		//shorter than gram length
+		assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), index.search("A"));
+		assertEquals(new HashSet<>(Arrays.asList("3")), index.search("AB"));
+
+		//exactly the gram length
+		assertEquals(new HashSet<>(Arrays.asList("1", "2")), index.search("str"));
+
+		//longer than gram length, all grams should be in the same field
+		assertEquals(new HashSet<>(Arrays.asList("2")), index.search("StreamT"));
+		assertEquals(new HashSet<>(Arrays.asList("1")), index.search("m on"));
+		assertTrue(index.search("streamthree").isEmpty());
+		assertTrue(index.search("xyz").isEmpty());
+
+		//record shorter than gram length is not found by longer searches
+		assertTrue(index.search("abc").isEmpty());
+	}
+
+	@Test
+	public void testPutAgainAndRemove() {
+		NGramIndex index = new NGramIndex();
+		index.put("1", "first name");
+		index.put("1", "second name");
+		assertTrue(index.search("first").isEmpty());
+		assertEquals(new HashSet<>(Arrays.asList("1")), index.search("second"));
+		assertEquals(1, index.size());
+
+		index.remove("1");
+		assertTrue(index.search("second").isEmpty());
+		assertTrue(index.search("na").isEmpty());
+		assertEquals(0, index.size());
+	}
+}
@@ -0,0 +1,139 @@
+package io.antmedia.datastore.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestSortedIndex {
+
+	private static List<String> ids(SortedIndex<?> index, boolean descending) {
+		return ids(index, descending, 0);
+	}
+
+	private static List<String> ids(SortedIndex<?> index, boolean descending, int position) {
+		List<String> ids = new ArrayList<>();
+		Iterator<String> iterator = index.iterator(descending, position);
+		while (iterator.hasNext()) {
+			ids.add(iterator.next());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testPutMoveAndRemove() {
+		SortedIndex<Long> index = new SortedIndex<>();
+		index.put("c", 3L);
+		index.put("a", 1L);
+		index.put("b", 2L);
+		assertEquals(Arrays.asList("a", "b", "c"), ids(index, false));
+		assertEquals(Arrays.asList("c", "b", "a"), ids(index, true));
+
+		//putting again moves the record
+		index.put("a", 4L);
+		assertEquals(Arrays.asList("b", "c", "a"), ids(index, false));
+		assertEquals(3, index.size());
+
+		index.remove("c");
+		index.remove("unknown");
+		assertEquals(Arrays.asList("b", "a"), ids(index, false));
+		assertEquals(2, index.size());
+
+		index.clear();
+		assertEquals(0, index.size());
+		assertEquals(new ArrayList<String>(), ids(index, false));
+	}
+
+	@Test
+	public void testTiesAreOrderedById() {
+		SortedIndex<String> index = new SortedIndex<>();
+		index.put("id2", "same");
+		index.put("id3", "same");
+		index.put("id1", "same");
+		assertEquals(Arrays.asList("id1", "id2", "id3"), ids(index, false));
+
+		//removing one of the equal keys removes only that record
+		index.remove("id2");
+		assertEquals(Arrays.asList("id1", "id3"), ids(index, false));
+	}
+
+	@Test
+	public void testSort() {
+		SortedIndex<Long> index = new SortedIndex<>();
+		index.put("a", 30L);
+		index.put("b", 10L);
+		index.put("c", 20L);
+
+		List<String> ids = new ArrayList<>(Arrays.asList("a", "x", "b", "c"));
+		index.sort(ids, false);
+		assertEquals(Arrays.asList("b", "c", "a", "x"), ids);
+
+		//ids that are not in the index stay at the end in descending order as well
+		index.sort(ids, true);
+		assertEquals(Arrays.asList("a", "c", "b", "x"), ids);
+	}
+
+	@Test
+	public void testIteratorFromPosition() {
+		SortedIndex<Long> index = new SortedIndex<>();
+		for (int i = 0; i < 10; i++) {
+			index.put("id" + i, (long) i);
+		}
+		assertEquals(Arrays.asList("id3", "id4", "id5", "id6", "id7", "id8", "id9"), ids(index, false, 3));
+		assertEquals(Arrays.asList("id6", "id5", "id4", "id3", "id2", "id1", "id0"), ids(index, true, 3));
+		assertEquals(Arrays.asList("id9"), ids(index, false, 9));
+		assertEquals(Arrays.asList("id0"), ids(index, true, 9));
+		assertEquals(new ArrayList<String>(), ids(index, false, 10));
+		assertEquals(new ArrayList<String>(), ids(index, true, 100));
+	}
+
+	@Test
+	public void testRandomOperations() {
+		SortedIndex<Integer> index = new SortedIndex<>();
+		List<Integer> keys = new ArrayList<>();
+		Random random = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			int id = random.nextInt(500);
+			if (random.nextInt(4) == 0) {
+				index.remove(String.format("%03d", id));
+				keys.set(id, null);
+			}
+			else {
+				int key = random.nextInt(100);
+				index.put(String.format("%03d", id), key);
+				while (keys.size() <= id) {
+					keys.add(null);
+				}
+				keys.set(id, key);
+			}
+			while (keys.size() < 500) {
+				keys.add(null);
+			}
+		}
+
+		List<String> expected = new ArrayList<>();
+		for (int id = 0; id < keys.size(); id++) {
+			if (keys.get(id) != null) {
+				expected.add(String.format("%03d", id));
+			}
+		}
+		expected.sort((id1, id2) -> {
+			int result = keys.get(Integer.parseInt(id1)).compareTo(keys.get(Integer.parseInt(id2)));
+			return result != 0 ? result : id1.compareTo(id2);
+		});
+		assertEquals(expected.size(), index.size());
+		assertEquals(expected, ids(index, false));
+		for (int position : new int[] {1, 17, expected.size() / 2, expected.size() - 1}) {
+			assertEquals(expected.subList(position, expected.size()), ids(index, false, position));
+			List<String> reversed = new ArrayList<>(expected);
+			Collections.reverse(reversed);
+			assertEquals(reversed.subList(position, reversed.size()), ids(index, true, position));
+		}
+	}
+}
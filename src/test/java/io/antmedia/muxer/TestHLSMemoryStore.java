@@ -0,0 +1,174 @@
+package io.antmedia.muxer;
+
+import static org.bytedeco.ffmpeg.global.avcodec.AV_CODEC_ID_H264;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.api.scope.IScope;
+
+import io.vertx.core.Vertx;
+
+public class TestHLSMemoryStore {
+
+	private Vertx vertx;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		vertx = Vertx.vertx();
+		directory = Files.createTempDirectory("hls-memory").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		vertx.close();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testFinalUrl() {
+		assertEquals("/streams/test.m3u8", HLSMemoryStore.getFinalUrl("/streams/test.m3u8.tmp"));
+		assertEquals("/streams/test0001.ts", HLSMemoryStore.getFinalUrl("/streams/test0001.ts.tmp"));
+		assertEquals("/streams/test0001.ts", HLSMemoryStore.getFinalUrl("/streams/test0001.ts"));
+		assertEquals("/streams/test.m3u8", HLSMemoryStore.getFinalUrl(HLSMemoryStore.MEMORY_URL_PREFIX + "/streams/test.m3u8"));
+		assertEquals("/streams/test0001.ts", HLSMemoryStore.getFinalUrl(HLSMemoryStore.MEMORY_URL_PREFIX + "/streams/test0001.ts"));
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		String playlistPath = new File(directory, "stream.m3u8").getAbsolutePath();
+		HLSMemoryStore store = new HLSMemoryStore(playlistPath, 3, false, false);
+		//a buffer for each kept segment, one for the segment being written and two for the playlist
+		assertEquals(6, store.getAllocationCount());
+
+		byte[] content = new byte[1000];
+		for (int i = 0; i < 20; i++) {
+			content[0] = (byte) i;
+			writeFile(store, new File(directory, "stream" + i + ".ts").getAbsolutePath(), content);
+			writeFile(store, HLSMemoryStore.MEMORY_URL_PREFIX + playlistPath, ("#EXTM3U " + i).getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals(6, store.getAllocationCount());
+		assertEquals(3, store.getSegmentCount());
+		assertNull(store.getSegment("stream16.ts"));
+		for (int i = 17; i < 20; i++) {
+			ByteBuffer segment = store.getSegment("stream" + i + ".ts");
+			assertEquals(content.length, segment.remaining());
+			assertEquals(i, segment.get(0));
+		}
+		ByteBuffer playlist = store.getPlaylist();
+		byte[] playlistBytes = new byte[playlist.remaining()];
+		playlist.get(playlistBytes);
+		assertEquals("#EXTM3U 19", new String(playlistBytes, StandardCharsets.UTF_8));
+
+		//a segment larger than the buffers replaces one of them
+		byte[] largeContent = new byte[300 * 1024];
+		writeFile(store, new File(directory, "stream20.ts").getAbsolutePath(), largeContent);
+		assertEquals(7, store.getAllocationCount());
+		assertEquals(largeContent.length, store.getSegment("stream20.ts").remaining());
+		for (int i = 21; i < 30; i++) {
+			writeFile(store, new File(directory, "stream" + i + ".ts").getAbsolutePath(), largeContent);
+		}
+		assertEquals(3, store.getSegmentCount());
+		assertTrue(store.getAllocationCount() <= 10);
+		store.release();
+	}
+
+	private static void writeFile(HLSMemoryStore store, String url, byte[] content) {
+		HLSMemoryStore.SegmentWriter writer = store.openWriter(url);
+		//muxer writes the file in chunks
+		for (int offset = 0; offset < content.length; offset += 512) {
+			writer.write(ByteBuffer.wrap(content, offset, Math.min(512, content.length - offset)));
+		}
+		writer.close();
+	}
+
+	@Test
+	public void testMemoryOutput() {
+		testMemoryOutput(null);
+	}
+
+	@Test
+	public void testMemoryOutputWithTempFiles() {
+		testMemoryOutput("temp_file");
+	}
+
+	private void testMemoryOutput(String hlsFlags) {
+		HLSMuxer hlsMuxer = new HLSMuxer(vertx, null, "5", "1", null, hlsFlags, null, null) {
+			@Override
+			public File getResourceFile(IScope scope, String name, String extension, String subFolder) {
+				return new File(directory, name + extension);
+			}
+		};
+		hlsMuxer.setMemoryOutputEnabled(true, false);
+		hlsMuxer.init(null, "stream", 0, null);
+
+		AVRational timebase = new AVRational();
+		timebase.num(1).den(1000);
+		assertTrue(hlsMuxer.addVideoStream(640, 360, timebase, AV_CODEC_ID_H264, 0, true, null));
+		assertTrue(hlsMuxer.prepareIO());
+
+		HLSMemoryStore store = hlsMuxer.getMemoryStore();
+		assertNotNull(store);
+		String playlistPath = new File(directory, "stream.m3u8").getAbsolutePath();
+		assertSame(store, HLSMemoryStore.getStore(playlistPath));
+
+		//6 seconds of 25 fps video with a key frame every second
+		byte[] frame = new byte[1024];
+		frame[3] = 1;
+		for (int i = 0; i < 150; i++) {
+			boolean keyFrame = i % 25 == 0;
+			frame[4] = (byte) (keyFrame ? 0x65 : 0x41);
+			long timestamp = i * 40L;
+			hlsMuxer.writeVideoBuffer(ByteBuffer.wrap(frame), timestamp, 0, 0, keyFrame, 0, timestamp);
+		}
+
+		ByteBuffer playlistBuffer = store.getPlaylist();
+		assertNotNull(playlistBuffer);
+		byte[] playlistBytes = new byte[playlistBuffer.remaining()];
+		playlistBuffer.get(playlistBytes);
+		String playlist = new String(playlistBytes, StandardCharsets.UTF_8);
+		assertTrue(playlist.startsWith("#EXTM3U"));
+
+		int segmentCount = 0;
+		for (String line : playlist.split("\n")) {
+			if (line.endsWith(".ts")) {
+				ByteBuffer segment = store.getSegment(line.trim());
+				assertNotNull(line, segment);
+				assertTrue(segment.remaining() > 0);
+				segmentCount++;
+			}
+		}
+		assertTrue(segmentCount > 0);
+		assertTrue(store.getSegmentCount() >= segmentCount);
+
+		//temporary names are not kept and nothing is written to disk
+		assertNull(store.getSegment("stream.m3u8.tmp"));
+		assertFalse(new File(playlistPath).exists());
+		assertEquals(0, directory.listFiles().length);
+
+		hlsMuxer.writeTrailer();
+		assertNotNull(store.getPlaylist());
+		store.release();
+		assertNull(HLSMemoryStore.getStore(playlistPath));
+	}
+}
@@ -0,0 +1,156 @@
+package io.antmedia.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestAsyncDispatcher {
+
+	private static class TestDispatcher extends AsyncDispatcher<Integer> {
+
+		private final ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<>();
+		private final List<Integer> dispatched = new ArrayList<>();
+		private final AtomicInteger recycledCount = new AtomicInteger();
+		private final AtomicInteger freedCount = new AtomicInteger();
+		private final long dispatchTimeMs;
+		private final CountDownLatch firstDispatch = new CountDownLatch(1);
+		private final CountDownLatch trailer = new CountDownLatch(1);
+		private volatile boolean trailerAfterItems = false;
+		private int expectedCount;
+
+		TestDispatcher(long dispatchTimeMs) {
+			super("stream");
+			this.dispatchTimeMs = dispatchTimeMs;
+		}
+
+		void add(int item) {
+			queue.add(item);
+			expectedCount++;
+			schedule();
+		}
+
+		@Override
+		protected Integer poll() {
+			return queue.poll();
+		}
+
+		@Override
+		protected boolean hasPending() {
+			return !queue.isEmpty();
+		}
+
+		@Override
+		protected void dispatch(Integer item) {
+			firstDispatch.countDown();
+			if (dispatchTimeMs > 0) {
+				try {
+					Thread.sleep(dispatchTimeMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			synchronized (dispatched) {
+				dispatched.add(item);
+			}
+		}
+
+		@Override
+		protected void dispatchTrailer() {
+			synchronized (dispatched) {
+				trailerAfterItems = dispatched.size() == expectedCount;
+			}
+			trailer.countDown();
+		}
+
+		@Override
+		protected void recycle(Integer item) {
+			recycledCount.incrementAndGet();
+		}
+
+		@Override
+		protected void freeAll() {
+			while (queue.poll() != null) {
+				freedCount.incrementAndGet();
+			}
+		}
+
+		List<Integer> getDispatched() {
+			synchronized (dispatched) {
+				return new ArrayList<>(dispatched);
+			}
+		}
+	}
+
+	@Test
+	public void testItemsAreDispatchedInOrder() throws Exception {
+		TestDispatcher dispatcher = new TestDispatcher(0);
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			dispatcher.add(i);
+			expected.add(i);
+		}
+		dispatcher.writeTrailer();
+
+		assertTrue(dispatcher.trailer.await(5, TimeUnit.SECONDS));
+		assertTrue(dispatcher.trailerAfterItems);
+		assertEquals(expected, dispatcher.getDispatched());
+		assertEquals(100, dispatcher.recycledCount.get());
+		dispatcher.close();
+	}
+
+	@Test
+	public void testSlowDispatcherDoesNotStarveOthers() throws Exception {
+		//keep all workers busy with slow dispatchers that have many pending items
+		List<TestDispatcher> slowDispatchers = new ArrayList<>();
+		for (int i = 0; i < Runtime.getRuntime().availableProcessors(); i++) {
+			TestDispatcher slowDispatcher = new TestDispatcher(20);
+			for (int j = 0; j < 200; j++) {
+				slowDispatcher.add(j);
+			}
+			slowDispatchers.add(slowDispatcher);
+		}
+		for (TestDispatcher slowDispatcher : slowDispatchers) {
+			assertTrue(slowDispatcher.firstDispatch.await(5, TimeUnit.SECONDS));
+		}
+
+		//a worker is released after a batch of a slow dispatcher instead of after its 200 items
+		TestDispatcher dispatcher = new TestDispatcher(0);
+		dispatcher.add(1);
+		assertTrue(dispatcher.firstDispatch.await(2, TimeUnit.SECONDS));
+
+		for (TestDispatcher slowDispatcher : slowDispatchers) {
+			assertTrue(slowDispatcher.getDispatched().size() < 200);
+			slowDispatcher.close();
+		}
+		dispatcher.close();
+	}
+
+	@Test
+	public void testNothingIsDispatchedAfterClose() throws Exception {
+		TestDispatcher dispatcher = new TestDispatcher(20);
+		for (int i = 0; i < 50; i++) {
+			dispatcher.add(i);
+		}
+		assertTrue(dispatcher.firstDispatch.await(5, TimeUnit.SECONDS));
+		dispatcher.close();
+		int dispatchedCount = dispatcher.getDispatched().size();
+
+		dispatcher.add(50);
+		dispatcher.writeTrailer();
+		Thread.sleep(200);
+
+		assertTrue(dispatcher.isClosed());
+		assertEquals(dispatchedCount, dispatcher.getDispatched().size());
+		assertEquals(1, dispatcher.trailer.getCount());
+		//every item is either dispatched, skipped after close or freed
+		assertEquals(51, dispatcher.recycledCount.get() + dispatcher.freedCount.get() + dispatcher.queue.size());
+	}
+}
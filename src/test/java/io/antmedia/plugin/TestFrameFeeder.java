@@ -0,0 +1,161 @@
+package io.antmedia.plugin;
+
+import static org.bytedeco.ffmpeg.global.avutil.AV_PIX_FMT_YUV420P;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_alloc;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_free;
+import static org.bytedeco.ffmpeg.global.avutil.av_frame_get_buffer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.ffmpeg.avutil.AVFrame;
+import org.junit.Test;
+
+import io.antmedia.plugin.FrameFeeder.ExecutionMode;
+import io.antmedia.plugin.FrameFeeder.FrameListenerStage;
+import io.antmedia.plugin.api.IFrameListener;
+import io.antmedia.plugin.api.StreamParametersInfo;
+
+public class TestFrameFeeder {
+
+	private static class TestFrameListener implements IFrameListener {
+
+		private final List<Long> addresses = new CopyOnWriteArrayList<>();
+		private final List<Long> timestamps = new CopyOnWriteArrayList<>();
+		private final CountDownLatch trailer = new CountDownLatch(1);
+		private volatile CountDownLatch frameLatch = new CountDownLatch(1);
+		private volatile CountDownLatch blockLatch = new CountDownLatch(0);
+
+		@Override
+		public AVFrame onAudioFrame(String streamId, AVFrame audioFrame) {
+			return audioFrame;
+		}
+
+		@Override
+		public AVFrame onVideoFrame(String streamId, AVFrame videoFrame) {
+			try {
+				blockLatch.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			addresses.add(videoFrame.address());
+			timestamps.add(videoFrame.pts());
+			frameLatch.countDown();
+			return videoFrame;
+		}
+
+		@Override
+		public void writeTrailer() {
+			trailer.countDown();
+		}
+
+		@Override
+		public void setVideoStreamInfo(String streamId, StreamParametersInfo videoStreamInfo) {
+		}
+
+		@Override
+		public void setAudioStreamInfo(String streamId, StreamParametersInfo audioStreamInfo) {
+		}
+
+		@Override
+		public void start() {
+		}
+	}
+
+	private static AVFrame allocateFrame() {
+		AVFrame frame = av_frame_alloc();
+		frame.format(AV_PIX_FMT_YUV420P);
+		frame.width(64);
+		frame.height(64);
+		assertEquals(0, av_frame_get_buffer(frame, 0));
+		return frame;
+	}
+
+	@Test
+	public void testInlineStage() {
+		TestFrameListener listener = new TestFrameListener();
+		FrameFeeder feeder = new FrameFeeder("stream");
+		feeder.addListener(listener);
+
+		AVFrame frame = allocateFrame();
+		frame.pts(10);
+		assertSame(frame, feeder.onVideoFrame(frame));
+		assertEquals(1, listener.addresses.size());
+		assertEquals(frame.address(), (long) listener.addresses.get(0));
+		assertEquals(1, feeder.getListenerStages().get(0).getLatencyHistogram().getCount());
+
+		feeder.writeTrailer();
+		assertEquals(0, listener.trailer.getCount());
+		av_frame_free(frame);
+	}
+
+	@Test
+	public void testAsyncStageCopiesAndReusesFrames() throws Exception {
+		TestFrameListener listener = new TestFrameListener();
+		FrameFeeder feeder = new FrameFeeder("stream");
+		feeder.addListener(listener, ExecutionMode.ASYNC_COPY, 1);
+		FrameListenerStage stage = feeder.getListenerStages().get(0);
+
+		AVFrame frame = allocateFrame();
+		for (int i = 0; i < 5; i++) {
+			listener.frameLatch = new CountDownLatch(1);
+			frame.pts(i);
+			assertSame(frame, feeder.onVideoFrame(frame));
+			assertTrue(listener.frameLatch.await(5, TimeUnit.SECONDS));
+		}
+
+		//listener gets a copy and the copies are taken from the pool
+		assertEquals(5, listener.timestamps.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, (long) listener.timestamps.get(i));
+			assertNotEquals(frame.address(), (long) listener.addresses.get(i));
+		}
+		assertTrue(listener.addresses.stream().distinct().count() <= 2);
+		assertEquals(5, stage.getLatencyHistogram().getCount());
+		assertEquals(0, stage.getDroppedFrameCount());
+
+		feeder.writeTrailer();
+		assertTrue(listener.trailer.await(5, TimeUnit.SECONDS));
+
+		feeder.removeFrameListener(listener);
+		assertTrue(stage.isClosed());
+		assertTrue(feeder.getListenerStages().isEmpty());
+		av_frame_free(frame);
+	}
+
+	@Test
+	public void testAsyncStageDropsFramesAndStopsAfterClose() throws Exception {
+		TestFrameListener listener = new TestFrameListener();
+		listener.blockLatch = new CountDownLatch(1);
+		FrameFeeder feeder = new FrameFeeder("stream");
+		feeder.addListener(listener, ExecutionMode.ASYNC_SAMPLED, 2);
+		FrameListenerStage stage = feeder.getListenerStages().get(0);
+
+		AVFrame frame = allocateFrame();
+		//listener is blocked with the first frame, later sampled frames replace each other
+		for (int i = 0; i < 10; i++) {
+			frame.pts(i);
+			feeder.onVideoFrame(frame);
+		}
+		listener.blockLatch.countDown();
+		assertTrue(listener.frameLatch.await(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		assertTrue(stage.getDroppedFrameCount() > 0);
+		assertEquals(8, (long) listener.timestamps.get(listener.timestamps.size() - 1));
+
+		feeder.removeFrameListener(listener);
+		int dispatchedCount = listener.timestamps.size();
+		stage.onVideoFrame(frame);
+		stage.writeTrailer();
+		Thread.sleep(200);
+		assertEquals(dispatchedCount, listener.timestamps.size());
+		assertEquals(1, listener.trailer.getCount());
+		av_frame_free(frame);
+	}
+}
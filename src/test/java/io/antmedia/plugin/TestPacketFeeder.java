@@ -0,0 +1,147 @@
+package io.antmedia.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.junit.Test;
+
+import io.antmedia.plugin.PacketFeeder.AsyncPacketListener;
+import io.antmedia.plugin.api.IPacketListener;
+import io.antmedia.plugin.api.StreamParametersInfo;
+
+public class TestPacketFeeder {
+
+	private static class TestPacketListener implements IPacketListener {
+
+		private final List<Long> timestamps = new CopyOnWriteArrayList<>();
+		private final List<Byte> firstBytes = new CopyOnWriteArrayList<>();
+		private final List<Thread> threads = new CopyOnWriteArrayList<>();
+		private final CountDownLatch trailer = new CountDownLatch(1);
+		private volatile CountDownLatch packetLatch = new CountDownLatch(1);
+		private volatile long dispatchTimeMs = 0;
+
+		@Override
+		public AVPacket onPacket(String streamId, AVPacket packet) {
+			threads.add(Thread.currentThread());
+			timestamps.add(packet.pts());
+			firstBytes.add(packet.data().get(0));
+			if (dispatchTimeMs > 0) {
+				try {
+					Thread.sleep(dispatchTimeMs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			packetLatch.countDown();
+			return packet;
+		}
+
+		@Override
+		public void writeTrailer() {
+			trailer.countDown();
+		}
+
+		@Override
+		public void setVideoStreamInfo(String streamId, StreamParametersInfo videoStreamInfo) {
+		}
+
+		@Override
+		public void setAudioStreamInfo(String streamId, StreamParametersInfo audioStreamInfo) {
+		}
+	}
+
+	private static void writeVideo(PacketFeeder feeder, int index) {
+		byte[] data = new byte[100];
+		data[0] = (byte) index;
+		feeder.writeVideoBuffer(ByteBuffer.wrap(data), index, 0, 0, index % 25 == 0, 0, index);
+	}
+
+	@Test
+	public void testAsyncListener() throws Exception {
+		TestPacketListener listener = new TestPacketListener();
+		listener.packetLatch = new CountDownLatch(50);
+		PacketFeeder feeder = new PacketFeeder("stream");
+		feeder.addListener(listener, true);
+
+		for (int i = 0; i < 50; i++) {
+			writeVideo(feeder, i);
+		}
+		assertTrue(listener.packetLatch.await(5, TimeUnit.SECONDS));
+		feeder.writeTrailer();
+		assertTrue(listener.trailer.await(5, TimeUnit.SECONDS));
+
+		//listener is called in another thread in order with the copies of the packets
+		assertEquals(50, listener.timestamps.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals(i, (long) listener.timestamps.get(i));
+			assertEquals((byte) i, (byte) listener.firstBytes.get(i));
+			assertNotEquals(Thread.currentThread(), listener.threads.get(i));
+		}
+		feeder.removeListener(listener);
+	}
+
+	@Test
+	public void testRemoveAsyncListenerMidStream() throws Exception {
+		TestPacketListener listener = new TestPacketListener();
+		listener.dispatchTimeMs = 10;
+		PacketFeeder feeder = new PacketFeeder("stream");
+		feeder.addListener(listener, true);
+
+		for (int i = 0; i < 50; i++) {
+			writeVideo(feeder, i);
+		}
+		assertTrue(listener.packetLatch.await(5, TimeUnit.SECONDS));
+
+		//queued packets are freed instead of being dispatched after the listener is removed
+		feeder.removeListener(listener);
+		int dispatchedCount = listener.timestamps.size();
+		assertTrue(dispatchedCount < 50);
+
+		for (int i = 50; i < 100; i++) {
+			writeVideo(feeder, i);
+		}
+		feeder.writeTrailer();
+		Thread.sleep(300);
+
+		assertEquals(dispatchedCount, listener.timestamps.size());
+		assertEquals(1, listener.trailer.getCount());
+		for (int i = 0; i < dispatchedCount; i++) {
+			assertEquals(i, (long) listener.timestamps.get(i));
+		}
+	}
+
+	@Test
+	public void testClosedAsyncListenerDoesNotDispatch() throws Exception {
+		TestPacketListener listener = new TestPacketListener();
+		listener.dispatchTimeMs = 20;
+		AsyncPacketListener asyncListener = new AsyncPacketListener("stream", listener, 10);
+		PacketFeeder feeder = new PacketFeeder("stream");
+		feeder.addListener(asyncListener);
+
+		//queue is bounded, so packets are dropped while the listener is busy
+		for (int i = 0; i < 30; i++) {
+			writeVideo(feeder, i);
+		}
+		assertTrue(asyncListener.getDroppedPacketCount() > 0);
+		assertTrue(asyncListener.getQueueSize() <= 10);
+
+		asyncListener.close();
+		int dispatchedCount = listener.timestamps.size();
+		assertEquals(0, asyncListener.getQueueSize());
+
+		writeVideo(feeder, 30);
+		asyncListener.writeTrailer();
+		Thread.sleep(200);
+		assertEquals(dispatchedCount, listener.timestamps.size());
+		assertEquals(0, asyncListener.getQueueSize());
+		assertEquals(1, listener.trailer.getCount());
+	}
+}
@@ -0,0 +1,133 @@
+package io.antmedia.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		assertEquals(0, histogram.getMean(), 0);
+	}
+
+	@Test
+	public void testStatistics() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-5);
+
+		assertEquals(101, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(5050.0 / 101, histogram.getMean(), 0.0001);
+		assertEquals(0, histogram.getValueAtPercentile(0));
+		assertEquals(100, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getSum());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+	@Test
+	public void testBucketBoundaries() {
+		//values less than the sub bucket count have their own buckets
+		for (int i = 0; i < LatencyHistogram.SUB_BUCKET_COUNT; i++) {
+			assertEquals(i, LatencyHistogram.getBucketIndex(i));
+			assertEquals(i, LatencyHistogram.getBucketLowerBound(i));
+		}
+		//then each power of two range is split into sub bucket count buckets
+		assertEquals(8, LatencyHistogram.getBucketIndex(8));
+		assertEquals(15, LatencyHistogram.getBucketIndex(15));
+		assertEquals(16, LatencyHistogram.getBucketIndex(16));
+		assertEquals(16, LatencyHistogram.getBucketIndex(17));
+		assertEquals(17, LatencyHistogram.getBucketIndex(18));
+		assertEquals(960, LatencyHistogram.getBucketLowerBound(LatencyHistogram.getBucketIndex(1000)));
+		assertEquals(1024, LatencyHistogram.getBucketLowerBound(LatencyHistogram.getBucketIndex(1000) + 1));
+
+		//lower bound of a bucket and the value before the next lower bound are in the same bucket
+		int lastIndex = LatencyHistogram.getBucketIndex(Long.MAX_VALUE);
+		for (int i = 0; i < lastIndex; i++) {
+			long lowerBound = LatencyHistogram.getBucketLowerBound(i);
+			long nextLowerBound = LatencyHistogram.getBucketLowerBound(i + 1);
+			assertTrue(i + ": " + lowerBound, nextLowerBound > lowerBound);
+			assertEquals(i, LatencyHistogram.getBucketIndex(lowerBound));
+			assertEquals(i, LatencyHistogram.getBucketIndex(nextLowerBound - 1));
+		}
+		assertEquals(lastIndex, LatencyHistogram.getBucketIndex(LatencyHistogram.getBucketLowerBound(lastIndex)));
+	}
+
+	@Test
+	public void testPercentileAtBucketBoundaries() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(7);
+		histogram.record(8);
+		//7 and 8 are in different buckets
+		assertEquals(7, histogram.getValueAtPercentile(50));
+		assertEquals(8, histogram.getValueAtPercentile(50.1));
+		assertEquals(8, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		histogram.record(16);
+		histogram.record(17);
+		histogram.record(18);
+		//16 and 17 are in the same bucket, so the upper bound of the bucket is returned
+		assertEquals(17, histogram.getValueAtPercentile(1));
+		assertEquals(17, histogram.getValueAtPercentile(66));
+		//upper bound of the last bucket is limited to the max value
+		assertEquals(18, histogram.getValueAtPercentile(67));
+		assertEquals(18, histogram.getValueAtPercentile(100));
+
+		histogram.reset();
+		histogram.record(1000);
+		histogram.record(2000);
+		assertEquals(1023, histogram.getValueAtPercentile(50));
+		assertEquals(2000, histogram.getValueAtPercentile(99));
+		//percentile is limited to 0 - 100
+		assertEquals(1023, histogram.getValueAtPercentile(-1));
+		assertEquals(2000, histogram.getValueAtPercentile(150));
+	}
+
+	@Test
+	public void testPercentileError() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 100000; i++) {
+			histogram.record(i);
+		}
+		for (double percentile : new double[] {1, 10, 50, 90, 99, 99.9}) {
+			long expected = (long) Math.ceil(100000 * percentile / 100) - 1;
+			long value = histogram.getValueAtPercentile(percentile);
+			//value is the upper bound of the bucket, so it's not less than the exact value
+			assertTrue(percentile + ": " + value, value >= expected);
+			assertTrue(percentile + ": " + value, value <= expected + expected / LatencyHistogram.SUB_BUCKET_COUNT);
+		}
+	}
+
+	@Test
+	public void testConcurrentRecord() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 10000; j++) {
+					histogram.record(j);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(40000, histogram.getCount());
+		assertEquals(4L * 9999 * 10000 / 2, histogram.getSum());
+		assertEquals(9999, histogram.getMax());
+	}
+}
@@ -0,0 +1,149 @@
+package io.antmedia.statistic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+import io.antmedia.statistic.WebRTCStatsEngine.Counter;
+import io.antmedia.statistic.WebRTCStatsEngine.Stage;
+import io.antmedia.statistic.WebRTCStatsEngine.StreamStats;
+import io.antmedia.statistic.WebRTCStatsEngine.ViewerStats;
+import io.antmedia.statistic.type.RTMPToWebRTCStats;
+import io.antmedia.statistic.type.WebRTCAudioSendStats;
+import io.antmedia.statistic.type.WebRTCVideoSendStats;
+
+public class TestWebRTCStatsEngine {
+
+	@Test
+	public void testStatsAreCreatedOnce() {
+		WebRTCStatsEngine engine = new WebRTCStatsEngine();
+		assertNull(engine.findStreamStats("stream1"));
+
+		StreamStats streamStats = engine.getStreamStats("stream1");
+		assertSame(streamStats, engine.getStreamStats("stream1"));
+		assertSame(streamStats, engine.findStreamStats("stream1"));
+		assertSame(engine.getViewerStats("stream1", "viewer1"), streamStats.getViewerStats("viewer1"));
+		assertNotSame(streamStats.getViewerStats("viewer1"), streamStats.getViewerStats("viewer2"));
+		assertEquals(2, streamStats.getViewerCount());
+
+		//removing a viewer of an unknown stream does not create the stream
+		engine.removeViewer("stream2", "viewer1");
+		assertNull(engine.findStreamStats("stream2"));
+		assertEquals(1, engine.getStreamCount());
+
+		engine.removeStream("stream1");
+		assertEquals(0, engine.getStreamCount());
+	}
+
+	@Test
+	public void testTotalsAfterRemoveViewer() {
+		WebRTCStatsEngine engine = new WebRTCStatsEngine();
+		ViewerStats viewer1 = engine.getViewerStats("stream1", "viewer1");
+		ViewerStats viewer2 = engine.getViewerStats("stream1", "viewer2");
+		viewer1.add(Counter.VIDEO_BYTES_SENT, 1000);
+		viewer1.increment(Counter.VIDEO_PACKETS_SENT);
+		viewer2.add(Counter.VIDEO_BYTES_SENT, 500);
+		viewer2.increment(Counter.VIDEO_PACKETS_SENT);
+		viewer2.increment(Counter.VIDEO_PACKETS_SENT);
+
+		StreamStats streamStats = engine.getStreamStats("stream1");
+		assertEquals(1500, streamStats.getTotal(Counter.VIDEO_BYTES_SENT));
+		assertEquals(3, streamStats.getTotal(Counter.VIDEO_PACKETS_SENT));
+
+		//totals do not decrease when a viewer leaves
+		engine.removeViewer("stream1", "viewer1");
+		assertEquals(1, streamStats.getViewerCount());
+		assertEquals(1500, streamStats.getTotal(Counter.VIDEO_BYTES_SENT));
+		assertEquals(3, streamStats.getTotal(Counter.VIDEO_PACKETS_SENT));
+
+		//removing the same viewer again does not count it twice
+		engine.removeViewer("stream1", "viewer1");
+		assertEquals(1500, streamStats.getTotal(Counter.VIDEO_BYTES_SENT));
+
+		//a viewer joining again with the same id starts from zero
+		ViewerStats rejoined = engine.getViewerStats("stream1", "viewer1");
+		assertNotSame(viewer1, rejoined);
+		assertEquals(0, rejoined.get(Counter.VIDEO_BYTES_SENT));
+		rejoined.add(Counter.VIDEO_BYTES_SENT, 200);
+		assertEquals(1700, streamStats.getTotal(Counter.VIDEO_BYTES_SENT));
+
+		viewer2.add(Counter.VIDEO_BYTES_SENT, 100);
+		engine.removeViewer("stream1", "viewer2");
+		engine.removeViewer("stream1", "viewer1");
+		assertEquals(0, streamStats.getViewerCount());
+		assertEquals(1800, streamStats.getTotal(Counter.VIDEO_BYTES_SENT));
+		assertEquals(3, streamStats.getTotal(Counter.VIDEO_PACKETS_SENT));
+		assertEquals(0, streamStats.getTotal(Counter.AUDIO_BYTES_SENT));
+	}
+
+	@Test
+	public void testSendStats() {
+		WebRTCStatsEngine engine = new WebRTCStatsEngine();
+		ViewerStats viewer1 = engine.getViewerStats("stream1", "viewer1");
+		ViewerStats viewer2 = engine.getViewerStats("stream1", "viewer2");
+		viewer1.add(Counter.VIDEO_BYTES_SENT, 1000);
+		viewer1.add(Counter.VIDEO_PACKETS_SENT, 10);
+		viewer1.add(Counter.VIDEO_FRAMES_ENCODED, 5);
+		viewer1.increment(Counter.VIDEO_PLI_COUNT);
+		viewer1.add(Counter.AUDIO_BYTES_SENT, 300);
+		viewer1.add(Counter.AUDIO_PACKETS_SENT, 3);
+		viewer2.increment(Counter.VIDEO_FIR_COUNT);
+		viewer2.increment(Counter.VIDEO_NACK_COUNT);
+		viewer2.add(Counter.AUDIO_BYTES_SENT, 100);
+		viewer2.increment(Counter.AUDIO_PACKETS_SENT);
+
+		StreamStats streamStats = engine.getStreamStats("stream1");
+		streamStats.removeViewer("viewer1");
+
+		WebRTCVideoSendStats videoSendStats = streamStats.getVideoSendStats();
+		assertEquals(BigInteger.valueOf(1000), videoSendStats.getVideoBytesSent());
+		assertEquals(10, videoSendStats.getVideoPacketsSent());
+		assertEquals(5, videoSendStats.getVideoFramesEncoded());
+		assertEquals(1, videoSendStats.getVideoPliCount());
+		assertEquals(1, videoSendStats.getVideoFirCount());
+		assertEquals(1, videoSendStats.getVideoNackCount());
+
+		WebRTCAudioSendStats audioSendStats = streamStats.getAudioSendStats();
+		assertEquals(BigInteger.valueOf(400), audioSendStats.getAudioBytesSent());
+		assertEquals(4, audioSendStats.getAudioPacketsSent());
+	}
+
+	@Test
+	public void testRTMPToWebRTCStats() {
+		WebRTCStatsEngine engine = new WebRTCStatsEngine();
+		for (int i = 1; i <= 100; i++) {
+			engine.recordLatency("stream1", Stage.DECODE, i);
+		}
+		engine.recordLatency("stream1", Stage.ENCODE, 7);
+		engine.recordLatency("stream1", Stage.ENCODE, 8);
+		StreamStats streamStats = engine.getStreamStats("stream1");
+		streamStats.setEncoderCount(2);
+
+		RTMPToWebRTCStats stats = streamStats.getRTMPToWebRTCStats();
+		assertEquals("stream1", stats.getStreamId());
+		assertEquals(2, stats.getEncoderCount());
+		assertEquals(5050, stats.getTotalVideoDecodeTime());
+		assertEquals(100, stats.getTotalDecodedVideoFrameCount());
+		assertEquals(15, stats.getTotalVideoEncodeTime());
+		assertEquals(2, stats.getTotalEncodedVideoPacketCount());
+		assertEquals(0, stats.getTotalIngestedVideoPacketCount());
+
+		assertEquals(streamStats.getP50(Stage.DECODE), (long) stats.getLatencyPercentiles().get("DECODE.p50"));
+		assertEquals(streamStats.getP99(Stage.DECODE), (long) stats.getLatencyPercentiles().get("DECODE.p99"));
+		assertEquals(7, (long) stats.getLatencyPercentiles().get("ENCODE.p50"));
+		assertEquals(8, (long) stats.getLatencyPercentiles().get("ENCODE.p95"));
+		assertEquals(0, (long) stats.getLatencyPercentiles().get("INGEST.p99"));
+
+		//counters are kept when the latencies are reset
+		engine.getViewerStats("stream1", "viewer1").increment(Counter.VIDEO_PACKETS_SENT);
+		streamStats.resetLatencies();
+		assertEquals(0, streamStats.getLatencyHistogram(Stage.DECODE).getCount());
+		assertEquals(0, streamStats.getP99(Stage.DECODE));
+		assertEquals(1, streamStats.getTotal(Counter.VIDEO_PACKETS_SENT));
+	}
+}
@@ -0,0 +1,178 @@
+package org.red5.server.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+public class TestLiveFanout {
+
+    private int ringSize;
+
+    private LiveFanout fanout;
+
+    private final List<VideoData> published = new ArrayList<>();
+
+    private static class TestConsumer implements IPushableConsumer {
+
+        final List<Integer> timestamps = new CopyOnWriteArrayList<>();
+
+        final List<Boolean> retained = new CopyOnWriteArrayList<>();
+
+        volatile CountDownLatch blockLatch = new CountDownLatch(0);
+
+        final CountDownLatch firstMessage = new CountDownLatch(1);
+
+        volatile CountDownLatch messageLatch = new CountDownLatch(0);
+
+        @Override
+        public void pushMessage(IPipe pipe, IMessage message) {
+            VideoData body = (VideoData) ((RTMPMessage) message).getBody();
+            timestamps.add(body.getTimestamp());
+            // body is not released while it's being pushed
+            retained.add(body.getData() != null);
+            firstMessage.countDown();
+            try {
+                blockLatch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            messageLatch.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ringSize = LiveFanout.getRingSize();
+        LiveFanout.setRingSize(16);
+        fanout = new LiveFanout(null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fanout.close();
+        LiveFanout.setRingSize(ringSize);
+    }
+
+    /**
+     * Publishes a video message and releases it as the publisher does after it's pushed
+     */
+    private void publish(int timestamp, boolean keyFrame, IConsumer... consumers) {
+        VideoData body = new VideoData(IoBuffer.wrap(new byte[] { (byte) (keyFrame ? 0x17 : 0x27), 1, 0, 0, 0 }));
+        body.setTimestamp(timestamp);
+        published.add(body);
+        fanout.publish(RTMPMessage.build(body), Arrays.asList(consumers));
+        body.release();
+    }
+
+    @Test
+    public void testMessagesAreDeliveredInOrder() throws Exception {
+        TestConsumer first = new TestConsumer();
+        TestConsumer second = new TestConsumer();
+        first.messageLatch = new CountDownLatch(8);
+        second.messageLatch = new CountDownLatch(8);
+        // consumers are not behind more than half of the ring even if they start after all messages are published
+        for (int i = 0; i < 8; i++) {
+            publish(i, i == 0, first, second);
+        }
+        assertTrue(first.messageLatch.await(5, TimeUnit.SECONDS));
+        assertTrue(second.messageLatch.await(5, TimeUnit.SECONDS));
+
+        List<Integer> expected = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7);
+        assertEquals(expected, first.timestamps);
+        assertEquals(expected, second.timestamps);
+        assertTrue(first.retained.stream().allMatch(Boolean::booleanValue));
+        assertEquals(0, fanout.getSkippedMessageCount());
+    }
+
+    @Test
+    public void testSlowConsumerWithLongGop() throws Exception {
+        TestConsumer consumer = new TestConsumer();
+        consumer.blockLatch = new CountDownLatch(1);
+        publish(0, true, consumer);
+        assertTrue(consumer.firstMessage.await(5, TimeUnit.SECONDS));
+
+        // keyframe is 13 messages behind the end when the consumer catches up, which is more than half of the ring
+        for (int i = 1; i < 17; i++) {
+            publish(i, i == 4, consumer);
+        }
+        consumer.blockLatch.countDown();
+        Thread.sleep(200);
+
+        // consumer skips to the end of the ring instead of going back to the old keyframe again and again
+        assertEquals(Arrays.asList(0), consumer.timestamps);
+        assertEquals(16, fanout.getSkippedMessageCount());
+
+        // video is delivered again from the next keyframe
+        consumer.messageLatch = new CountDownLatch(2);
+        publish(17, false, consumer);
+        publish(18, true, consumer);
+        publish(19, false, consumer);
+        assertTrue(consumer.messageLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 18, 19), consumer.timestamps);
+        assertEquals(17, fanout.getSkippedMessageCount());
+    }
+
+    @Test
+    public void testSlowConsumerSkipsToRecentKeyFrame() throws Exception {
+        TestConsumer consumer = new TestConsumer();
+        consumer.blockLatch = new CountDownLatch(1);
+        publish(0, true, consumer);
+        assertTrue(consumer.firstMessage.await(5, TimeUnit.SECONDS));
+
+        for (int i = 1; i < 17; i++) {
+            publish(i, i == 12, consumer);
+        }
+        consumer.messageLatch = new CountDownLatch(6);
+        consumer.blockLatch.countDown();
+        assertTrue(consumer.messageLatch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList(0, 12, 13, 14, 15, 16), consumer.timestamps);
+        assertEquals(11, fanout.getSkippedMessageCount());
+    }
+
+    @Test
+    public void testBodiesAreReleased() throws Exception {
+        TestConsumer consumer = new TestConsumer();
+        for (int i = 0; i < 40; i++) {
+            consumer.messageLatch = new CountDownLatch(1);
+            publish(i, i % 10 == 0, consumer);
+            assertTrue(consumer.messageLatch.await(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, fanout.getSkippedMessageCount());
+        assertTrue(consumer.retained.stream().allMatch(Boolean::booleanValue));
+
+        // bodies are retained only while they are in the ring, consumer releases its reference after push returns
+        Thread.sleep(100);
+        for (int i = 0; i < 40 - 16; i++) {
+            assertNull(published.get(i).getData());
+        }
+        for (int i = 40 - 16; i < 40; i++) {
+            assertNotNull(published.get(i).getData());
+        }
+
+        fanout.close();
+        for (VideoData body : published) {
+            assertNull(body.getData());
+        }
+
+        // nothing is delivered after close
+        publish(40, true, consumer);
+        Thread.sleep(100);
+        assertEquals(40, consumer.timestamps.size());
+    }
+}
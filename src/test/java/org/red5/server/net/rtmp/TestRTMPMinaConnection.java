@@ -0,0 +1,141 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.net.rtmp.message.PacketBatch;
+
+public class TestRTMPMinaConnection {
+
+    private static final int STREAM_ID = 1;
+
+    private RTMPMinaConnection conn;
+
+    /**
+     * Messages that are passed to the session, in write order
+     */
+    private final List<Object> written = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        RTMPMinaConnection.setWriteBatchWindow(10000);
+        DummySession session = new DummySession();
+        session.getFilterChain().addLast("capture", new IoFilterAdapter() {
+            @Override
+            public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) throws Exception {
+                Object message = writeRequest.getMessage();
+                written.add(message);
+                // encoder releases the events after encoding them
+                if (message instanceof PacketBatch) {
+                    for (Packet packet : ((PacketBatch) message).getPackets()) {
+                        packet.getMessage().release();
+                    }
+                }
+                nextFilter.filterWrite(session, writeRequest);
+            }
+        });
+        conn = new RTMPMinaConnection();
+        conn.setIoSession(session);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        RTMPMinaConnection.setWriteBatchWindow(0);
+    }
+
+    private static Packet createPacket(IRTMPEvent event, int channelId) {
+        Header header = new Header();
+        header.setChannelId(channelId);
+        header.setStreamId(STREAM_ID);
+        header.setDataType(event.getDataType());
+        event.setSourceType(Constants.SOURCE_TYPE_LIVE);
+        return new Packet(header, event);
+    }
+
+    private static Packet createVideo(boolean keyFrame) {
+        return createPacket(new VideoData(IoBuffer.wrap(new byte[] { (byte) (keyFrame ? 0x17 : 0x27), 1, 0, 0, 0, 1, 2, 3 })), 6);
+    }
+
+    private static Packet createAudio() {
+        return createPacket(new AudioData(IoBuffer.wrap(new byte[] { (byte) 0xaf, 1, 1, 2, 3 })), 5);
+    }
+
+    @Test
+    public void testBatchIsWrittenInOrderOnKeyFrame() {
+        assertTrue(conn.isWriteBatchEnabled());
+        Packet audio = createAudio();
+        Packet video = createVideo(false);
+        conn.write(audio);
+        conn.write(video);
+        // packets are kept until the window elapses
+        assertTrue(written.isEmpty());
+        assertEquals(1, conn.getPendingVideoMessages(STREAM_ID));
+
+        // key frame is not delayed
+        Packet keyFrame = createVideo(true);
+        conn.write(keyFrame);
+        assertEquals(1, written.size());
+        List<Packet> packets = ((PacketBatch) written.get(0)).getPackets();
+        assertEquals(3, packets.size());
+        assertSame(audio, packets.get(0));
+        assertSame(video, packets.get(1));
+        assertSame(keyFrame, packets.get(2));
+
+        // packets of the batch are marked as sent when the batch is written
+        assertEquals(0, conn.getPendingVideoMessages(STREAM_ID));
+        assertEquals(3, conn.getWrittenMessages());
+    }
+
+    @Test
+    public void testBatchIsWrittenBeforeOtherPackets() {
+        Packet audio = createAudio();
+        conn.write(audio);
+        // packets that are not live audio / video are not batched and they're written after the batch
+        Packet video = createVideo(false);
+        ((BaseEvent) video.getMessage()).setSourceType(Constants.SOURCE_TYPE_VOD);
+        conn.write(video);
+
+        assertEquals(2, written.size());
+        assertSame(audio, ((PacketBatch) written.get(0)).getPackets().get(0));
+        assertSame(video, written.get(1));
+    }
+
+    @Test
+    public void testDataOwnerIsRetainedWhileBatched() {
+        // publisher's event, subscriber's event shares its data as the connection consumer does
+        VideoData source = new VideoData(IoBuffer.wrap(new byte[] { 0x27, 1, 0, 0, 0, 1, 2, 3 }));
+        VideoData video = new VideoData(source.getData().asReadOnlyBuffer());
+        video.setDataOwner(source);
+        conn.write(createPacket(video, 6));
+        // publisher releases its event after it's dispatched
+        source.release();
+        assertNotNull(source.getData());
+
+        conn.write(createVideo(true));
+        assertEquals(1, written.size());
+        // source is released with the subscriber's event after it's encoded
+        assertNull(video.getData());
+        assertNull(source.getData());
+    }
+}
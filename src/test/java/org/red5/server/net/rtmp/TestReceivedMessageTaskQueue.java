@@ -0,0 +1,141 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+public class TestReceivedMessageTaskQueue {
+
+    private ExecutorService executor;
+
+    private ReceivedMessageTaskQueue queue;
+
+    private final CountDownLatch blockingTaskStarted = new CountDownLatch(1);
+
+    private final CountDownLatch blockingTaskInterrupted = new CountDownLatch(1);
+
+    private final CountDownLatch nextTaskDone = new CountDownLatch(1);
+
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    /**
+     * First packet blocks its thread longer than the handling timeout
+     */
+    private final IRTMPHandler handler = new IRTMPHandler() {
+
+        @Override
+        public void messageReceived(RTMPConnection conn, Packet packet) throws Exception {
+            threads.add(Thread.currentThread());
+            if (packet.getHeader().getChannelId() == 3) {
+                blockingTaskStarted.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    blockingTaskInterrupted.countDown();
+                }
+            } else {
+                nextTaskDone.countDown();
+            }
+        }
+
+        @Override
+        public void connectionOpened(RTMPConnection conn) {
+        }
+
+        @Override
+        public void messageSent(RTMPConnection conn, Packet packet) {
+        }
+
+        @Override
+        public void connectionClosed(RTMPConnection conn) {
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(2);
+        queue = new ReceivedMessageTaskQueue(1, new IReceivedMessageTaskQueueListener() {
+
+            @Override
+            public void onTaskAdded(ReceivedMessageTaskQueue queue) {
+                onTasksPending(queue);
+            }
+
+            @Override
+            public void onTaskRemoved(ReceivedMessageTaskQueue queue) {
+            }
+
+            @Override
+            public void onTasksPending(ReceivedMessageTaskQueue queue) {
+                if (queue.setScheduled()) {
+                    executor.execute(queue);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    private ReceivedMessageTask createTask(int channelId, long maxHandlingTimeout) {
+        Header header = new Header();
+        header.setChannelId(channelId);
+        Packet packet = new Packet(header);
+        packet.setExpirationTime(System.currentTimeMillis() + maxHandlingTimeout);
+        return new ReceivedMessageTask("session", packet, handler, null);
+    }
+
+    @Test
+    public void testBlockingTaskIsInterrupted() throws Exception {
+        ReceivedMessageTask blockingTask = createTask(3, 100);
+        queue.addTask(blockingTask);
+        assertTrue(blockingTaskStarted.await(5, TimeUnit.SECONDS));
+        queue.addTask(createTask(4, 10000));
+
+        // task is not guarded before it expires
+        queue.guardExpiredTasks();
+        assertEquals(1, blockingTaskInterrupted.getCount());
+        assertFalse(queue.isEmpty());
+
+        // sweeper finds the expired task, interrupts its thread and hands the queue over
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!blockingTask.getPacket().isExpired() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        queue.guardExpiredTasks();
+        assertTrue(blockingTaskInterrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(nextTaskDone.await(5, TimeUnit.SECONDS));
+        // next task is processed by another thread while the blocking one is still running
+        assertEquals(2, threads.size());
+        assertNotSame(threads.get(0), threads.get(1));
+    }
+
+    @Test
+    public void testFinishedTaskIsNotInterrupted() throws Exception {
+        ReceivedMessageTask task = createTask(4, 50);
+        queue.addTask(task);
+        assertTrue(nextTaskDone.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        queue.guardExpiredTasks();
+        assertTrue(task.getPacket().isProcessed());
+        assertTrue(queue.isEmpty());
+        assertFalse(threads.get(0).isInterrupted());
+    }
+}
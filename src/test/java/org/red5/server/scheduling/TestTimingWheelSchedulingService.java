@@ -0,0 +1,187 @@
+package org.red5.server.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+
+public class TestTimingWheelSchedulingService {
+
+    private TimingWheelSchedulingService service;
+
+    @Before
+    public void setUp() throws Exception {
+        service = new TimingWheelSchedulingService();
+        service.setTickDuration(5);
+        service.setWheelSize(16);
+        service.setThreadCount(2);
+        service.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        service.destroy();
+    }
+
+    private static class CountingJob implements IScheduledJob {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void execute(ISchedulingService service) {
+            count.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testPeriodicPacing() throws Exception {
+        int executions = 26;
+        long[] executionTimes = new long[executions];
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(executions);
+        long startTime = System.nanoTime();
+        String name = service.addScheduledJob(20, s -> {
+            int index = count.getAndIncrement();
+            if (index < executions) {
+                executionTimes[index] = System.nanoTime();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        service.removeScheduledJob(name);
+        // deadlines are calculated from the previous deadline, so the nth execution is not earlier than n periods
+        for (int i = 0; i < executions; i++) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(executionTimes[i] - startTime);
+            assertTrue(i + " elapsed: " + elapsed, elapsed >= (i + 1) * 20 - 10);
+        }
+        // upper bound only catches a broken schedule, a loaded machine may delay the executions
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(executionTimes[executions - 1] - startTime);
+        assertTrue("elapsed: " + elapsed, elapsed < executions * 20 * 4);
+    }
+
+    @Test
+    public void testPeriodicPacingWithSlowJob() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger();
+        String name = service.addScheduledJob(10, s -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            count.incrementAndGet();
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrent.decrementAndGet();
+        });
+        Thread.sleep(600);
+        service.removeScheduledJob(name);
+        // job is never executed concurrently with itself and missed executions are skipped
+        assertEquals(1, maxConcurrent.get());
+        assertTrue("count: " + count.get(), count.get() <= 20);
+    }
+
+    @Test
+    public void testOnceJobLongerThanRound() throws Exception {
+        // a round is 16 ticks of 5 ms, so the job waits for more than 3 rounds
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong executionTime = new AtomicLong();
+        long startTime = System.nanoTime();
+        String name = service.addScheduledOnceJob(300, s -> {
+            executionTime.set(System.nanoTime());
+            latch.countDown();
+        });
+        assertTrue(service.getScheduledJobNames().contains(name));
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long delay = TimeUnit.NANOSECONDS.toMillis(executionTime.get() - startTime);
+        // job is not executed in an earlier round, upper bound is generous for loaded machines
+        assertTrue("delay: " + delay, delay >= 295 && delay < 1500);
+
+        // job is removed after it's executed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (service.getScheduledJobNames().contains(name) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(service.getScheduledJobNames().contains(name));
+    }
+
+    @Test
+    public void testOnceJobIsExecutedOnce() throws Exception {
+        CountingJob job = new CountingJob();
+        service.addScheduledOnceJob(10, job);
+        Thread.sleep(300);
+        assertEquals(1, job.count.get());
+        assertTrue(service.getScheduledJobNames().isEmpty());
+    }
+
+    @Test
+    public void testRemoveDuringExecution() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch removed = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger();
+        String name = service.addScheduledJob(10, s -> {
+            count.incrementAndGet();
+            started.countDown();
+            try {
+                removed.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        service.removeScheduledJob(name);
+        removed.countDown();
+        int countAfterRemove = count.get();
+        Thread.sleep(200);
+        assertEquals(countAfterRemove, count.get());
+        assertFalse(service.getScheduledJobNames().contains(name));
+    }
+
+    @Test
+    public void testPauseResume() throws Exception {
+        CountingJob job = new CountingJob();
+        String name = service.addScheduledJob(10, job);
+        Thread.sleep(100);
+        assertTrue(job.count.get() > 0);
+
+        service.pauseScheduledJob(name);
+        // an execution may be in progress while pausing
+        Thread.sleep(50);
+        int pausedCount = job.count.get();
+        Thread.sleep(200);
+        assertEquals(pausedCount, job.count.get());
+        assertTrue(service.getScheduledJobNames().contains(name));
+
+        service.resumeScheduledJob(name);
+        Thread.sleep(200);
+        assertTrue(job.count.get() > pausedCount);
+        service.removeScheduledJob(name);
+    }
+
+    @Test
+    public void testDestroy() throws Exception {
+        CountingJob periodicJob = new CountingJob();
+        CountingJob onceJob = new CountingJob();
+        service.addScheduledJob(10, periodicJob);
+        service.addScheduledOnceJob(200, onceJob);
+        Thread.sleep(100);
+
+        service.destroy();
+        assertTrue(service.getScheduledJobNames().isEmpty());
+        int count = periodicJob.count.get();
+        Thread.sleep(300);
+        assertEquals(count, periodicJob.count.get());
+        assertEquals(0, onceJob.count.get());
+    }
+
+}
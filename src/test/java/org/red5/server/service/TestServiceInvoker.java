@@ -0,0 +1,125 @@
+package org.red5.server.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestServiceInvoker {
+
+    private ServiceInvoker invoker;
+
+    private TestService service;
+
+    public static class TestService {
+
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public String echo(String value) {
+            return value;
+        }
+
+        public int length(String value) {
+            return value.length();
+        }
+
+        public String pick(Integer value) {
+            return "integer";
+        }
+
+        public String pick(Boolean value) {
+            return "boolean";
+        }
+
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        invoker = new ServiceInvoker();
+        service = new TestService();
+    }
+
+    private PendingCall invoke(String method, Object... args) {
+        PendingCall call = new PendingCall(method, args);
+        invoker.invoke(call, service);
+        return call;
+    }
+
+    @Test
+    public void testConvertedCallIsCached() {
+        // AMF numbers are doubles, they are converted to the int parameters
+        PendingCall call = invoke("add", 1.0d, 2.0d);
+        assertEquals(Call.STATUS_SUCCESS_RESULT, call.getStatus());
+        assertEquals(3, call.getResult());
+        assertEquals(1, invoker.getCachedMethodCount());
+
+        // cached conversion is repeated with the new values
+        call = invoke("add", 3.0d, 4.0d);
+        assertEquals(Call.STATUS_SUCCESS_RESULT, call.getStatus());
+        assertEquals(7, call.getResult());
+        assertEquals(1, invoker.getCachedMethodCount());
+    }
+
+    @Test
+    public void testFailedConversionIsResolvedAgain() {
+        PendingCall call = invoke("add", "1", "2");
+        assertEquals(3, call.getResult());
+        assertEquals(1, invoker.getCachedMethodCount());
+
+        // same argument types but the values can't be converted
+        call = invoke("add", "one", "two");
+        assertEquals(Call.STATUS_METHOD_NOT_FOUND, call.getStatus());
+
+        call = invoke("add", "3", "4");
+        assertEquals(7, call.getResult());
+    }
+
+    @Test
+    public void testOverloadedConvertedCallIsNotCached() {
+        // chosen overload may depend on the argument values, so the conversion is not cached
+        PendingCall call = invoke("pick", 1.0d);
+        assertEquals(Call.STATUS_SUCCESS_RESULT, call.getStatus());
+        assertEquals(0, invoker.getCachedMethodCount());
+
+        // call without conversion is cached
+        call = invoke("pick", Boolean.TRUE);
+        assertEquals("boolean", call.getResult());
+        assertEquals(1, invoker.getCachedMethodCount());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        invoker.setMaxCachedMethods(2);
+        assertEquals("a", invoke("echo", "a").getResult());
+        assertEquals(3, invoke("add", 1.0d, 2.0d).getResult());
+        assertEquals(2, invoke("length", "ab").getResult());
+        assertEquals(2, invoker.getCachedMethodCount());
+
+        // evicted method is resolved again
+        assertEquals("b", invoke("echo", "b").getResult());
+        assertEquals(7, invoke("add", 3.0d, 4.0d).getResult());
+        assertEquals(2, invoker.getCachedMethodCount());
+    }
+
+    @Test
+    public void testInvalidateMethodCache() {
+        invoke("echo", "a");
+        invoke("add", 1.0d, 2.0d);
+        assertEquals(2, invoker.getCachedMethodCount());
+
+        invoker.invalidateMethodCache(TestService.class.getClassLoader());
+        assertEquals(0, invoker.getCachedMethodCount());
+
+        invoke("echo", "a");
+        invoker.invalidateMethodCache(TestService.class);
+        assertEquals(0, invoker.getCachedMethodCount());
+
+        invoker.setMaxCachedMethods(0);
+        assertEquals("a", invoke("echo", "a").getResult());
+        assertEquals(0, invoker.getCachedMethodCount());
+        assertEquals(Call.STATUS_METHOD_NOT_FOUND, invoke("missing").getStatus());
+    }
+
+}